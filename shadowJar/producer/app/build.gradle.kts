@@ -14,6 +14,9 @@ plugins {
     application
 
     id("com.github.johnrengelman.shadow") version "5.1.0"
+
+    // Apply the JMH plugin for the benchmarks in src/jmh
+    id("me.champeau.gradle.jmh") version "0.5.3"
 }
 
 repositories {
@@ -50,10 +53,18 @@ dependencies {
     // Other
     implementation("com.github.javafaker:javafaker:1.0.1")
     implementation("com.fasterxml.jackson.core:jackson-databind:2.9.10")
+    implementation("org.hdrhistogram:HdrHistogram:2.1.12")
 }
 
 version = "1.1.0"
 
+// ./gradlew jmh, results in build/reports/jmh/results.txt
+jmh {
+    jmhVersion = "1.27"
+    profilers = listOf("gc")
+    duplicateClassesStrategy = DuplicatesStrategy.EXCLUDE
+}
+
 application {
     // Define the main class for the application
     mainClassName = "com.junoha.sample.kinesis.producer.KinesisProducerService"
@@ -6,13 +6,23 @@ import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.junoha.sample.kinesis.producer.metrics.KplMetrics;
+import com.junoha.sample.kinesis.producer.metrics.ProducerMetrics;
+import com.junoha.sample.kinesis.producer.metrics.PutMetrics;
+import com.junoha.sample.kinesis.producer.partitionkey.PartitionKeyStrategy;
+import com.junoha.sample.kinesis.producer.partitionkey.ShardDistribution;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.regions.Region;
 
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -20,7 +30,7 @@ public class KinesisProducerService {
 
     private static final Logger log = LoggerFactory.getLogger(KinesisProducerService.class);
     private static final ScheduledExecutorService EXECUTOR = Executors.newScheduledThreadPool(1);
-    private static final int RECORDS_PER_SECOND = 2000;
+    private static final int CALLBACK_QUEUE_SIZE = 10000;
 
     private static KinesisProducer createProducer(String region) {
         KinesisProducerConfiguration config = new KinesisProducerConfiguration()
@@ -29,73 +39,56 @@ public class KinesisProducerService {
         return new KinesisProducer(config);
     }
 
-    private static FutureCallback<UserRecordResult> createFutureCallback() {
+    /**
+     * Callbacks only update counters, so by default they run directly on the KPL thread completing the future.
+     * With threads, the queue is bounded and a full queue runs the callback on the completing thread.
+     *
+     * @param callbackThreads Number of callback threads, 0 to run callbacks on the KPL thread
+     */
+    private static Executor createCallbackExecutor(int callbackThreads) {
+        if (callbackThreads <= 0) {
+            return MoreExecutors.directExecutor();
+        }
+        return new ThreadPoolExecutor(callbackThreads, callbackThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(CALLBACK_QUEUE_SIZE), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * @param enqueuedNanos System.nanoTime() just before addUserRecord
+     * @param bytes         Size of the record data
+     */
+    private static FutureCallback<UserRecordResult> createFutureCallback(
+            long enqueuedNanos, int bytes, ProducerMetrics producerMetrics, PutMetrics putMetrics,
+            ShardDistribution shardDistribution) {
         return new FutureCallback<>() {
             @Override
             public void onFailure(Throwable t) {
+                int attempts = 1;
                 if (t instanceof UserRecordFailedException) {
-                    Attempt last = Iterables.getLast(
-                            ((UserRecordFailedException) t).getResult().getAttempts());
+                    List<Attempt> allAttempts = ((UserRecordFailedException) t).getResult().getAttempts();
+                    attempts = allAttempts.size();
+                    Attempt last = Iterables.getLast(allAttempts);
                     log.error(String.format(
                             "Record failed to put - %s : %s",
                             last.getErrorCode(), last.getErrorMessage()));
                 }
+                producerMetrics.onComplete(bytes, attempts, false);
                 log.error("Exception during put", t);
                 System.exit(1);
             }
 
             @Override
             public void onSuccess(UserRecordResult result) {
+                int attempts = result.getAttempts().size();
+                producerMetrics.onComplete(bytes, attempts, true);
+                putMetrics.record(enqueuedNanos, attempts);
+                shardDistribution.record(result.getShardId());
                 // Logging all record
 //                log.info(String.format("ShardId:%s,getSequenceNumber:%s,isSuccessful:%s", result.getShardId(), result.getSequenceNumber(), result.isSuccessful()));
             }
         };
     }
 
-    /**
-     * Executes a function N times per second for M seconds with a
-     * ScheduledExecutorService. The executor is shutdown at the end. This is
-     * more precise than simply using scheduleAtFixedRate.
-     *
-     * @param exec            Executor
-     * @param task            Task to perform
-     * @param counter         Counter used to track how many times the task has been
-     *                        executed
-     * @param durationSeconds How many seconds to run for
-     * @param ratePerSecond   How many times to execute task per second
-     */
-    private static void executeAtTargetRate(
-            final ScheduledExecutorService exec,
-            final Runnable task,
-            final AtomicLong counter,
-            final int durationSeconds,
-            final int ratePerSecond) {
-
-        exec.scheduleWithFixedDelay(new Runnable() {
-            final long startTime = System.nanoTime();
-
-            @Override
-            public void run() {
-                double secondsRun = (System.nanoTime() - startTime) / 1e9;
-                double targetCount = Math.min(durationSeconds, secondsRun) * ratePerSecond;
-
-                while (counter.get() < targetCount) {
-                    counter.getAndIncrement();
-                    try {
-                        task.run();
-                    } catch (Exception e) {
-                        log.error("Error running task", e);
-                        System.exit(1);
-                    }
-                }
-
-                if (secondsRun >= durationSeconds) {
-                    exec.shutdown();
-                }
-            }
-        }, 0, 1, TimeUnit.MILLISECONDS);
-    }
-
     private static String getEnvVal(String key, String defaultValue) {
         return System.getenv(key) != null ? System.getenv(key) : defaultValue;
     }
@@ -111,6 +104,11 @@ public class KinesisProducerService {
         final String streamName = getEnvVal("STREAM_NAME", "sandbox");
         final String region = getEnvVal("REGION_NAME", Region.AP_NORTHEAST_1.id());
         final String secondsToRunString = getEnvVal("SECONDS_TO_RUN", "30");
+        final int recordsPerSecond = Integer.parseInt(getEnvVal("RECORDS_PER_SECOND", "2000"));
+        final int producerThreads = Integer.parseInt(getEnvVal("PRODUCER_THREADS", "1"));
+        final String partitionKeyStrategyName = getEnvVal("PARTITION_KEY_STRATEGY", "uuid");
+        final int partitionKeyCount = Integer.parseInt(getEnvVal("PARTITION_KEY_COUNT", "100"));
+        final int callbackThreads = Integer.parseInt(getEnvVal("CALLBACK_THREADS", "0"));
 
         final int secondsToRun = Integer.parseInt(secondsToRunString);
         if (secondsToRun <= 0) {
@@ -118,48 +116,76 @@ public class KinesisProducerService {
             System.exit(1);
         }
 
-        log.info(String.format("Stream name: %s Region: %s secondsToRun %d", streamName, region, secondsToRun));
+        log.info(String.format("Stream name: %s Region: %s secondsToRun %d partitionKeyStrategy %s",
+                streamName, region, secondsToRun, partitionKeyStrategyName));
 
         // The monotonically increasing sequence number we will put in the data of each record
         final AtomicLong sequenceNumber = new AtomicLong(0);
-        // The number of records that have finished (either successfully put, or failed)
-        final AtomicLong completed = new AtomicLong(0);
+        // Records and bytes submitted, completed (either successfully put, or failed), failed and retried
+        final ProducerMetrics producerMetrics = new ProducerMetrics();
+        // Put latency and attempts per record
+        final PutMetrics putMetrics = new PutMetrics();
 
+        final PartitionKeyStrategy partitionKeyStrategy = PartitionKeyStrategy.of(partitionKeyStrategyName, partitionKeyCount);
+        final ShardDistribution shardDistribution = new ShardDistribution();
         final KinesisProducer producer = createProducer(region);
-        final FutureCallback<UserRecordResult> callback = createFutureCallback();
-        final ExecutorService callbackThreadPool = Executors.newCachedThreadPool();
+        final KplMetrics kplMetrics = new KplMetrics(producer);
+        final Executor callbackExecutor = createCallbackExecutor(callbackThreads);
         final Runnable putOneRecord = () -> {
-            ListenableFuture<UserRecordResult> f = producer.addUserRecord(DataGenerator.generateUserRecord(streamName));
-            Futures.addCallback(f, callback, callbackThreadPool);
+            UserRecord userRecord = DataGenerator.generateUserRecord(streamName, partitionKeyStrategy);
+            int bytes = userRecord.getData().remaining();
+            producerMetrics.onSubmit(bytes);
+            long enqueuedNanos = System.nanoTime();
+            ListenableFuture<UserRecordResult> f = producer.addUserRecord(userRecord);
+            Futures.addCallback(f, createFutureCallback(enqueuedNanos, bytes, producerMetrics, putMetrics,
+                    shardDistribution), callbackExecutor);
         };
 
         // This gives us progress updates
         EXECUTOR.scheduleAtFixedRate(() -> {
             long put = sequenceNumber.get();
-            long total = RECORDS_PER_SECOND * secondsToRun;
+            long total = (long) recordsPerSecond * secondsToRun;
             double putPercent = 100.0 * put / total;
-            long done = completed.get();
+            long done = producerMetrics.getCompletedRecords();
             double donePercent = 100.0 * done / total;
             log.info(String.format(
-                    "Put %d of %d so far (%.2f %%), %d have completed (%.2f %%)",
-                    put, total, putPercent, done, donePercent));
+                    "Put %d of %d so far (%.2f %%), %d have completed (%.2f %%), target %d records/sec",
+                    put, total, putPercent, done, donePercent, recordsPerSecond));
+            log.info(producerMetrics.intervalSummary(1.0));
+            log.info("Put " + putMetrics.intervalSummary());
+            kplMetrics.poll(1);
+            log.info(kplMetrics.summary());
         }, 1, 1, TimeUnit.SECONDS);
 
         // Kick off the puts
         log.info(String.format(
-                "Starting puts... will run for %d seconds at %d records per second",
-                secondsToRun, RECORDS_PER_SECOND));
-        executeAtTargetRate(EXECUTOR, putOneRecord, sequenceNumber, secondsToRun, RECORDS_PER_SECOND);
+                "Starting puts... will run for %d seconds at %d records per second with %d workers",
+                secondsToRun, recordsPerSecond, producerThreads));
+        final AtomicLong workerId = new AtomicLong(0);
+        final RateEngine rateEngine = new RateEngine(recordsPerSecond, producerThreads,
+                runnable -> new Thread(runnable, "producer-worker-" + workerId.getAndIncrement()));
 
         // Wait for puts to finish. After this statement returns, we have
         // finished all calls to putRecord, but the records may still be
         // in-flight. We will additionally wait for all records to actually
         // finish later.
-        EXECUTOR.awaitTermination(secondsToRun + 1, TimeUnit.SECONDS);
+        rateEngine.run(putOneRecord, sequenceNumber, secondsToRun, () -> false);
+        EXECUTOR.shutdown();
 
         log.info("Waiting for remaining puts to finish...");
         producer.flushSync();
         log.info("All records complete.");
+        if (callbackExecutor instanceof ExecutorService) {
+            ExecutorService callbackThreadPool = (ExecutorService) callbackExecutor;
+            callbackThreadPool.shutdown();
+            callbackThreadPool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        log.info(String.format("Submitted %d records (%d bytes), completed %d, failed %d, retried %d",
+                producerMetrics.getSubmittedRecords(), producerMetrics.getSubmittedBytes(),
+                producerMetrics.getCompletedRecords(), producerMetrics.getFailedRecords(),
+                producerMetrics.getRetriedRecords()));
+        log.info("Put " + putMetrics.totalSummary());
+        shardDistribution.report(partitionKeyStrategyName);
 
         // This kills the child process and shuts down the threads managing it.
         producer.destroy();
@@ -0,0 +1,116 @@
+package com.junoha.sample.kinesis.producer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs a task at a target rate on N worker threads sharing one {@link TokenBucket}.
+ * <p>
+ * Each worker reserves a token, waits until the token's time and runs the task. Waits longer than
+ * SPIN_THRESHOLD_NANOS park the thread, the rest is spun, which gives sub-millisecond pacing.
+ */
+public class RateEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(RateEngine.class);
+
+    private static final long SPIN_THRESHOLD_NANOS = 50_000L;
+    private static final long PAUSE_NANOS = 1_000_000L;
+
+    private final TokenBucket bucket;
+    private final int workerThreads;
+    private final ThreadFactory threadFactory;
+
+    /**
+     * @param ratePerSecond How many times to execute task per second, across all workers
+     * @param workerThreads Number of worker threads
+     * @param threadFactory Creates the worker threads
+     */
+    public RateEngine(int ratePerSecond, int workerThreads, ThreadFactory threadFactory) {
+        if (workerThreads <= 0) {
+            throw new IllegalArgumentException("Worker threads should be a positive integer");
+        }
+        // Allow ~1 ms worth of tokens at once so a worker descheduled for a moment can catch up
+        this.bucket = new TokenBucket(ratePerSecond, Math.max(workerThreads, ratePerSecond / 1000), System.nanoTime());
+        this.workerThreads = workerThreads;
+        this.threadFactory = threadFactory;
+    }
+
+    public double getTargetRate() {
+        return bucket.getRate();
+    }
+
+    /**
+     * Executes the task for the given duration and blocks until all workers have finished.
+     *
+     * @param task            Task to perform
+     * @param counter         Counter used to track how many times the task has been executed
+     * @param durationSeconds How many seconds to run for
+     * @param paused          While true, workers stop taking tokens. Paused time is not caught up afterwards.
+     */
+    public void run(Runnable task, AtomicLong counter, int durationSeconds, BooleanSupplier paused)
+            throws InterruptedException {
+        final long startNanos = System.nanoTime();
+        final long endNanos = startNanos + durationSeconds * 1_000_000_000L;
+        final long startCount = counter.get();
+
+        List<Thread> workers = new ArrayList<>(workerThreads);
+        for (int i = 0; i < workerThreads; i++) {
+            Thread worker = threadFactory.newThread(() -> work(task, counter, endNanos, paused));
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long count = counter.get() - startCount;
+        log.info(String.format("Rate engine finished: %d records in %.1f sec with %d workers, "
+                        + "actual %.0f records/sec, target %.0f records/sec",
+                count, seconds, workerThreads, count / seconds, getTargetRate()));
+    }
+
+    private void work(Runnable task, AtomicLong counter, long endNanos, BooleanSupplier paused) {
+        while (true) {
+            long now = System.nanoTime();
+            if (now >= endNanos) {
+                return;
+            }
+            if (paused.getAsBoolean()) {
+                LockSupport.parkNanos(PAUSE_NANOS);
+                continue;
+            }
+            long at = bucket.reserve(now);
+            if (at >= endNanos) {
+                return;
+            }
+            waitUntil(at);
+
+            counter.getAndIncrement();
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("Error running task", e);
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void waitUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            if (remaining > SPIN_THRESHOLD_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
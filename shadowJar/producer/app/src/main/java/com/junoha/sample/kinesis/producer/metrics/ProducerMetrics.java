@@ -0,0 +1,79 @@
+package com.junoha.sample.kinesis.producer.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records and bytes submitted to KPL, completed, failed and retried. Updated from the producer workers and
+ * the put callbacks, read by the progress reporter.
+ */
+public class ProducerMetrics {
+
+    private final LongAdder submittedRecords = new LongAdder();
+    private final LongAdder submittedBytes = new LongAdder();
+    private final LongAdder completedRecords = new LongAdder();
+    private final LongAdder completedBytes = new LongAdder();
+    private final LongAdder failedRecords = new LongAdder();
+    private final LongAdder retriedRecords = new LongAdder();
+
+    private final long[] last = new long[6];
+
+    public void onSubmit(int bytes) {
+        submittedRecords.increment();
+        submittedBytes.add(bytes);
+    }
+
+    /**
+     * A record finished, either successfully put or failed.
+     *
+     * @param attempts UserRecordResult.getAttempts().size(); more than one means KPL retried the record
+     */
+    public void onComplete(int bytes, int attempts, boolean successful) {
+        completedRecords.increment();
+        completedBytes.add(bytes);
+        if (!successful) {
+            failedRecords.increment();
+        }
+        if (attempts > 1) {
+            retriedRecords.increment();
+        }
+    }
+
+    public long getSubmittedRecords() {
+        return submittedRecords.sum();
+    }
+
+    public long getSubmittedBytes() {
+        return submittedBytes.sum();
+    }
+
+    public long getCompletedRecords() {
+        return completedRecords.sum();
+    }
+
+    public long getCompletedBytes() {
+        return completedBytes.sum();
+    }
+
+    public long getFailedRecords() {
+        return failedRecords.sum();
+    }
+
+    public long getRetriedRecords() {
+        return retriedRecords.sum();
+    }
+
+    /**
+     * Rates since the previous call. Called once per second from the progress reporter thread only.
+     */
+    public String intervalSummary(double seconds) {
+        long[] now = {getSubmittedRecords(), getSubmittedBytes(), getCompletedRecords(), getCompletedBytes(),
+                getFailedRecords(), getRetriedRecords()};
+        String summary = String.format(
+                "records/sec submitted %.0f completed %.0f failed %.0f retried %.0f, KB/sec submitted %.1f completed %.1f",
+                (now[0] - last[0]) / seconds, (now[2] - last[2]) / seconds,
+                (now[4] - last[4]) / seconds, (now[5] - last[5]) / seconds,
+                (now[1] - last[1]) / 1024.0 / seconds, (now[3] - last[3]) / 1024.0 / seconds);
+        System.arraycopy(now, 0, last, 0, now.length);
+        return summary;
+    }
+}
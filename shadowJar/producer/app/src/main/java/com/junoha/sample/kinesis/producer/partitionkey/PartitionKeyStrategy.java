@@ -0,0 +1,36 @@
+package com.junoha.sample.kinesis.producer.partitionkey;
+
+/**
+ * Decides the partition key of each record. Kinesis hashes the partition key with MD5 to pick a shard,
+ * so the number of distinct keys and how evenly they are used decide how load spreads over shards.
+ * Implementations must be thread-safe.
+ */
+public interface PartitionKeyStrategy {
+
+    /**
+     * @param personId Person.id of the record payload
+     * @return partition key
+     */
+    String partitionKey(long personId);
+
+    /**
+     * @param name     timestamp, uuid, person_id, round_robin or counter
+     * @param keyCount Number of keys used by round_robin
+     */
+    static PartitionKeyStrategy of(String name, int keyCount) {
+        switch (name) {
+            case "timestamp":
+                return personId -> Long.toString(System.currentTimeMillis());
+            case "uuid":
+                return new UuidPartitionKey();
+            case "person_id":
+                return personId -> Long.toString(personId);
+            case "round_robin":
+                return new RoundRobinPartitionKey(keyCount);
+            case "counter":
+                return new CounterPartitionKey();
+            default:
+                throw new IllegalArgumentException("Invalid partition key strategy: " + name);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.junoha.sample.kinesis.producer.partitionkey;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cycles through a fixed set of keys. Useful to see how a small key space maps onto shards.
+ */
+public class RoundRobinPartitionKey implements PartitionKeyStrategy {
+
+    private final String[] keys;
+    private final AtomicLong next = new AtomicLong(0);
+
+    public RoundRobinPartitionKey(int keyCount) {
+        if (keyCount <= 0) {
+            throw new IllegalArgumentException("Partition key count should be a positive integer");
+        }
+        keys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "key-" + i;
+        }
+    }
+
+    @Override
+    public String partitionKey(long personId) {
+        return keys[(int) (next.getAndIncrement() % keys.length)];
+    }
+}
@@ -0,0 +1,47 @@
+package com.junoha.sample.kinesis.producer.partitionkey;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts successfully put records per shard, as reported by UserRecordResult.getShardId().
+ */
+public class ShardDistribution {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardDistribution.class);
+
+    private final ConcurrentHashMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+    public void record(String shardId) {
+        counts.computeIfAbsent(shardId, k -> new LongAdder()).increment();
+    }
+
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counts.forEach((shardId, count) -> snapshot.put(shardId, count.sum()));
+        return snapshot;
+    }
+
+    /**
+     * Logs records per shard and the skew, i.e. the busiest shard divided by the mean. 1.00 is perfectly even.
+     */
+    public void report(String strategyName) {
+        Map<String, Long> snapshot = snapshot();
+        long total = snapshot.values().stream().mapToLong(Long::longValue).sum();
+        if (total == 0) {
+            log.info("Partition key strategy {}: no records completed", strategyName);
+            return;
+        }
+        long max = snapshot.values().stream().mapToLong(Long::longValue).max().orElse(0);
+        double mean = (double) total / snapshot.size();
+        log.info(String.format("Partition key strategy %s: %d records over %d shards, skew (max/mean) %.2f",
+                strategyName, total, snapshot.size(), max / mean));
+        snapshot.forEach((shardId, count) -> log.info(String.format(
+                "  %s : %d (%.2f %%)", shardId, count, 100.0 * count / total)));
+    }
+}
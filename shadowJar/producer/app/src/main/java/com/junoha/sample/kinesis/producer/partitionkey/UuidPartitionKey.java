@@ -0,0 +1,17 @@
+package com.junoha.sample.kinesis.producer.partitionkey;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Random UUID per record. UUID.randomUUID() draws from a shared SecureRandom, which is slow and contended,
+ * so the bits come from ThreadLocalRandom instead.
+ */
+public class UuidPartitionKey implements PartitionKeyStrategy {
+
+    @Override
+    public String partitionKey(long personId) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+}
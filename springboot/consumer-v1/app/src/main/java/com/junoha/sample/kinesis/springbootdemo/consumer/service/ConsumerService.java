@@ -7,6 +7,7 @@ import com.amazonaws.services.kinesis.clientlibrary.lib.worker.InitialPositionIn
 import com.amazonaws.services.kinesis.clientlibrary.lib.worker.KinesisClientLibConfiguration;
 import com.amazonaws.services.kinesis.clientlibrary.lib.worker.Worker;
 import com.google.common.collect.ImmutableSet;
+import com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor.CheckpointPolicy;
 import com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor.KclRecordProcessorFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +40,21 @@ public class ConsumerService {
     @Value(value = "${aws.kinesis.timestamp}")
     private String timestamp;
 
+    @Value(value = "${aws.kinesis.checkpoint.max_records}")
+    private long checkpointMaxRecords;
+
+    @Value(value = "${aws.kinesis.checkpoint.max_bytes}")
+    private long checkpointMaxBytes;
+
+    @Value(value = "${aws.kinesis.checkpoint.interval_millis}")
+    private long checkpointIntervalMillis;
+
+    @Value(value = "${aws.kinesis.checkpoint.min_interval_millis}")
+    private long checkpointMinIntervalMillis;
+
+    @Value(value = "${aws.kinesis.checkpoint.adaptive}")
+    private boolean checkpointAdaptive;
+
     private InitialPositionInStream convertInitialPositionStr(String positionStr) {
         return switch (positionStr) {
             case "TRIM_HORIZON" -> InitialPositionInStream.TRIM_HORIZON;
@@ -82,7 +98,8 @@ public class ConsumerService {
         log.info("Running {} to process stream {} as worker {} ...", streamName, streamName, workerId);
 
         Worker worker = new Worker.Builder()
-                .recordProcessorFactory(new KclRecordProcessorFactory())
+                .recordProcessorFactory(new KclRecordProcessorFactory(new CheckpointPolicy(checkpointMaxRecords,
+                        checkpointMaxBytes, checkpointIntervalMillis, checkpointMinIntervalMillis, checkpointAdaptive)))
                 .config(kinesisClientLibConfiguration)
                 .build();
 
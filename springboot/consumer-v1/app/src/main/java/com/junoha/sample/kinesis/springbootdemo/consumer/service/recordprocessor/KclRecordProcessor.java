@@ -23,14 +23,21 @@ public class KclRecordProcessor implements IRecordProcessor, IShutdownNotificati
 
     private static final long BACKOFF_TIME_IN_MILLIS = 3000L;
     private static final int NUM_RETRIES = 10;
-    private static final long CHECKPOINT_INTERVAL_MILLIS = 60000L;
-    private long nextCheckpointTimeInMillis;
+    private final CheckpointPolicy checkpointPolicy;
+
+    /**
+     * @param checkpointPolicy When to checkpoint, owned by this processor
+     */
+    public KclRecordProcessor(CheckpointPolicy checkpointPolicy) {
+        this.checkpointPolicy = checkpointPolicy;
+    }
 
     @Override
     public void initialize(InitializationInput initializationInput) {
         log.info("Initializing record processor for ShardId: {}, ExtendedSequenceNumber: {}, PendingCheckpointSequenceNumber: {}",
                 initializationInput.getShardId(), initializationInput.getExtendedSequenceNumber(), initializationInput.getPendingCheckpointSequenceNumber());
         this.shardId = initializationInput.getShardId();
+        checkpointPolicy.start(System.currentTimeMillis());
     }
 
     @Override
@@ -40,15 +47,15 @@ public class KclRecordProcessor implements IRecordProcessor, IShutdownNotificati
 
         processRecordsWithRetries(processRecordsInput.getRecords());
 
-        // Checkpoint once every checkpoint interval.
-        if (System.currentTimeMillis() > nextCheckpointTimeInMillis) {
+        // Checkpoint when the policy's record, byte or time threshold is reached.
+        if (checkpointPolicy.shouldCheckpoint(System.currentTimeMillis())) {
             checkpoint(processRecordsInput.getCheckpointer());
-            nextCheckpointTimeInMillis = System.currentTimeMillis() + CHECKPOINT_INTERVAL_MILLIS;
         }
     }
 
     private void processRecordsWithRetries(List<Record> records) {
         for (Record record : records) {
+            checkpointPolicy.onRecord(record.getData().remaining());
             boolean processedSuccessfully = false;
             for (int i = 0; i < NUM_RETRIES; i++) {
                 try {
@@ -102,6 +109,7 @@ public class KclRecordProcessor implements IRecordProcessor, IShutdownNotificati
         if (shutdownInput.getShutdownReason() == ShutdownReason.TERMINATE) {
             checkpoint(shutdownInput.getCheckpointer());
         }
+        log.info(checkpointPolicy.summary(shardId, System.currentTimeMillis()));
     }
 
     /**
@@ -112,14 +120,18 @@ public class KclRecordProcessor implements IRecordProcessor, IShutdownNotificati
     private void checkpoint(IRecordProcessorCheckpointer checkpointer) {
         log.info("Checkpointing shard " + shardId);
         for (int i = 0; i < NUM_RETRIES; i++) {
+            long start = System.currentTimeMillis();
             try {
                 checkpointer.checkpoint();
+                checkpointPolicy.onCheckpoint(System.currentTimeMillis(), System.currentTimeMillis() - start);
+                log.info(checkpointPolicy.summary(shardId, System.currentTimeMillis()));
                 break;
             } catch (ShutdownException se) {
                 // Ignore checkpoint if the processor instance has been shutdown (fail over).
                 log.info("Caught shutdown exception, skipping checkpoint.", se);
                 break;
             } catch (ThrottlingException e) {
+                checkpointPolicy.onThrottled();
                 // Backoff and re-attempt checkpoint upon transient failures
                 if (i >= (NUM_RETRIES - 1)) {
                     log.error("Checkpoint failed after " + (i + 1) + "attempts.", e);
@@ -4,8 +4,15 @@ import com.amazonaws.services.kinesis.clientlibrary.interfaces.v2.IRecordProcess
 import com.amazonaws.services.kinesis.clientlibrary.interfaces.v2.IRecordProcessorFactory;
 
 public class KclRecordProcessorFactory implements IRecordProcessorFactory {
+
+    private final CheckpointPolicy checkpointPolicy;
+
+    public KclRecordProcessorFactory(CheckpointPolicy checkpointPolicy) {
+        this.checkpointPolicy = checkpointPolicy;
+    }
+
     @Override
     public IRecordProcessor createProcessor() {
-        return new KclRecordProcessor();
+        return new KclRecordProcessor(checkpointPolicy.forShard());
     }
 }
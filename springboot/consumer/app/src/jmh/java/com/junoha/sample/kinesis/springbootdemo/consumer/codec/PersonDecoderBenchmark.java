@@ -0,0 +1,109 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.avro.AvroMapper;
+import com.fasterxml.jackson.dataformat.avro.AvroSchema;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.junoha.sample.kinesis.springbootdemo.consumer.model.Person;
+import com.junoha.sample.kinesis.springbootdemo.consumer.model.Pet;
+import org.apache.avro.Schema;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading id and score of one Person record, from a read-only buffer like the data of a KCL record:
+ * <ul>
+ * <li>objectMapper: copy to a byte[], then to a String for JSON, and ObjectMapper.readValue to Person</li>
+ * <li>personDecoder: PersonDecoder, the whole Person</li>
+ * <li>fieldDecoder: PersonFieldDecoder, id and score only</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PersonDecoderBenchmark {
+
+    @Param({"json", "smile", "cbor", "avro"})
+    private String format;
+
+    private ObjectMapper mapper;
+    // Avro only
+    private AvroSchema avroSchema;
+    private ByteBuffer record;
+    private final PersonDecoder personDecoder = new PersonDecoder();
+    private final PersonFieldDecoder fieldDecoder = new PersonFieldDecoder(Set.of("id", "score"));
+
+    @Setup
+    public void setup() throws IOException {
+        Pet pet = new Pet();
+        pet.setType("turtle");
+        pet.setName("Donatello");
+        Person person = new Person();
+        person.setId(54207);
+        person.setDate("2019/09/28 15:36:46");
+        person.setScore(6315932014L);
+        person.setFirstName("Doyle");
+        person.setLastName("Goldner");
+        person.setAddress("Apt. 339 84193 Lockman Parkway, Jerdeshire, WI 17484");
+        person.setPets(List.of(pet, pet));
+
+        PayloadFormat payloadFormat = PayloadFormat.valueOf(format.toUpperCase());
+        mapper = switch (payloadFormat) {
+            case JSON -> new ObjectMapper();
+            case SMILE -> new SmileMapper();
+            case CBOR -> new CBORMapper();
+            case AVRO -> new AvroMapper();
+        };
+        byte[] payload;
+        if (payloadFormat == PayloadFormat.AVRO) {
+            try (InputStream in = getClass().getResourceAsStream("/person.avsc")) {
+                avroSchema = new AvroSchema(new Schema.Parser().parse(in));
+            }
+            payload = mapper.writer(avroSchema).writeValueAsBytes(person);
+        } else {
+            payload = mapper.writeValueAsBytes(person);
+        }
+        record = ByteBuffer.allocate(payload.length + PersonDecoder.HEADER_LENGTH)
+                .put(PersonDecoder.HEADER_MAGIC).put(payloadFormat.id()).put(payload).flip().asReadOnlyBuffer();
+    }
+
+    @Benchmark
+    public long objectMapper() throws IOException {
+        ByteBuffer data = record.duplicate();
+        data.position(data.position() + PersonDecoder.HEADER_LENGTH);
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        Person person;
+        if (avroSchema != null) {
+            person = mapper.readerFor(Person.class).with(avroSchema).readValue(bytes);
+        } else if (mapper.getFactory().canHandleBinaryNatively()) {
+            person = mapper.readValue(bytes, Person.class);
+        } else {
+            person = mapper.readValue(new String(bytes, StandardCharsets.UTF_8), Person.class);
+        }
+        return person.getId() + person.getScore();
+    }
+
+    @Benchmark
+    public long personDecoder() {
+        Person person = personDecoder.decode(record);
+        return person.getId() + person.getScore();
+    }
+
+    @Benchmark
+    public long fieldDecoder() {
+        PersonFields fields = fieldDecoder.decode(record);
+        return fields.id() + fields.score();
+    }
+}
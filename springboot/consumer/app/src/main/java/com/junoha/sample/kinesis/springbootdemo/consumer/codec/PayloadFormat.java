@@ -0,0 +1,68 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.avro.AvroMapper;
+import com.fasterxml.jackson.dataformat.avro.AvroSchema;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.junoha.sample.kinesis.springbootdemo.consumer.model.Person;
+import org.apache.avro.Schema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Wire formats of Person records, with the same ids as the producer's PayloadFormat.
+ * <p>
+ * Avro uses the schema in person.avsc, a copy of the producer's.
+ */
+public enum PayloadFormat {
+    JSON(1, "json"),
+    SMILE(2, "smile"),
+    CBOR(3, "cbor"),
+    AVRO(4, "avro");
+
+    private final byte id;
+    private final String formatName;
+
+    PayloadFormat(int id, String formatName) {
+        this.id = (byte) id;
+        this.formatName = formatName;
+    }
+
+    public byte id() {
+        return id;
+    }
+
+    public String formatName() {
+        return formatName;
+    }
+
+    public static PayloadFormat of(byte id) {
+        for (PayloadFormat format : values()) {
+            if (format.id == id) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown payload format id: " + id);
+    }
+
+    ObjectReader reader() {
+        return switch (this) {
+            case JSON -> new ObjectMapper().readerFor(Person.class);
+            case SMILE -> new SmileMapper().readerFor(Person.class);
+            case CBOR -> new CBORMapper().readerFor(Person.class);
+            case AVRO -> new AvroMapper().readerFor(Person.class).with(avroSchema());
+        };
+    }
+
+    private static AvroSchema avroSchema() {
+        try (InputStream in = PayloadFormat.class.getResourceAsStream("/person.avsc")) {
+            return new AvroSchema(new Schema.Parser().parse(in));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.codec;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.junoha.sample.kinesis.springbootdemo.consumer.model.Person;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Decodes the Person records written by the producer's PersonCodec: 0x00, the format id, then the payload.
+ * When SEQUENCE_FLAG is set in the format id, the producer's run id, the record's sequence number and its
+ * produce time in microseconds since the epoch follow as 8 byte big endian values.
+ * <p>
+ * Records that do not start with 0x00 are plain JSON from producers that write no header (the shadowJar
+ * producer and older versions of the Spring Boot one). Thread safe.
+ */
+public class PersonDecoder {
+
+    public static final byte HEADER_MAGIC = 0x00;
+    public static final int HEADER_LENGTH = 2;
+    public static final byte SEQUENCE_FLAG = (byte) 0x80;
+    public static final int SEQUENCED_HEADER_LENGTH = HEADER_LENGTH + 3 * Long.BYTES;
+
+    private final Map<PayloadFormat, ObjectReader> readers = new EnumMap<>(PayloadFormat.class);
+
+    public PersonDecoder() {
+        for (PayloadFormat format : PayloadFormat.values()) {
+            readers.put(format, format.reader());
+        }
+    }
+
+    /**
+     * Format of the record, {@link PayloadFormat#JSON} for records without header.
+     */
+    public static PayloadFormat formatOf(ByteBuffer data) {
+        return hasHeader(data)
+                ? PayloadFormat.of((byte) (data.get(data.position() + 1) & ~SEQUENCE_FLAG))
+                : PayloadFormat.JSON;
+    }
+
+    private static boolean hasHeader(ByteBuffer data) {
+        return data.remaining() >= HEADER_LENGTH && data.get(data.position()) == HEADER_MAGIC;
+    }
+
+    /**
+     * Whether the record carries a run id and a sequence number.
+     */
+    public static boolean hasSequence(ByteBuffer data) {
+        return hasHeader(data) && (data.get(data.position() + 1) & SEQUENCE_FLAG) != 0
+                && data.remaining() >= SEQUENCED_HEADER_LENGTH;
+    }
+
+    /**
+     * Run id of a record for which {@link #hasSequence(ByteBuffer)} is true.
+     */
+    public static long runIdOf(ByteBuffer data) {
+        return data.getLong(data.position() + HEADER_LENGTH);
+    }
+
+    /**
+     * Sequence number of a record for which {@link #hasSequence(ByteBuffer)} is true.
+     */
+    public static long sequenceOf(ByteBuffer data) {
+        return data.getLong(data.position() + HEADER_LENGTH + Long.BYTES);
+    }
+
+    /**
+     * Produce time, in microseconds since the epoch, of a record for which {@link #hasSequence(ByteBuffer)} is true.
+     */
+    public static long produceMicrosOf(ByteBuffer data) {
+        return data.getLong(data.position() + HEADER_LENGTH + 2 * Long.BYTES);
+    }
+
+    static int headerLength(ByteBuffer data) {
+        if (!hasHeader(data)) {
+            return 0;
+        }
+        return (data.get(data.position() + 1) & SEQUENCE_FLAG) != 0 ? SEQUENCED_HEADER_LENGTH : HEADER_LENGTH;
+    }
+
+    /**
+     * Decodes the remaining bytes of the buffer, without moving its position.
+     */
+    public Person decode(ByteBuffer data) {
+        PayloadFormat format = formatOf(data);
+        int skip = headerLength(data);
+        if (skip > data.remaining()) {
+            throw new IllegalArgumentException("Truncated record header");
+        }
+        byte[] bytes;
+        int offset;
+        if (data.hasArray()) {
+            bytes = data.array();
+            offset = data.arrayOffset() + data.position() + skip;
+        } else {
+            bytes = new byte[data.remaining() - skip];
+            data.duplicate().position(data.position() + skip).get(bytes);
+            offset = 0;
+        }
+        try {
+            return readers.get(format).readValue(bytes, offset, data.remaining() - skip);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
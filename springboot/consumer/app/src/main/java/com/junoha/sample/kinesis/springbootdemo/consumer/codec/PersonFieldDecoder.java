@@ -0,0 +1,498 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.util.Utf8;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads only the requested fields of Person records, in the same formats as {@link PersonDecoder}, without building a
+ * Person and stopping as soon as every requested field has been read. Of the pets only their number is read.
+ * <ul>
+ * <li>JSON is scanned in place with absolute gets, so the record's buffer is neither copied nor moved, even when it
+ * is read-only as KCL's are. Only requested string fields allocate, for their String.</li>
+ * <li>Smile and CBOR use a Jackson streaming parser, Avro a {@link BinaryDecoder} reused from record to record. Their
+ * records are copied into a buffer of the decoder, reused too, unless the record's buffer has an accessible array.</li>
+ * </ul>
+ * The values go into one {@link PersonFields}, returned by every decode. Not thread safe; use one per thread.
+ */
+public class PersonFieldDecoder {
+
+    private static final List<String> FIELDS =
+            List.of("id", "date", "score", "firstName", "lastName", "address", "pets");
+    private static final int ID = 0;
+    private static final int DATE = 1;
+    private static final int SCORE = 2;
+    private static final int FIRST_NAME = 3;
+    private static final int LAST_NAME = 4;
+    private static final int ADDRESS = 5;
+    private static final int PETS = 6;
+    private static final byte[][] FIELD_BYTES = FIELDS.stream()
+            .map(field -> field.getBytes(StandardCharsets.US_ASCII)).toArray(byte[][]::new);
+
+    private final int requested;
+    private final PersonFields fields = new PersonFields();
+    private final JsonFactory smileFactory = new SmileFactory();
+    private final JsonFactory cborFactory = new CBORFactory();
+    private BinaryDecoder avroDecoder;
+    private final Utf8 avroString = new Utf8();
+    private byte[] scratch = new byte[1024];
+    // The record's bytes for the binary formats, the scratch buffer or the record buffer's array
+    private byte[] bytes;
+
+    /**
+     * @param requestedFields JSON names of the fields to read, among id, date, score, firstName, lastName, address
+     *                        and pets, for the number of pets
+     */
+    public PersonFieldDecoder(Set<String> requestedFields) {
+        int mask = 0;
+        for (String field : requestedFields) {
+            int index = indexOf(field);
+            if (index < 0) {
+                throw new IllegalArgumentException("Unknown Person field: " + field + ", expected one of " + FIELDS);
+            }
+            mask |= 1 << index;
+        }
+        if (mask == 0) {
+            throw new IllegalArgumentException("No Person field requested");
+        }
+        this.requested = mask;
+    }
+
+    /**
+     * Parses a comma separated list of field names, such as "id,score".
+     */
+    public static Set<String> parseFields(String fields) {
+        Set<String> result = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            if (!field.isBlank()) {
+                result.add(field.trim());
+            }
+        }
+        new PersonFieldDecoder(result);
+        return result;
+    }
+
+    static int indexOf(String field) {
+        return FIELDS.indexOf(field);
+    }
+
+    /**
+     * Reads the requested fields of the remaining bytes of the buffer, without moving its position.
+     *
+     * @return the decoder's PersonFields, overwritten by the next call
+     */
+    public PersonFields decode(ByteBuffer data) {
+        int skip = PersonDecoder.headerLength(data);
+        if (skip > data.remaining()) {
+            throw new IllegalArgumentException("Truncated record header");
+        }
+        fields.clear();
+        int offset = data.position() + skip;
+        try {
+            switch (PersonDecoder.formatOf(data)) {
+                case JSON -> scanJson(data, offset, data.limit());
+                case SMILE -> parse(smileFactory, data, offset);
+                case CBOR -> parse(cborFactory, data, offset);
+                case AVRO -> readAvro(data, offset);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return fields;
+    }
+
+    private boolean done() {
+        return (fields.present & requested) == requested;
+    }
+
+    private boolean wanted(int index) {
+        return index >= 0 && (requested & (1 << index)) != 0;
+    }
+
+    private void setLong(int index, long value) {
+        if (index == ID) {
+            fields.id = value;
+        } else if (index == SCORE) {
+            fields.score = value;
+        } else {
+            throw new IllegalArgumentException("Unexpected number for " + FIELDS.get(index));
+        }
+        fields.present |= 1 << index;
+    }
+
+    private void setString(int index, String value) {
+        switch (index) {
+            case DATE -> fields.date = value;
+            case FIRST_NAME -> fields.firstName = value;
+            case LAST_NAME -> fields.lastName = value;
+            case ADDRESS -> fields.address = value;
+            default -> throw new IllegalArgumentException("Unexpected string for " + FIELDS.get(index));
+        }
+        fields.present |= 1 << index;
+    }
+
+    private void setPets(int count) {
+        fields.pets = count;
+        fields.present |= 1 << PETS;
+    }
+
+    /*
+     * JSON, scanned in place
+     */
+
+    private void scanJson(ByteBuffer data, int start, int limit) {
+        int i = skipWhitespace(data, start, limit);
+        expect(data, i, limit, '{');
+        i = skipWhitespace(data, i + 1, limit);
+        if (i < limit && data.get(i) == '}') {
+            return;
+        }
+        while (true) {
+            expect(data, i, limit, '"');
+            int keyEnd = stringEnd(data, i + 1, limit);
+            int field = matchField(data, i + 1, keyEnd);
+            i = skipWhitespace(data, keyEnd + 1, limit);
+            expect(data, i, limit, ':');
+            i = skipWhitespace(data, i + 1, limit);
+            i = wanted(field) ? readJsonValue(data, i, limit, field) : skipJsonValue(data, i, limit);
+            if (done()) {
+                return;
+            }
+            i = skipWhitespace(data, i, limit);
+            if (i < limit && data.get(i) == ',') {
+                i = skipWhitespace(data, i + 1, limit);
+            } else {
+                expect(data, i, limit, '}');
+                return;
+            }
+        }
+    }
+
+    private static int skipWhitespace(ByteBuffer data, int i, int limit) {
+        while (i < limit) {
+            byte b = data.get(i);
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static void expect(ByteBuffer data, int i, int limit, char expected) {
+        if (i >= limit || data.get(i) != expected) {
+            throw malformed(i, "expected '" + expected + "'");
+        }
+    }
+
+    private static IllegalArgumentException malformed(int i, String message) {
+        return new IllegalArgumentException("Malformed JSON at " + i + ": " + message);
+    }
+
+    /**
+     * Index of the closing quote of the string starting at i, after the opening quote.
+     */
+    private static int stringEnd(ByteBuffer data, int i, int limit) {
+        while (i < limit) {
+            byte b = data.get(i);
+            if (b == '"') {
+                return i;
+            }
+            i += b == '\\' ? 2 : 1;
+        }
+        throw malformed(limit, "unterminated string");
+    }
+
+    private static int matchField(ByteBuffer data, int start, int end) {
+        for (int index = 0; index < FIELD_BYTES.length; index++) {
+            byte[] name = FIELD_BYTES[index];
+            if (name.length == end - start) {
+                int j = 0;
+                while (j < name.length && data.get(start + j) == name[j]) {
+                    j++;
+                }
+                if (j == name.length) {
+                    return index;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private int readJsonValue(ByteBuffer data, int i, int limit, int field) {
+        if (i >= limit) {
+            throw malformed(i, "missing value");
+        }
+        byte b = data.get(i);
+        if (b == 'n') {
+            // null, the field stays absent
+            return skipJsonValue(data, i, limit);
+        }
+        if (b == '"') {
+            int end = stringEnd(data, i + 1, limit);
+            setString(field, jsonString(data, i + 1, end));
+            return end + 1;
+        }
+        if (field == PETS) {
+            return countJsonArray(data, i, limit);
+        }
+        long value = 0;
+        boolean negative = b == '-';
+        int j = negative ? i + 1 : i;
+        int digitsStart = j;
+        try {
+            while (j < limit && (b = data.get(j)) >= '0' && b <= '9') {
+                value = Math.subtractExact(Math.multiplyExact(value, 10), b - '0');
+                j++;
+            }
+            if (j == digitsStart) {
+                throw malformed(i, "expected a value for " + FIELDS.get(field));
+            }
+            if (j < limit && ((b = data.get(j)) == '.' || b == 'e' || b == 'E')) {
+                throw malformed(j, "expected an integer for " + FIELDS.get(field));
+            }
+            setLong(field, negative ? value : Math.negateExact(value));
+        } catch (ArithmeticException e) {
+            throw malformed(i, "integer out of range for " + FIELDS.get(field));
+        }
+        return j;
+    }
+
+    private int countJsonArray(ByteBuffer data, int i, int limit) {
+        expect(data, i, limit, '[');
+        i = skipWhitespace(data, i + 1, limit);
+        int count = 0;
+        if (i < limit && data.get(i) == ']') {
+            setPets(count);
+            return i + 1;
+        }
+        while (true) {
+            i = skipWhitespace(data, skipJsonValue(data, i, limit), limit);
+            count++;
+            if (i < limit && data.get(i) == ',') {
+                i = skipWhitespace(data, i + 1, limit);
+            } else {
+                expect(data, i, limit, ']');
+                setPets(count);
+                return i + 1;
+            }
+        }
+    }
+
+    private static int skipJsonValue(ByteBuffer data, int i, int limit) {
+        if (i >= limit) {
+            throw malformed(i, "missing value");
+        }
+        byte b = data.get(i);
+        if (b == '"') {
+            return stringEnd(data, i + 1, limit) + 1;
+        }
+        if (b == '{' || b == '[') {
+            int depth = 0;
+            while (i < limit) {
+                b = data.get(i);
+                if (b == '"') {
+                    i = stringEnd(data, i + 1, limit);
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if ((b == '}' || b == ']') && --depth == 0) {
+                    return i + 1;
+                }
+                i++;
+            }
+            throw malformed(limit, "unterminated object or array");
+        }
+        // number, true, false or null
+        while (i < limit && (b = data.get(i)) != ',' && b != '}' && b != ']'
+                && b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Decodes the string between start and the closing quote at end, unescaping into the scratch buffer.
+     */
+    private String jsonString(ByteBuffer data, int start, int end) {
+        ensureScratch(end - start);
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            byte b = data.get(i);
+            if (b != '\\') {
+                scratch[n++] = b;
+                continue;
+            }
+            byte escaped = data.get(++i);
+            switch (escaped) {
+                case 'b' -> scratch[n++] = '\b';
+                case 'f' -> scratch[n++] = '\f';
+                case 'n' -> scratch[n++] = '\n';
+                case 'r' -> scratch[n++] = '\r';
+                case 't' -> scratch[n++] = '\t';
+                case 'u' -> {
+                    int codePoint = hex4(data, i + 1, end);
+                    i += 4;
+                    if (Character.isHighSurrogate((char) codePoint) && i + 6 < end
+                            && data.get(i + 1) == '\\' && data.get(i + 2) == 'u') {
+                        int low = hex4(data, i + 3, end);
+                        if (Character.isLowSurrogate((char) low)) {
+                            codePoint = Character.toCodePoint((char) codePoint, (char) low);
+                            i += 6;
+                        }
+                    }
+                    n = putUtf8(codePoint, n);
+                }
+                default -> scratch[n++] = escaped;
+            }
+        }
+        return new String(scratch, 0, n, StandardCharsets.UTF_8);
+    }
+
+    private static int hex4(ByteBuffer data, int i, int end) {
+        if (i + 4 > end) {
+            throw malformed(i, "truncated unicode escape");
+        }
+        int value = 0;
+        for (int j = i; j < i + 4; j++) {
+            int digit = Character.digit(data.get(j), 16);
+            if (digit < 0) {
+                throw malformed(j, "invalid unicode escape");
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Writes the code point as UTF-8; an escape is 6 or 12 bytes long, more than its UTF-8 encoding.
+     */
+    private int putUtf8(int codePoint, int n) {
+        if (codePoint < 0x80) {
+            scratch[n++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            scratch[n++] = (byte) (0xC0 | codePoint >> 6);
+            scratch[n++] = (byte) (0x80 | codePoint & 0x3F);
+        } else if (codePoint < 0x10000) {
+            scratch[n++] = (byte) (0xE0 | codePoint >> 12);
+            scratch[n++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            scratch[n++] = (byte) (0x80 | codePoint & 0x3F);
+        } else {
+            scratch[n++] = (byte) (0xF0 | codePoint >> 18);
+            scratch[n++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+            scratch[n++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            scratch[n++] = (byte) (0x80 | codePoint & 0x3F);
+        }
+        return n;
+    }
+
+    private void ensureScratch(int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+    }
+
+    /*
+     * Binary formats
+     */
+
+    /**
+     * Points {@link #bytes} to the buffer's array, or copies the record into {@link #scratch}.
+     *
+     * @return Offset of the record in {@link #bytes}
+     */
+    private int array(ByteBuffer data, int offset) {
+        if (data.hasArray()) {
+            bytes = data.array();
+            return data.arrayOffset() + offset;
+        }
+        int length = data.limit() - offset;
+        ensureScratch(length);
+        data.duplicate().position(offset).get(scratch, 0, length);
+        bytes = scratch;
+        return 0;
+    }
+
+    private void parse(JsonFactory factory, ByteBuffer data, int offset) throws IOException {
+        int start = array(data, offset);
+        try (JsonParser parser = factory.createParser(bytes, start, data.limit() - offset)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Expected a Person object");
+            }
+            while (!done() && parser.nextToken() == JsonToken.FIELD_NAME) {
+                int field = indexOf(parser.getCurrentName());
+                JsonToken value = parser.nextToken();
+                if (!wanted(field) || value == JsonToken.VALUE_NULL) {
+                    parser.skipChildren();
+                } else if (value == JsonToken.VALUE_NUMBER_INT) {
+                    setLong(field, parser.getLongValue());
+                } else if (value == JsonToken.VALUE_STRING) {
+                    setString(field, parser.getText());
+                } else if (value == JsonToken.START_ARRAY && field == PETS) {
+                    int count = 0;
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        parser.skipChildren();
+                        count++;
+                    }
+                    setPets(count);
+                } else {
+                    throw new IllegalArgumentException("Unexpected " + value + " for " + FIELDS.get(field));
+                }
+            }
+        }
+    }
+
+    private void readAvro(ByteBuffer data, int offset) throws IOException {
+        int start = array(data, offset);
+        avroDecoder = DecoderFactory.get().binaryDecoder(bytes, start, data.limit() - offset, avroDecoder);
+        // Fields in the order of person.avsc, the same as FIELDS; the pets come last, so are only read if requested
+        for (int field = 0; field < FIELDS.size() && !done(); field++) {
+            boolean number = field == ID || field == SCORE;
+            if (field == PETS) {
+                // Blocks of pets, each pet being two strings, until an empty block
+                long count = 0;
+                for (long block = avroDecoder.readArrayStart(); block != 0; block = avroDecoder.arrayNext()) {
+                    for (long pet = 0; pet < block; pet++) {
+                        avroDecoder.skipString();
+                        avroDecoder.skipString();
+                    }
+                    count += block;
+                }
+                setPets((int) count);
+            } else if (!wanted(field)) {
+                if (number) {
+                    avroDecoder.readLong();
+                } else {
+                    avroDecoder.skipString();
+                }
+            } else if (number) {
+                setLong(field, avroDecoder.readLong());
+            } else {
+                setString(field, avroDecoder.readString(avroString).toString());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder names = new StringBuilder();
+        for (int index = 0; index < FIELDS.size(); index++) {
+            if (wanted(index)) {
+                names.append(names.length() == 0 ? "" : ",").append(FIELDS.get(index));
+            }
+        }
+        return names.toString();
+    }
+}
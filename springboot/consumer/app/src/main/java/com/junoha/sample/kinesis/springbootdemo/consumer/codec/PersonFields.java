@@ -0,0 +1,69 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.codec;
+
+/**
+ * The fields of a Person record read by {@link PersonFieldDecoder}. The decoder reuses the instance, so the values are
+ * valid until its next decode; fields that were not requested or not in the record are 0 or null.
+ */
+public final class PersonFields {
+
+    long id;
+    String date;
+    long score;
+    String firstName;
+    String lastName;
+    String address;
+    int pets;
+    int present;
+
+    void clear() {
+        id = 0;
+        date = null;
+        score = 0;
+        firstName = null;
+        lastName = null;
+        address = null;
+        pets = 0;
+        present = 0;
+    }
+
+    /**
+     * Whether the record had the field, which was requested.
+     *
+     * @param field JSON name of the field
+     */
+    public boolean has(String field) {
+        int index = PersonFieldDecoder.indexOf(field);
+        return index >= 0 && (present & (1 << index)) != 0;
+    }
+
+    public long id() {
+        return id;
+    }
+
+    public String date() {
+        return date;
+    }
+
+    public long score() {
+        return score;
+    }
+
+    public String firstName() {
+        return firstName;
+    }
+
+    public String lastName() {
+        return lastName;
+    }
+
+    public String address() {
+        return address;
+    }
+
+    /**
+     * Number of pets.
+     */
+    public int pets() {
+        return pets;
+    }
+}
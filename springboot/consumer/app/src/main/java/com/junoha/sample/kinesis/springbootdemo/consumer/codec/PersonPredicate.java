@@ -0,0 +1,125 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.codec;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Conditions on Person fields joined by {@code &&}, such as {@code score>1000 && pets>0}, tested on the fields read by
+ * a {@link PersonFieldDecoder}, so that records can be filtered before they are decoded.
+ * <p>
+ * id, score and pets (the number of pets) compare as numbers with =, !=, &lt;, &lt;=, &gt; and &gt;=; date, firstName,
+ * lastName and address compare with = and != to a value, which may be in double quotes. A record without one of the
+ * fields does not match. Immutable.
+ */
+public class PersonPredicate {
+
+    private static final Pattern CONDITION = Pattern.compile("\\s*(\\w+)\\s*(<=|>=|!=|=|<|>)\\s*(.*?)\\s*");
+    private static final Set<String> NUMBERS = Set.of("id", "score", "pets");
+
+    private static final class Condition {
+        private final String field;
+        private final String operator;
+        private final long number;
+        private final String string;
+
+        private Condition(String field, String operator, String value) {
+            this.field = field;
+            this.operator = operator;
+            if (NUMBERS.contains(field)) {
+                try {
+                    this.number = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Expected a number for " + field + ": " + value);
+                }
+                this.string = null;
+            } else {
+                if (!operator.equals("=") && !operator.equals("!=")) {
+                    throw new IllegalArgumentException(field + " only compares with = and !=");
+                }
+                this.number = 0;
+                this.string = value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")
+                        ? value.substring(1, value.length() - 1) : value;
+            }
+        }
+
+        private boolean test(PersonFields fields) {
+            if (!fields.has(field)) {
+                return false;
+            }
+            if (string != null) {
+                String value = switch (field) {
+                    case "date" -> fields.date();
+                    case "firstName" -> fields.firstName();
+                    case "lastName" -> fields.lastName();
+                    default -> fields.address();
+                };
+                return operator.equals("=") == string.equals(value);
+            }
+            long value = switch (field) {
+                case "id" -> fields.id();
+                case "score" -> fields.score();
+                default -> fields.pets();
+            };
+            return switch (operator) {
+                case "=" -> value == number;
+                case "!=" -> value != number;
+                case "<" -> value < number;
+                case "<=" -> value <= number;
+                case ">" -> value > number;
+                default -> value >= number;
+            };
+        }
+    }
+
+    private final String expression;
+    private final List<Condition> conditions = new ArrayList<>();
+    private final Set<String> fields = new LinkedHashSet<>();
+
+    private PersonPredicate(String expression) {
+        this.expression = expression.trim();
+        for (String part : expression.split("&&")) {
+            Matcher matcher = CONDITION.matcher(part);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("Invalid condition: " + part.trim());
+            }
+            String field = matcher.group(1);
+            if (PersonFieldDecoder.indexOf(field) < 0) {
+                throw new IllegalArgumentException("Unknown Person field in condition: " + part.trim());
+            }
+            conditions.add(new Condition(field, matcher.group(2), matcher.group(3)));
+            fields.add(field);
+        }
+    }
+
+    /**
+     * @param expression Conditions joined by &&, e.g. "score>1000 && pets>0"
+     */
+    public static PersonPredicate parse(String expression) {
+        return new PersonPredicate(expression);
+    }
+
+    /**
+     * Fields the PersonFieldDecoder has to read for {@link #test(PersonFields)}.
+     */
+    public Set<String> fields() {
+        return fields;
+    }
+
+    public boolean test(PersonFields fields) {
+        for (Condition condition : conditions) {
+            if (!condition.test(fields)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -0,0 +1,68 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.local;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Adds latency and throttling to the local clients.
+ * <p>
+ * Every call completes after latencyMillis plus a random jitter of up to jitterMillis. Calls that can be
+ * throttled fail with the given probability, like a real service answering over its limits.
+ */
+public class FaultInjector {
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "local-aws-latency");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double throttleRate;
+
+    /**
+     * @param throttleRate Probability between 0 and 1 that a throttleable call fails
+     */
+    public FaultInjector(long latencyMillis, long jitterMillis, double throttleRate) {
+        if (throttleRate < 0 || throttleRate > 1) {
+            throw new IllegalArgumentException("Throttle rate should be between 0 and 1: " + throttleRate);
+        }
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.throttleRate = throttleRate;
+    }
+
+    public boolean throttle() {
+        return throttleRate > 0 && ThreadLocalRandom.current().nextDouble() < throttleRate;
+    }
+
+    /**
+     * Runs the call and completes the future after the injected latency. Exceptions thrown by the call
+     * complete the future exceptionally, as the SDK does.
+     */
+    public <T> CompletableFuture<T> respond(Supplier<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        T response;
+        try {
+            response = call.get();
+        } catch (RuntimeException e) {
+            return complete(future, () -> future.completeExceptionally(e));
+        }
+        return complete(future, () -> future.complete(response));
+    }
+
+    private <T> CompletableFuture<T> complete(CompletableFuture<T> future, Runnable completion) {
+        long delay = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        if (delay <= 0) {
+            completion.run();
+        } else {
+            SCHEDULER.schedule(completion, delay, TimeUnit.MILLISECONDS);
+        }
+        return future;
+    }
+}
@@ -0,0 +1,42 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.local;
+
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
+import software.amazon.awssdk.services.cloudwatch.model.PutMetricDataRequest;
+import software.amazon.awssdk.services.cloudwatch.model.PutMetricDataResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process stand-in for CloudWatch. KCL metrics are counted and discarded.
+ */
+public class LocalCloudWatchClient implements CloudWatchAsyncClient {
+
+    private final FaultInjector faults;
+    private final LongAdder metricData = new LongAdder();
+
+    public LocalCloudWatchClient(FaultInjector faults) {
+        this.faults = faults;
+    }
+
+    @Override
+    public CompletableFuture<PutMetricDataResponse> putMetricData(PutMetricDataRequest request) {
+        return faults.respond(() -> {
+            metricData.add(request.metricData().size());
+            return PutMetricDataResponse.builder().build();
+        });
+    }
+
+    public long getMetricData() {
+        return metricData.sum();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+}
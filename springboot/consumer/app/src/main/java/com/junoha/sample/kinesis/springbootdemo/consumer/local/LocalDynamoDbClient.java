@@ -0,0 +1,249 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.local;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeAction;
+import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValueUpdate;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.CreateTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.CreateTableResponse;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableResponse;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.ExpectedAttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
+import software.amazon.awssdk.services.dynamodb.model.KeyType;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ResourceInUseException;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.TableDescription;
+import software.amazon.awssdk.services.dynamodb.model.TableStatus;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process stand-in for the DynamoDB lease table.
+ * <p>
+ * Supports the calls made by KCL's lease refresher: CreateTable, DescribeTable, GetItem, PutItem, UpdateItem,
+ * DeleteItem and Scan, with "Expected" conditions and "AttributeUpdates" (PUT, DELETE, ADD). Tables are keyed
+ * by a single string hash key and kept in memory, so leases and checkpoints are lost when the process exits.
+ */
+public class LocalDynamoDbClient implements DynamoDbAsyncClient {
+
+    private final FaultInjector faults;
+    private final Map<String, Table> tables = new ConcurrentHashMap<>();
+
+    public LocalDynamoDbClient(FaultInjector faults) {
+        this.faults = faults;
+    }
+
+    private static final class Table {
+        private final String hashKey;
+        private final List<KeySchemaElement> keySchema;
+        private final List<AttributeDefinition> attributeDefinitions;
+        private final Instant created = Instant.now();
+        private final NavigableMap<String, Map<String, AttributeValue>> items = new TreeMap<>();
+
+        private Table(List<KeySchemaElement> keySchema, List<AttributeDefinition> attributeDefinitions) {
+            this.keySchema = keySchema;
+            this.attributeDefinitions = attributeDefinitions;
+            this.hashKey = keySchema.stream()
+                    .filter(k -> k.keyType() == KeyType.HASH)
+                    .findFirst()
+                    .orElseThrow(() -> DynamoDbException.builder().message("No hash key").build())
+                    .attributeName();
+        }
+
+        private String key(Map<String, AttributeValue> key) {
+            AttributeValue value = key.get(hashKey);
+            if (value == null || value.s() == null) {
+                throw DynamoDbException.builder().message("Missing string key " + hashKey).build();
+            }
+            return value.s();
+        }
+    }
+
+    private Table table(String tableName) {
+        Table table = tables.get(tableName);
+        if (table == null) {
+            throw ResourceNotFoundException.builder().message("Table " + tableName + " not found").build();
+        }
+        return table;
+    }
+
+    private static void checkExpected(Map<String, AttributeValue> item, Map<String, ExpectedAttributeValue> expected) {
+        for (Map.Entry<String, ExpectedAttributeValue> entry : expected.entrySet()) {
+            AttributeValue actual = item == null ? null : item.get(entry.getKey());
+            ExpectedAttributeValue condition = entry.getValue();
+            boolean matches;
+            if (Boolean.FALSE.equals(condition.exists())) {
+                matches = actual == null;
+            } else if (condition.value() != null) {
+                matches = condition.value().equals(actual);
+            } else {
+                matches = actual != null;
+            }
+            if (!matches) {
+                throw ConditionalCheckFailedException.builder()
+                        .message("The conditional request failed")
+                        .build();
+            }
+        }
+    }
+
+    private static AttributeValue add(AttributeValue current, AttributeValue delta) {
+        if (current == null) {
+            return delta;
+        }
+        return AttributeValue.builder().n(new BigDecimal(current.n()).add(new BigDecimal(delta.n())).toString()).build();
+    }
+
+    @Override
+    public CompletableFuture<CreateTableResponse> createTable(CreateTableRequest request) {
+        return faults.respond(() -> {
+            Table table = new Table(request.keySchema(), request.attributeDefinitions());
+            if (tables.putIfAbsent(request.tableName(), table) != null) {
+                throw ResourceInUseException.builder().message("Table already exists: " + request.tableName()).build();
+            }
+            return CreateTableResponse.builder().tableDescription(describe(request.tableName(), table)).build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<DescribeTableResponse> describeTable(DescribeTableRequest request) {
+        return faults.respond(() -> DescribeTableResponse.builder()
+                .table(describe(request.tableName(), table(request.tableName())))
+                .build());
+    }
+
+    private static TableDescription describe(String tableName, Table table) {
+        synchronized (table) {
+            return TableDescription.builder()
+                    .tableName(tableName)
+                    .tableStatus(TableStatus.ACTIVE)
+                    .keySchema(table.keySchema)
+                    .attributeDefinitions(table.attributeDefinitions)
+                    .creationDateTime(table.created)
+                    .itemCount((long) table.items.size())
+                    .build();
+        }
+    }
+
+    @Override
+    public CompletableFuture<GetItemResponse> getItem(GetItemRequest request) {
+        return faults.respond(() -> {
+            Table table = table(request.tableName());
+            synchronized (table) {
+                Map<String, AttributeValue> item = table.items.get(table.key(request.key()));
+                return item == null
+                        ? GetItemResponse.builder().build()
+                        : GetItemResponse.builder().item(new HashMap<>(item)).build();
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<PutItemResponse> putItem(PutItemRequest request) {
+        return faults.respond(() -> {
+            Table table = table(request.tableName());
+            synchronized (table) {
+                String key = table.key(request.item());
+                checkExpected(table.items.get(key), request.expected());
+                table.items.put(key, new HashMap<>(request.item()));
+            }
+            return PutItemResponse.builder().build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<UpdateItemResponse> updateItem(UpdateItemRequest request) {
+        return faults.respond(() -> {
+            Table table = table(request.tableName());
+            synchronized (table) {
+                String key = table.key(request.key());
+                Map<String, AttributeValue> current = table.items.get(key);
+                checkExpected(current, request.expected());
+                Map<String, AttributeValue> item = current == null ? new HashMap<>(request.key()) : new HashMap<>(current);
+                for (Map.Entry<String, AttributeValueUpdate> entry : request.attributeUpdates().entrySet()) {
+                    AttributeValueUpdate update = entry.getValue();
+                    AttributeAction action = update.action() == null ? AttributeAction.PUT : update.action();
+                    switch (action) {
+                        case DELETE -> item.remove(entry.getKey());
+                        case ADD -> item.put(entry.getKey(), add(item.get(entry.getKey()), update.value()));
+                        default -> item.put(entry.getKey(), update.value());
+                    }
+                }
+                table.items.put(key, item);
+                return UpdateItemResponse.builder().build();
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<DeleteItemResponse> deleteItem(DeleteItemRequest request) {
+        return faults.respond(() -> {
+            Table table = table(request.tableName());
+            synchronized (table) {
+                String key = table.key(request.key());
+                checkExpected(table.items.get(key), request.expected());
+                table.items.remove(key);
+            }
+            return DeleteItemResponse.builder().build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<ScanResponse> scan(ScanRequest request) {
+        return faults.respond(() -> {
+            Table table = table(request.tableName());
+            synchronized (table) {
+                NavigableMap<String, Map<String, AttributeValue>> items = !request.exclusiveStartKey().isEmpty()
+                        ? table.items.tailMap(table.key(request.exclusiveStartKey()), false)
+                        : table.items;
+                int limit = request.limit() == null ? Integer.MAX_VALUE : request.limit();
+                List<Map<String, AttributeValue>> result = new ArrayList<>();
+                String lastKey = null;
+                for (Map.Entry<String, Map<String, AttributeValue>> entry : items.entrySet()) {
+                    if (result.size() >= limit) {
+                        break;
+                    }
+                    result.add(new HashMap<>(entry.getValue()));
+                    lastKey = entry.getKey();
+                }
+                ScanResponse.Builder response = ScanResponse.builder().items(result).count(result.size());
+                if (lastKey != null && !lastKey.equals(table.items.lastKey())) {
+                    response.lastEvaluatedKey(Map.of(table.hashKey, AttributeValue.builder().s(lastKey).build()));
+                }
+                return response.build();
+            }
+        });
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+}
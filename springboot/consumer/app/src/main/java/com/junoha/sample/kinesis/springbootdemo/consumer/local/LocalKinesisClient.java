@@ -0,0 +1,262 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.local;
+
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.model.DescribeStreamSummaryRequest;
+import software.amazon.awssdk.services.kinesis.model.DescribeStreamSummaryResponse;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.GetShardIteratorRequest;
+import software.amazon.awssdk.services.kinesis.model.GetShardIteratorResponse;
+import software.amazon.awssdk.services.kinesis.model.HashKeyRange;
+import software.amazon.awssdk.services.kinesis.model.InvalidArgumentException;
+import software.amazon.awssdk.services.kinesis.model.ListShardsRequest;
+import software.amazon.awssdk.services.kinesis.model.ListShardsResponse;
+import software.amazon.awssdk.services.kinesis.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.kinesis.model.Record;
+import software.amazon.awssdk.services.kinesis.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.kinesis.model.SequenceNumberRange;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+import software.amazon.awssdk.services.kinesis.model.StreamDescriptionSummary;
+import software.amazon.awssdk.services.kinesis.model.StreamStatus;
+
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process stand-in for Kinesis Data Streams, serving shards pre-filled with synthetic Person records.
+ * <p>
+ * Supports what KCL needs for polling: ListShards, DescribeStreamSummary, GetShardIterator and GetRecords.
+ * Shard iterators are "shardIndex/position" and never expire. Record i of a shard arrived i milliseconds
+ * after the first one, the last record arriving when the client was created.
+ */
+public class LocalKinesisClient implements KinesisAsyncClient {
+
+    private static final int MAX_RECORDS_PER_GET = 10000;
+    private static final BigInteger MAX_HASH_KEY = BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE);
+
+    private final String streamName;
+    private final FaultInjector faults;
+    private final List<LocalShard> shards = new ArrayList<>();
+
+    private final LongAdder getRecordsCalls = new LongAdder();
+    private final LongAdder throttledCalls = new LongAdder();
+    private final LongAdder servedRecords = new LongAdder();
+    private final LongAdder servedBytes = new LongAdder();
+
+    public LocalKinesisClient(String streamName, int shardCount, int recordsPerShard, FaultInjector faults) {
+        if (shardCount <= 0 || recordsPerShard < 0) {
+            throw new IllegalArgumentException("Invalid local stream: " + shardCount + " shards, "
+                    + recordsPerShard + " records per shard");
+        }
+        this.streamName = streamName;
+        this.faults = faults;
+        Instant end = Instant.now();
+        BigInteger range = MAX_HASH_KEY.divide(BigInteger.valueOf(shardCount));
+        for (int i = 0; i < shardCount; i++) {
+            BigInteger startingHashKey = range.multiply(BigInteger.valueOf(i));
+            BigInteger endingHashKey = i == shardCount - 1 ? MAX_HASH_KEY : startingHashKey.add(range).subtract(BigInteger.ONE);
+            shards.add(new LocalShard(i, startingHashKey, endingHashKey, recordsPerShard, end));
+        }
+    }
+
+    private static final class LocalShard {
+        private final int index;
+        private final String shardId;
+        private final BigInteger startingHashKey;
+        private final BigInteger endingHashKey;
+        private final byte[][] data;
+        private final String[] partitionKeys;
+        private final Instant firstArrival;
+
+        private LocalShard(int index, BigInteger startingHashKey, BigInteger endingHashKey, int records, Instant end) {
+            this.index = index;
+            this.shardId = String.format("shardId-%012d", index);
+            this.startingHashKey = startingHashKey;
+            this.endingHashKey = endingHashKey;
+            this.data = new byte[records][];
+            this.partitionKeys = new String[records];
+            this.firstArrival = end.minusMillis(records);
+            SyntheticPersons persons = new SyntheticPersons(index);
+            for (int i = 0; i < records; i++) {
+                long id = (long) i * 1000 + index;
+                data[i] = persons.next(id, arrival(i));
+                partitionKeys[i] = Long.toString(id);
+            }
+        }
+
+        private Instant arrival(int position) {
+            return firstArrival.plusMillis(position);
+        }
+
+        private String sequenceNumber(int position) {
+            return String.format("%d%019d", index + 1, position);
+        }
+
+        private int position(String sequenceNumber) {
+            return Integer.parseInt(sequenceNumber.substring(sequenceNumber.length() - 19));
+        }
+
+        private int size() {
+            return data.length;
+        }
+
+        private Shard describe() {
+            return Shard.builder()
+                    .shardId(shardId)
+                    .hashKeyRange(HashKeyRange.builder()
+                            .startingHashKey(startingHashKey.toString())
+                            .endingHashKey(endingHashKey.toString())
+                            .build())
+                    .sequenceNumberRange(SequenceNumberRange.builder()
+                            .startingSequenceNumber(sequenceNumber(0))
+                            .build())
+                    .build();
+        }
+    }
+
+    private void checkStream(String name) {
+        if (!streamName.equals(name)) {
+            throw ResourceNotFoundException.builder().message("Stream " + name + " not found").build();
+        }
+    }
+
+    private LocalShard shard(String shardId) {
+        for (LocalShard shard : shards) {
+            if (shard.shardId.equals(shardId)) {
+                return shard;
+            }
+        }
+        throw ResourceNotFoundException.builder().message("Shard " + shardId + " not found").build();
+    }
+
+    @Override
+    public CompletableFuture<ListShardsResponse> listShards(ListShardsRequest request) {
+        return faults.respond(() -> {
+            if (request.streamName() != null) {
+                checkStream(request.streamName());
+            }
+            List<Shard> result = new ArrayList<>();
+            for (LocalShard shard : shards) {
+                result.add(shard.describe());
+            }
+            return ListShardsResponse.builder().shards(result).build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<DescribeStreamSummaryResponse> describeStreamSummary(DescribeStreamSummaryRequest request) {
+        return faults.respond(() -> {
+            checkStream(request.streamName());
+            return DescribeStreamSummaryResponse.builder()
+                    .streamDescriptionSummary(StreamDescriptionSummary.builder()
+                            .streamName(streamName)
+                            .streamARN("arn:aws:kinesis:local:000000000000:stream/" + streamName)
+                            .streamStatus(StreamStatus.ACTIVE)
+                            .openShardCount(shards.size())
+                            .retentionPeriodHours(24)
+                            .streamCreationTimestamp(shards.get(0).firstArrival)
+                            .build())
+                    .build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<GetShardIteratorResponse> getShardIterator(GetShardIteratorRequest request) {
+        return faults.respond(() -> {
+            checkStream(request.streamName());
+            LocalShard shard = shard(request.shardId());
+            int position = switch (request.shardIteratorType()) {
+                case TRIM_HORIZON -> 0;
+                case LATEST -> shard.size();
+                case AT_SEQUENCE_NUMBER -> shard.position(request.startingSequenceNumber());
+                case AFTER_SEQUENCE_NUMBER -> shard.position(request.startingSequenceNumber()) + 1;
+                case AT_TIMESTAMP -> (int) Math.max(0, Math.min(shard.size(),
+                        request.timestamp().toEpochMilli() - shard.firstArrival.toEpochMilli()));
+                default -> throw InvalidArgumentException.builder()
+                        .message("Invalid shard iterator type: " + request.shardIteratorTypeAsString())
+                        .build();
+            };
+            return GetShardIteratorResponse.builder()
+                    .shardIterator(shard.index + "/" + Math.min(position, shard.size()))
+                    .build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<GetRecordsResponse> getRecords(GetRecordsRequest request) {
+        getRecordsCalls.increment();
+        return faults.respond(() -> {
+            if (faults.throttle()) {
+                throttledCalls.increment();
+                throw ProvisionedThroughputExceededException.builder()
+                        .message("Rate exceeded for shard (injected)")
+                        .build();
+            }
+            String[] iterator = request.shardIterator().split("/");
+            LocalShard shard = shards.get(Integer.parseInt(iterator[0]));
+            int position = Integer.parseInt(iterator[1]);
+            int limit = request.limit() == null ? MAX_RECORDS_PER_GET : Math.min(request.limit(), MAX_RECORDS_PER_GET);
+            int end = Math.min(shard.size(), position + limit);
+
+            List<Record> records = new ArrayList<>(end - position);
+            long bytes = 0;
+            for (int i = position; i < end; i++) {
+                records.add(Record.builder()
+                        .sequenceNumber(shard.sequenceNumber(i))
+                        .approximateArrivalTimestamp(shard.arrival(i))
+                        .partitionKey(shard.partitionKeys[i])
+                        .data(SdkBytes.fromByteArray(shard.data[i]))
+                        .build());
+                bytes += shard.data[i].length;
+            }
+            servedRecords.add(records.size());
+            servedBytes.add(bytes);
+            return GetRecordsResponse.builder()
+                    .records(records)
+                    .nextShardIterator(shard.index + "/" + end)
+                    .millisBehindLatest((long) (shard.size() - end))
+                    .build();
+        });
+    }
+
+    public long getGetRecordsCalls() {
+        return getRecordsCalls.sum();
+    }
+
+    public long getThrottledCalls() {
+        return throttledCalls.sum();
+    }
+
+    public long getServedRecords() {
+        return servedRecords.sum();
+    }
+
+    public long getServedBytes() {
+        return servedBytes.sum();
+    }
+
+    /**
+     * Total records pre-filled in all shards.
+     */
+    public long getTotalRecords() {
+        long total = 0;
+        for (LocalShard shard : shards) {
+            total += shard.size();
+        }
+        return total;
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+}
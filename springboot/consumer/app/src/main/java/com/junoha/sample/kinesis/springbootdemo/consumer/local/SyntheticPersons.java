@@ -0,0 +1,60 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.local;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+/**
+ * Person records in the same JSON layout as the producer's, without Faker so the consumer does not need it.
+ * Values are drawn from small fixed vocabularies with a seeded Random, so every run serves the same data.
+ */
+class SyntheticPersons {
+
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final String[] FIRST_NAMES = {"James", "Mary", "Robert", "Patricia", "John", "Jennifer",
+            "Michael", "Linda", "William", "Elizabeth"};
+    private static final String[] LAST_NAMES = {"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia",
+            "Miller", "Davis", "Rodriguez", "Martinez"};
+    private static final String[] STREETS = {"Main Street", "Oak Avenue", "Pine Road", "Maple Lane", "Cedar Court"};
+    private static final String[] CITIES = {"Springfield", "Riverside", "Franklin", "Greenville", "Bristol"};
+    private static final String[] ANIMALS = {"dog", "cat", "rabbit", "hamster", "parrot", "turtle"};
+    private static final String[] PET_NAMES = {"Bowie", "Prince", "Madonna", "Bjork", "Sting", "Adele"};
+
+    private final Random random;
+
+    SyntheticPersons(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param id        Person.id, also used as the partition key
+     * @param timestamp Value of Person.date
+     */
+    byte[] next(long id, Instant timestamp) {
+        StringBuilder json = new StringBuilder(256)
+                .append("{\"id\":").append(id)
+                .append(",\"date\":\"").append(DATE_FORMAT.format(timestamp))
+                .append("\",\"score\":").append((long) (random.nextDouble() * 1e10))
+                .append(",\"firstName\":\"").append(pick(FIRST_NAMES))
+                .append("\",\"lastName\":\"").append(pick(LAST_NAMES))
+                .append("\",\"address\":\"").append(100 + random.nextInt(9900)).append(' ').append(pick(STREETS))
+                .append(", ").append(pick(CITIES)).append(", ").append(10000 + random.nextInt(90000))
+                .append("\",\"pets\":[");
+        int pets = random.nextInt(4);
+        for (int i = 0; i < pets; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"type\":\"").append(pick(ANIMALS))
+                    .append("\",\"name\":\"").append(pick(PET_NAMES)).append("\"}");
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -2,8 +2,25 @@ package com.junoha.sample.kinesis.springbootdemo.consumer.service;
 
 import com.amazonaws.xray.AWSXRay;
 import com.amazonaws.xray.AWSXRayRecorder;
+import com.amazonaws.xray.entities.Entity;
 import com.amazonaws.xray.entities.Segment;
+import com.junoha.sample.kinesis.springbootdemo.consumer.codec.PersonFieldDecoder;
+import com.junoha.sample.kinesis.springbootdemo.consumer.codec.PersonPredicate;
+import com.junoha.sample.kinesis.springbootdemo.consumer.local.FaultInjector;
+import com.junoha.sample.kinesis.springbootdemo.consumer.local.LocalCloudWatchClient;
+import com.junoha.sample.kinesis.springbootdemo.consumer.local.LocalDynamoDbClient;
+import com.junoha.sample.kinesis.springbootdemo.consumer.local.LocalKinesisClient;
+import com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor.CheckpointPolicy;
+import com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor.DeadLetterStore;
+import com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor.Deduplicator;
+import com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor.KclRecordProcessor;
 import com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor.KclRecordProcessorFactory;
+import com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor.KeyOrderedExecutor;
+import com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor.RetryScheduler;
+import com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor.SimulatedDownstream;
+import com.junoha.sample.kinesis.springbootdemo.consumer.sketch.SketchReport;
+import com.junoha.sample.kinesis.springbootdemo.consumer.window.WindowAggregator;
+import com.junoha.sample.kinesis.springbootdemo.consumer.window.WindowStateStore;
 import lombok.Synchronized;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,10 +39,15 @@ import software.amazon.kinesis.common.KinesisClientUtil;
 import software.amazon.kinesis.coordinator.Scheduler;
 import software.amazon.kinesis.retrieval.polling.PollingConfig;
 
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.Set;
 import java.util.TimeZone;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -34,6 +56,9 @@ public class ConsumerService {
     // By default, Logback is used
     // https://docs.spring.io/spring-boot/docs/current/reference/html/spring-boot-features.html#boot-features-logging
     private static final Logger log = LoggerFactory.getLogger(ConsumerService.class);
+    private static final ScheduledExecutorService EXECUTOR = Executors.newScheduledThreadPool(1);
+    // Record processors drain their workers, then checkpoint
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = KclRecordProcessor.DRAIN_TIMEOUT_MILLIS + 10000L;
 
     @Value(value = "${aws.kinesis.region_name}")
     private String regionName;
@@ -53,6 +78,111 @@ public class ConsumerService {
     @Value(value = "${aws.kinesis.fanout}")
     private boolean fanout;
 
+    @Value(value = "${aws.kinesis.processing_threads}")
+    private int processingThreads;
+
+    @Value(value = "${aws.kinesis.processing_queue_size}")
+    private int processingQueueSize;
+
+    @Value(value = "${aws.kinesis.downstream_latency_millis}")
+    private long downstreamLatencyMillis;
+
+    @Value(value = "${aws.kinesis.downstream_failure_rate}")
+    private double downstreamFailureRate;
+
+    @Value(value = "${aws.kinesis.decode_fields}")
+    private String decodeFields;
+
+    @Value(value = "${aws.kinesis.record_filter}")
+    private String recordFilter;
+
+    @Value(value = "${aws.kinesis.dedup.mode}")
+    private String dedupMode;
+
+    @Value(value = "${aws.kinesis.dedup.key}")
+    private String dedupKey;
+
+    @Value(value = "${aws.kinesis.dedup.capacity}")
+    private int dedupCapacity;
+
+    @Value(value = "${aws.kinesis.dedup.false_positive_rate}")
+    private double dedupFalsePositiveRate;
+
+    @Value(value = "${aws.kinesis.dedup.window_millis}")
+    private long dedupWindowMillis;
+
+    @Value(value = "${aws.kinesis.window.size_millis}")
+    private long windowSizeMillis;
+
+    @Value(value = "${aws.kinesis.window.slide_millis}")
+    private long windowSlideMillis;
+
+    @Value(value = "${aws.kinesis.window.allowed_lateness_millis}")
+    private long windowAllowedLatenessMillis;
+
+    @Value(value = "${aws.kinesis.window.state_directory}")
+    private String windowStateDirectory;
+
+    @Value(value = "${aws.kinesis.sketch.enabled}")
+    private boolean sketchEnabled;
+
+    @Value(value = "${aws.kinesis.sketch.precision}")
+    private int sketchPrecision;
+
+    @Value(value = "${aws.kinesis.sketch.counters}")
+    private int sketchCounters;
+
+    @Value(value = "${aws.kinesis.sketch.top_keys}")
+    private int sketchTopKeys;
+
+    @Value(value = "${aws.kinesis.retry.max_attempts}")
+    private int retryMaxAttempts;
+
+    @Value(value = "${aws.kinesis.retry.initial_backoff_millis}")
+    private long retryInitialBackoffMillis;
+
+    @Value(value = "${aws.kinesis.retry.max_backoff_millis}")
+    private long retryMaxBackoffMillis;
+
+    @Value(value = "${aws.kinesis.dead_letter.directory}")
+    private String deadLetterDirectory;
+
+    @Value(value = "${aws.kinesis.dead_letter.replay}")
+    private boolean deadLetterReplay;
+
+    @Value(value = "${aws.kinesis.checkpoint.max_records}")
+    private long checkpointMaxRecords;
+
+    @Value(value = "${aws.kinesis.checkpoint.max_bytes}")
+    private long checkpointMaxBytes;
+
+    @Value(value = "${aws.kinesis.checkpoint.interval_millis}")
+    private long checkpointIntervalMillis;
+
+    @Value(value = "${aws.kinesis.checkpoint.min_interval_millis}")
+    private long checkpointMinIntervalMillis;
+
+    @Value(value = "${aws.kinesis.checkpoint.adaptive}")
+    private boolean checkpointAdaptive;
+
+    @Value(value = "${aws.kinesis.local.enabled}")
+    private boolean local;
+
+    @Value(value = "${aws.kinesis.local.shards}")
+    private int localShards;
+
+    @Value(value = "${aws.kinesis.local.records_per_shard}")
+    private int localRecordsPerShard;
+
+    @Value(value = "${aws.kinesis.local.latency_millis}")
+    private long localLatencyMillis;
+
+    @Value(value = "${aws.kinesis.local.jitter_millis}")
+    private long localJitterMillis;
+
+    @Value(value = "${aws.kinesis.local.throttle_rate}")
+    private double localThrottleRate;
+
     private KinesisAsyncClient getKinesisClient(Region region) {
         if (fanout) {
             // Add maxConcurrency tuning for fan-out
@@ -124,15 +254,119 @@ public class ConsumerService {
         }
     }
 
+    /**
+     * Logs how fast the local stream is read, every 10 seconds.
+     */
+    private void reportLocalProgress(LocalKinesisClient localKinesisClient) {
+        final long[] last = {0, 0, System.nanoTime()};
+        EXECUTOR.scheduleAtFixedRate(() -> {
+            long records = localKinesisClient.getServedRecords();
+            long bytes = localKinesisClient.getServedBytes();
+            long now = System.nanoTime();
+            double seconds = (now - last[2]) / 1e9;
+            log.info(String.format(
+                    "Local stream served %d of %d records (%.0f records/sec, %.1f KB/sec), GetRecords %d, throttled %d",
+                    records, localKinesisClient.getTotalRecords(), (records - last[0]) / seconds,
+                    (bytes - last[1]) / 1024.0 / seconds,
+                    localKinesisClient.getGetRecordsCalls(), localKinesisClient.getThrottledCalls()));
+            last[0] = records;
+            last[1] = bytes;
+            last[2] = now;
+        }, 10, 10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Logs the sketches merged across shards, every 10 seconds.
+     */
+    private void reportSketches(SketchReport sketchReport) {
+        EXECUTOR.scheduleAtFixedRate(() -> log.info(sketchReport.summary()), 10, 10, TimeUnit.SECONDS);
+    }
+
+    private KclRecordProcessorFactory recordProcessorFactory(Entity traceEntity, DeadLetterStore deadLetters,
+                                                             SketchReport sketchReport) {
+        return new KclRecordProcessorFactory(traceEntity, fanout ? "fanout" : "polling",
+                new KeyOrderedExecutor(processingThreads, processingQueueSize),
+                new SimulatedDownstream(downstreamLatencyMillis, downstreamFailureRate),
+                new CheckpointPolicy(checkpointMaxRecords, checkpointMaxBytes, checkpointIntervalMillis,
+                        checkpointMinIntervalMillis, checkpointAdaptive),
+                new RetryScheduler(retryMaxAttempts, retryInitialBackoffMillis, retryMaxBackoffMillis),
+                deadLetters, decodeFields.isBlank() ? Set.of() : PersonFieldDecoder.parseFields(decodeFields),
+                recordFilter.isBlank() ? null : PersonPredicate.parse(recordFilter),
+                Deduplicator.create(dedupMode, dedupKey, dedupCapacity, dedupFalsePositiveRate, dedupWindowMillis),
+                windowSizeMillis == 0 ? null : new WindowAggregator(windowSizeMillis,
+                        windowSlideMillis == 0 ? windowSizeMillis : windowSlideMillis, windowAllowedLatenessMillis),
+                new WindowStateStore(Paths.get(windowStateDirectory)), sketchReport);
+    }
+
+    /**
+     * Processes the records of the dead-letter store once more, instead of consuming the stream. Records that fail
+     * again are stored back with one more attempt.
+     */
+    private void replayDeadLetters(DeadLetterStore deadLetters) {
+        AWSXRayRecorder xrayRecorder = AWSXRay.getGlobalRecorder();
+        xrayRecorder.beginSegment("deadLetterReplaySegment");
+        KclRecordProcessorFactory factory = recordProcessorFactory(xrayRecorder.getTraceEntity(), deadLetters, null);
+        KclRecordProcessor processor = factory.shardRecordProcessor();
+
+        List<DeadLetterStore.Entry> entries = deadLetters.drain();
+        log.info(String.format("Replaying %d dead letters from %s", entries.size(), deadLetters.file()));
+        int succeeded = 0;
+        for (DeadLetterStore.Entry entry : entries) {
+            try {
+                processor.replay(entry.shardId(), entry.record());
+                succeeded++;
+            } catch (Throwable t) {
+                log.warn(String.format("Replay of record %s of %s failed: %s",
+                        entry.record().sequenceNumber(), entry.shardId(), t));
+                deadLetters.store(entry.shardId(), entry.record(), entry.attempts() + 1, t);
+            }
+        }
+        deadLetters.replayed();
+        factory.shutdown();
+        xrayRecorder.endSegment();
+        log.info(String.format("Replayed %d dead letters: %d succeeded, %d stored again",
+                entries.size(), succeeded, entries.size() - succeeded));
+    }
+
     /**
      * Entry point
      */
     public void execute() {
+        DeadLetterStore deadLetters = new DeadLetterStore(Paths.get(deadLetterDirectory));
+        if (deadLetterReplay) {
+            replayDeadLetters(deadLetters);
+            return;
+        }
+
         log.info(String.format("regionName:%s, streamName:%s", regionName, streamName));
-        Region region = Region.of(this.regionName);
-        KinesisAsyncClient kinesisClient = getKinesisClient(region);
-        DynamoDbAsyncClient dynamoClient = getDynamoDbClient(region);
-        CloudWatchAsyncClient cloudWatchClient = getCloudWatchClient(region);
+        KinesisAsyncClient kinesisClient;
+        DynamoDbAsyncClient dynamoClient;
+        CloudWatchAsyncClient cloudWatchClient;
+        if (local) {
+            // In-process stand-ins, to benchmark the record processor without AWS
+            log.info(String.format("Local mode: %d shards x %d records, latency %d ms (+%d ms jitter), throttle rate %.3f",
+                    localShards, localRecordsPerShard, localLatencyMillis, localJitterMillis, localThrottleRate));
+            FaultInjector faults = new FaultInjector(localLatencyMillis, localJitterMillis, localThrottleRate);
+            LocalKinesisClient localKinesisClient = new LocalKinesisClient(streamName, localShards, localRecordsPerShard, faults);
+            kinesisClient = localKinesisClient;
+            dynamoClient = new LocalDynamoDbClient(new FaultInjector(localLatencyMillis, localJitterMillis, 0));
+            cloudWatchClient = new LocalCloudWatchClient(new FaultInjector(0, 0, 0));
+            if (fanout) {
+                log.warn("Enhanced fan-out is not supported in local mode, using polling");
+                fanout = false;
+            }
+            reportLocalProgress(localKinesisClient);
+        } else {
+            Region region = Region.of(this.regionName);
+            kinesisClient = getKinesisClient(region);
+            dynamoClient = getDynamoDbClient(region);
+            cloudWatchClient = getCloudWatchClient(region);
+        }
+        SketchReport sketchReport = null;
+        if (sketchEnabled) {
+            sketchReport = new SketchReport(sketchPrecision, sketchCounters, sketchTopKeys);
+            reportSketches(sketchReport);
+        }
 
         /*
           X-Ray setup
@@ -146,6 +380,8 @@ public class ConsumerService {
           ShardRecordProcessorFactory, is where the logic for record processing lives, and is located in a private
           class below.
          */
+        KclRecordProcessorFactory recordProcessorFactory = recordProcessorFactory(xrayRecorder.getTraceEntity(),
+                deadLetters, sketchReport);
         ConfigsBuilder configsBuilder = new ConfigsBuilder(
                 streamName,
                 streamName, // application name
@@ -153,7 +389,7 @@ public class ConsumerService {
                 dynamoClient,
                 cloudWatchClient,
                 "worker-v2-" + UUID.randomUUID().toString(),
-                new KclRecordProcessorFactory(xrayRecorder.getTraceEntity()));
+                recordProcessorFactory);
 
         /*
           The Scheduler (also called Worker in earlier versions of the KCL) is the entry point to the KCL. This
@@ -191,15 +427,15 @@ public class ConsumerService {
 
         Thread schedulerThread = new Thread(scheduler);
         // schedulerThread.setDaemon(true);
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> stopServer(scheduler)));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> stopServer(scheduler, recordProcessorFactory)));
         schedulerThread.start();
     }
 
     @Synchronized
-    private void stopServer(Scheduler scheduler) {
-        log.info("Waiting up to 20 seconds for shutdown to complete.");
+    private void stopServer(Scheduler scheduler, KclRecordProcessorFactory recordProcessorFactory) {
+        log.info(String.format("Waiting up to %d seconds for shutdown to complete.", SHUTDOWN_TIMEOUT_MILLIS / 1000));
         try {
-            scheduler.startGracefulShutdown().get(20, TimeUnit.SECONDS);
+            scheduler.startGracefulShutdown().get(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
             log.info("Interrupted while waiting for graceful shutdown. Continuing.");
         } catch (ExecutionException e) {
@@ -209,6 +445,8 @@ public class ConsumerService {
         } finally {
             // close xray segment
             // AWSXRay.endSegment();
+            // The record processors have drained and checkpointed, or given up
+            recordProcessorFactory.shutdown();
             log.info("Completed, shutting down now.");
         }
     }
@@ -0,0 +1,110 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Two Bloom filters, current and previous, rotated every window: keys are added to the current one and looked up in
+ * both, so a key is remembered for one to two windows. Each filter is sized for capacity keys per window at the
+ * given false positive rate, and its memory is allocated up front.
+ * <p>
+ * A false positive drops a record that was never processed, so keep the rate well below the loss the application
+ * can tolerate, or use {@link LruDedupCache}.
+ */
+public class BloomDedupCache implements DedupCache {
+
+    private final long windowMillis;
+    private final LongSupplier clock;
+    private final int bits;
+    private final int hashes;
+    private long[] current;
+    private long[] previous;
+    private long rotateAtMillis;
+
+    /**
+     * @param capacity          Keys per window
+     * @param falsePositiveRate Probability that a key never added is reported as seen, with capacity keys added
+     * @param windowMillis      How long keys are remembered at least
+     */
+    public BloomDedupCache(int capacity, double falsePositiveRate, long windowMillis) {
+        this(capacity, falsePositiveRate, windowMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock Current time in milliseconds, for tests
+     */
+    BloomDedupCache(int capacity, double falsePositiveRate, long windowMillis, LongSupplier clock) {
+        if (capacity <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1 || windowMillis <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid Bloom filter: capacity %d, false positive rate %s, window %d ms",
+                    capacity, falsePositiveRate, windowMillis));
+        }
+        // m = -n ln p / (ln 2)^2 bits and k = m / n ln 2 hashes minimize the false positive rate
+        long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        if (optimalBits > Integer.MAX_VALUE - 63) {
+            throw new IllegalArgumentException("Bloom filter too large: " + optimalBits + " bits");
+        }
+        this.bits = (int) Math.max(64, optimalBits);
+        this.hashes = Math.max(1, (int) Math.round((double) bits / capacity * Math.log(2)));
+        this.windowMillis = windowMillis;
+        this.clock = clock;
+        this.current = new long[(bits + 63) / 64];
+        this.previous = new long[current.length];
+        this.rotateAtMillis = clock.getAsLong() + windowMillis;
+    }
+
+    private void rotate() {
+        long now = clock.getAsLong();
+        if (now < rotateAtMillis) {
+            return;
+        }
+        long[] oldest = previous;
+        Arrays.fill(oldest, 0L);
+        if (now - rotateAtMillis >= windowMillis) {
+            // No rotation for more than a window, so the current filter is out of date too
+            Arrays.fill(current, 0L);
+        }
+        previous = current;
+        current = oldest;
+        rotateAtMillis = now + windowMillis;
+    }
+
+    private static boolean contains(long[] filter, int bits, int hashes, long key) {
+        int h1 = (int) key;
+        int h2 = (int) (key >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bits);
+            if ((filter[bit >>> 6] & 1L << bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean mightContain(long key) {
+        rotate();
+        return contains(current, bits, hashes, key) || contains(previous, bits, hashes, key);
+    }
+
+    @Override
+    public synchronized void add(long key) {
+        rotate();
+        int h1 = (int) key;
+        int h2 = (int) (key >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bits);
+            current[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    @Override
+    public long memoryBytes() {
+        return 2L * current.length * Long.BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Bloom filter of %d bits x %d hashes, rotated every %d ms", bits, hashes, windowMillis);
+    }
+}
@@ -0,0 +1,146 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+/**
+ * Decides when a shard is checkpointed: once the records or bytes since the last checkpoint reach a threshold, or the
+ * checkpoint interval has passed, whichever comes first. Everything after the last checkpoint is processed again on
+ * failover, while every checkpoint is a write to the lease table, so the thresholds trade one against the other.
+ * Record and byte thresholds never checkpoint more often than the minimum interval. The first batch of a shard is
+ * checkpointed right away, so that a new owner records its position without waiting a full interval.
+ * <p>
+ * In adaptive mode the interval starts at the maximum and shrinks by a quarter after every checkpoint faster than
+ * {@link #FAST_CHECKPOINT_MILLIS}, down to the minimum interval, so checkpoints get more frequent while the lease table
+ * has headroom. A {@code ThrottlingException} doubles the interval and suspends the record and byte thresholds until
+ * a checkpoint succeeds without throttling.
+ * <p>
+ * Not thread safe; each record processor has its own, see {@link #forShard()}.
+ */
+public class CheckpointPolicy {
+
+    // A checkpoint taking less than this shows the lease table has headroom
+    static final long FAST_CHECKPOINT_MILLIS = 100L;
+
+    private final long maxRecords;
+    private final long maxBytes;
+    private final long maxIntervalMillis;
+    private final long minIntervalMillis;
+    private final boolean adaptive;
+
+    private long intervalMillis;
+    private long startMillis;
+    private long lastCheckpointMillis;
+    private long records = 0;
+    private long bytes = 0;
+    private boolean throttled = false;
+
+    private long checkpoints = 0;
+    private long throttles = 0;
+    private long checkpointedRecords = 0;
+    private long checkpointedBytes = 0;
+
+    /**
+     * @param maxRecords        Records since the last checkpoint that trigger one, 0 for no limit
+     * @param maxBytes          Bytes since the last checkpoint that trigger one, 0 for no limit
+     * @param maxIntervalMillis Longest time between checkpoints
+     * @param minIntervalMillis Shortest time between checkpoints triggered by records or bytes, and the lower bound of
+     *                          the adaptive interval
+     * @param adaptive          Adapt the interval to the checkpoint latency and throttling
+     */
+    public CheckpointPolicy(long maxRecords, long maxBytes, long maxIntervalMillis, long minIntervalMillis,
+                            boolean adaptive) {
+        if (maxRecords < 0 || maxBytes < 0 || minIntervalMillis < 0 || maxIntervalMillis < minIntervalMillis) {
+            throw new IllegalArgumentException(String.format("Invalid checkpoint policy: max records %d, max bytes %d, "
+                    + "interval %d ms, min interval %d ms", maxRecords, maxBytes, maxIntervalMillis, minIntervalMillis));
+        }
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.minIntervalMillis = minIntervalMillis;
+        this.adaptive = adaptive;
+        this.intervalMillis = maxIntervalMillis;
+        this.startMillis = System.currentTimeMillis();
+        this.lastCheckpointMillis = startMillis - maxIntervalMillis;
+    }
+
+    /**
+     * A new policy with the same thresholds, for another shard.
+     */
+    public CheckpointPolicy forShard() {
+        return new CheckpointPolicy(maxRecords, maxBytes, maxIntervalMillis, minIntervalMillis, adaptive);
+    }
+
+    /**
+     * Starts the clock, when the shard is initialized.
+     */
+    public void start(long nowMillis) {
+        startMillis = nowMillis;
+        // As if the interval had just passed, so the first batch is checkpointed
+        lastCheckpointMillis = nowMillis - intervalMillis;
+    }
+
+    public void onRecord(long recordBytes) {
+        records++;
+        bytes += recordBytes;
+    }
+
+    public boolean shouldCheckpoint(long nowMillis) {
+        long elapsed = nowMillis - lastCheckpointMillis;
+        if (elapsed >= intervalMillis) {
+            return true;
+        }
+        if (elapsed < minIntervalMillis || throttled) {
+            return false;
+        }
+        return (maxRecords > 0 && records >= maxRecords) || (maxBytes > 0 && bytes >= maxBytes);
+    }
+
+    /**
+     * A checkpoint covering the records since the last one succeeded.
+     *
+     * @param durationMillis Time the checkpoint call took, without the backoff of throttled attempts
+     */
+    public void onCheckpoint(long nowMillis, long durationMillis) {
+        checkpoints++;
+        checkpointedRecords += records;
+        checkpointedBytes += bytes;
+        records = 0;
+        bytes = 0;
+        lastCheckpointMillis = nowMillis;
+        if (adaptive && !throttled && durationMillis < FAST_CHECKPOINT_MILLIS) {
+            intervalMillis = Math.max(minIntervalMillis, intervalMillis - intervalMillis / 4);
+        }
+        throttled = false;
+    }
+
+    /**
+     * There was nothing to checkpoint; waits for the next interval before trying again.
+     */
+    public void onSkipped(long nowMillis) {
+        lastCheckpointMillis = nowMillis;
+    }
+
+    public void onThrottled() {
+        throttles++;
+        if (adaptive) {
+            throttled = true;
+            intervalMillis = Math.min(maxIntervalMillis, intervalMillis * 2);
+        }
+    }
+
+    public long intervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Checkpoint rate and expected replay: a failover at a random time replays half of the records between two
+     * checkpoints on average, plus what is in flight.
+     */
+    public String summary(String shardId, long nowMillis) {
+        double minutes = Math.max(nowMillis - startMillis, 1) / 60000.0;
+        double meanRecords = checkpoints == 0 ? records : (double) checkpointedRecords / checkpoints;
+        double meanBytes = checkpoints == 0 ? bytes : (double) checkpointedBytes / checkpoints;
+        return String.format("Checkpoints %s: %d (%.2f/min), %d throttled, interval %d ms; expected replay on failover "
+                        + "%.0f records / %.0f bytes; %d records / %d bytes since the last checkpoint",
+                shardId, checkpoints, checkpoints / minutes, throttles, intervalMillis,
+                meanRecords / 2, meanBytes / 2, records, bytes);
+    }
+}
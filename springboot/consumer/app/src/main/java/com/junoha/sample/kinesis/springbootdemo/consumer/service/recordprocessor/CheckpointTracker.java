@@ -0,0 +1,108 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+import software.amazon.kinesis.retrieval.KinesisClientRecord;
+import software.amazon.kinesis.retrieval.kpl.ExtendedSequenceNumber;
+
+import java.util.ArrayDeque;
+
+/**
+ * Records of one shard from submission to completion, to find how far the shard can be checkpointed when records
+ * complete out of order: up to the last record of the longest completed prefix, never past unfinished work.
+ * <p>
+ * A record can be completed with work to run in shard order: it runs when the record joins the completed prefix, under
+ * the tracker's lock. State built that way is that of the records up to {@link #checkpointCandidate()} while the lock
+ * is held, so synchronize on the tracker to read both together. Thread safe.
+ */
+public class CheckpointTracker {
+
+    /**
+     * A submitted record, to be passed to {@link #complete(Pending)}.
+     */
+    public static final class Pending {
+        private final String sequenceNumber;
+        private final long subSequenceNumber;
+        private boolean done;
+        private Runnable inOrder;
+
+        private Pending(String sequenceNumber, long subSequenceNumber) {
+            this.sequenceNumber = sequenceNumber;
+            this.subSequenceNumber = subSequenceNumber;
+        }
+    }
+
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private ExtendedSequenceNumber completed;
+    private ExtendedSequenceNumber checkpointed;
+    private long completedRecords = 0;
+
+    /**
+     * Records are submitted in shard order.
+     */
+    public Pending submit(KinesisClientRecord record) {
+        return submit(record.sequenceNumber(), record.subSequenceNumber());
+    }
+
+    synchronized Pending submit(String sequenceNumber, long subSequenceNumber) {
+        Pending entry = new Pending(sequenceNumber, subSequenceNumber);
+        pending.addLast(entry);
+        return entry;
+    }
+
+    public void complete(Pending entry) {
+        complete(entry, null);
+    }
+
+    /**
+     * @param inOrder Runs once the record and every record before it have completed, null for nothing
+     */
+    public synchronized void complete(Pending entry, Runnable inOrder) {
+        entry.done = true;
+        entry.inOrder = inOrder;
+        completedRecords++;
+        Pending head;
+        while ((head = pending.peekFirst()) != null && head.done) {
+            pending.pollFirst();
+            if (head.inOrder != null) {
+                head.inOrder.run();
+            }
+            completed = new ExtendedSequenceNumber(head.sequenceNumber, head.subSequenceNumber);
+        }
+        if (pending.isEmpty()) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * The last record of the completed prefix if it moved since {@link #checkpointed(ExtendedSequenceNumber)},
+     * otherwise null.
+     */
+    public synchronized ExtendedSequenceNumber checkpointCandidate() {
+        return completed == null || completed.equals(checkpointed) ? null : completed;
+    }
+
+    public synchronized void checkpointed(ExtendedSequenceNumber sequenceNumber) {
+        checkpointed = sequenceNumber;
+    }
+
+    public synchronized int pendingRecords() {
+        return pending.size();
+    }
+
+    public synchronized long completedRecords() {
+        return completedRecords;
+    }
+
+    /**
+     * Waits until every submitted record has completed.
+     *
+     * @return false on timeout
+     */
+    public synchronized boolean awaitCompletion(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining;
+        while (!pending.isEmpty() && (remaining = deadline - System.currentTimeMillis()) > 0) {
+            wait(remaining);
+        }
+        return pending.isEmpty();
+    }
+}
@@ -0,0 +1,189 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import software.amazon.kinesis.retrieval.KinesisClientRecord;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records that failed every attempt, kept in a local file so that they can be replayed once the cause is fixed.
+ * <p>
+ * The file, dead-letters.jsonl in the store's directory, has one JSON object per record: its shard, sequence
+ * number, partition key, arrival time, attempts, last error and data in base64. Each record is flushed before
+ * {@link #store} returns, after which the record can be checkpointed. Thread safe; shared by all record processors.
+ */
+public class DeadLetterStore {
+
+    static final String FILE_NAME = "dead-letters.jsonl";
+    // The file being replayed; left behind by an interrupted replay and picked up by the next one
+    static final String REPLAYING_FILE_NAME = FILE_NAME + ".replaying";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * A dead-lettered record.
+     */
+    public static final class Entry {
+        private final String shardId;
+        private final KinesisClientRecord record;
+        private final int attempts;
+        private final String error;
+
+        private Entry(String shardId, KinesisClientRecord record, int attempts, String error) {
+            this.shardId = shardId;
+            this.record = record;
+            this.attempts = attempts;
+            this.error = error;
+        }
+
+        public String shardId() {
+            return shardId;
+        }
+
+        public KinesisClientRecord record() {
+            return record;
+        }
+
+        public int attempts() {
+            return attempts;
+        }
+
+        public String error() {
+            return error;
+        }
+    }
+
+    private final Path directory;
+    private long storedRecords = 0;
+    private long storedBytes = 0;
+    private final Map<String, Long> errors = new TreeMap<>();
+
+    public DeadLetterStore(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path file() {
+        return directory.resolve(FILE_NAME);
+    }
+
+    /**
+     * Appends the record to the store.
+     *
+     * @param attempts Attempts made so far
+     * @throws UncheckedIOException if the record could not be written; it must not be checkpointed then
+     */
+    public synchronized void store(String shardId, KinesisClientRecord record, int attempts, Throwable error) {
+        ByteBuffer data = record.data().duplicate();
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        ObjectNode node = MAPPER.createObjectNode()
+                .put("shardId", shardId)
+                .put("sequenceNumber", record.sequenceNumber())
+                .put("subSequenceNumber", record.subSequenceNumber())
+                .put("partitionKey", record.partitionKey())
+                .put("attempts", attempts)
+                .put("error", error.toString())
+                .put("deadLetteredAt", Instant.now().toString())
+                .put("data", Base64.getEncoder().encodeToString(bytes));
+        if (record.approximateArrivalTimestamp() != null) {
+            node.put("approximateArrivalTimestamp", record.approximateArrivalTimestamp().toString());
+        }
+        try {
+            Files.createDirectories(directory);
+            try (BufferedWriter writer = Files.newBufferedWriter(file(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(MAPPER.writeValueAsString(node));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write dead letter to " + file(), e);
+        }
+        storedRecords++;
+        storedBytes += bytes.length;
+        errors.merge(error.getClass().getSimpleName(), 1L, Long::sum);
+    }
+
+    /**
+     * Takes every record out of the store for a replay: the file is renamed and its records returned. Call
+     * {@link #replayed()} once they have been processed or stored again.
+     */
+    public synchronized List<Entry> drain() {
+        Path replaying = directory.resolve(REPLAYING_FILE_NAME);
+        List<Entry> entries = new ArrayList<>();
+        try {
+            if (!Files.exists(replaying)) {
+                if (!Files.exists(file())) {
+                    return entries;
+                }
+                Files.move(file(), replaying, StandardCopyOption.ATOMIC_MOVE);
+            }
+            try (BufferedReader reader = Files.newBufferedReader(replaying, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        entries.add(parse(MAPPER.readTree(line)));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read dead letters from " + replaying, e);
+        }
+        return entries;
+    }
+
+    private static Entry parse(JsonNode node) {
+        KinesisClientRecord.KinesisClientRecordBuilder record = KinesisClientRecord.builder()
+                .sequenceNumber(node.get("sequenceNumber").asText())
+                .subSequenceNumber(node.get("subSequenceNumber").asLong())
+                .partitionKey(node.get("partitionKey").asText())
+                .data(ByteBuffer.wrap(Base64.getDecoder().decode(node.get("data").asText())));
+        if (node.hasNonNull("approximateArrivalTimestamp")) {
+            record.approximateArrivalTimestamp(Instant.parse(node.get("approximateArrivalTimestamp").asText()));
+        }
+        return new Entry(node.get("shardId").asText(), record.build(), node.get("attempts").asInt(),
+                node.get("error").asText());
+    }
+
+    /**
+     * Ends a replay started with {@link #drain()}.
+     */
+    public synchronized void replayed() {
+        try {
+            Files.deleteIfExists(directory.resolve(REPLAYING_FILE_NAME));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot delete " + directory.resolve(REPLAYING_FILE_NAME), e);
+        }
+    }
+
+    public synchronized long storedRecords() {
+        return storedRecords;
+    }
+
+    /**
+     * Records stored by this process, empty if none.
+     */
+    public synchronized String summary() {
+        if (storedRecords == 0) {
+            return "";
+        }
+        return String.format("Dead letters: %d records (%d bytes) stored in %s, by error %s",
+                storedRecords, storedBytes, file(), errors);
+    }
+}
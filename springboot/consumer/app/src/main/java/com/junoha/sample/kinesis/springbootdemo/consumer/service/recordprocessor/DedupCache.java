@@ -0,0 +1,20 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+/**
+ * Fixed-memory set of the 64-bit keys of processed records, used by {@link Deduplicator}. Thread safe.
+ */
+public interface DedupCache {
+
+    /**
+     * @return true if the key was added and not evicted since; a Bloom filter may also return true for a key that
+     * was never added
+     */
+    boolean mightContain(long key);
+
+    void add(long key);
+
+    /**
+     * Memory taken by the cache, estimated where the JVM decides it.
+     */
+    long memoryBytes();
+}
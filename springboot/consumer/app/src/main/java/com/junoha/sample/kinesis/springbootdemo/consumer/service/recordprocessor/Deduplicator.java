@@ -0,0 +1,109 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Skips records that were processed already. KCL delivers again the records processed since the last checkpoint when
+ * a shard moves to another worker or the consumer restarts; a producer retry duplicates a record too.
+ * <p>
+ * Records are keyed by shard and sequence number, which catches the redeliveries, or by Person id, which also
+ * catches the producer's duplicates and any person sent twice. Keys are reduced to 64-bit hashes, so the chance that
+ * two of a billion keys share one is below 1 in 30 million. A record is looked up before its business logic and only
+ * added once it succeeded, so that a failed record is not skipped when it is retried.
+ * <p>
+ * Dedup only works within this process: after a failover to another process the cache there starts empty.
+ * Shared by all record processors; thread safe.
+ */
+public class Deduplicator {
+
+    public enum Key {
+        SEQUENCE, ID
+    }
+
+    private final Key key;
+    private final DedupCache cache;
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+
+    public Deduplicator(Key key, DedupCache cache) {
+        this.key = key;
+        this.cache = cache;
+    }
+
+    /**
+     * @param mode              none, lru or bloom
+     * @param key               sequence or id
+     * @param capacity          Keys kept by the LRU, or added per window to the Bloom filter
+     * @param falsePositiveRate Of the Bloom filter
+     * @param windowMillis      Rotation of the Bloom filter
+     * @return null for none
+     */
+    public static Deduplicator create(String mode, String key, int capacity, double falsePositiveRate,
+                                      long windowMillis) {
+        Key dedupKey = switch (key) {
+            case "sequence" -> Key.SEQUENCE;
+            case "id" -> Key.ID;
+            default -> throw new IllegalArgumentException("Invalid dedup key: " + key);
+        };
+        return switch (mode) {
+            case "none" -> null;
+            case "lru" -> new Deduplicator(dedupKey, new LruDedupCache(capacity));
+            case "bloom" -> new Deduplicator(dedupKey,
+                    new BloomDedupCache(capacity, falsePositiveRate, windowMillis));
+            default -> throw new IllegalArgumentException("Invalid dedup mode: " + mode);
+        };
+    }
+
+    public Key key() {
+        return key;
+    }
+
+    public static long sequenceKey(String shardId, String sequenceNumber, long subSequenceNumber) {
+        long hash = fnv1a(fnv1a(0xcbf29ce484222325L, shardId), sequenceNumber);
+        return mix((hash ^ subSequenceNumber) * 0x100000001b3L);
+    }
+
+    public static long idKey(long id) {
+        return mix(id);
+    }
+
+    private static long fnv1a(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Final mix of MurmurHash3, so that every bit of the key depends on every bit of the input.
+     */
+    private static long mix(long hash) {
+        hash = (hash ^ hash >>> 33) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ hash >>> 33) * 0xc4ceb9fe1a85ec53L;
+        return hash ^ hash >>> 33;
+    }
+
+    public boolean isDuplicate(long recordKey) {
+        lookups.increment();
+        if (cache.mightContain(recordKey)) {
+            duplicates.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remembers a record whose business logic succeeded.
+     */
+    public void processed(long recordKey) {
+        cache.add(recordKey);
+    }
+
+    public String summary() {
+        long looked = lookups.sum();
+        long hits = duplicates.sum();
+        return String.format("Dedup by %s, %s: %d duplicates skipped of %d records (%.2f%% hit rate), %.1f MB",
+                key.name().toLowerCase(), cache, hits, looked, looked == 0 ? 0.0 : 100.0 * hits / looked,
+                cache.memoryBytes() / 1024.0 / 1024.0);
+    }
+}
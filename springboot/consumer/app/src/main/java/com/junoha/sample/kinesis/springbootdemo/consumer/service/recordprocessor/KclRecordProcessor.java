@@ -4,6 +4,18 @@ import com.amazonaws.xray.AWSXRay;
 import com.amazonaws.xray.AWSXRayRecorder;
 import com.amazonaws.xray.entities.Entity;
 import com.amazonaws.xray.entities.Subsegment;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.junoha.sample.kinesis.springbootdemo.consumer.codec.PayloadFormat;
+import com.junoha.sample.kinesis.springbootdemo.consumer.codec.PersonDecoder;
+import com.junoha.sample.kinesis.springbootdemo.consumer.codec.PersonFieldDecoder;
+import com.junoha.sample.kinesis.springbootdemo.consumer.codec.PersonFields;
+import com.junoha.sample.kinesis.springbootdemo.consumer.codec.PersonPredicate;
+import com.junoha.sample.kinesis.springbootdemo.consumer.model.Person;
+import com.junoha.sample.kinesis.springbootdemo.consumer.sketch.ShardSketches;
+import com.junoha.sample.kinesis.springbootdemo.consumer.sketch.SketchReport;
+import com.junoha.sample.kinesis.springbootdemo.consumer.window.WindowAggregator;
+import com.junoha.sample.kinesis.springbootdemo.consumer.window.WindowResult;
+import com.junoha.sample.kinesis.springbootdemo.consumer.window.WindowStateStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -14,8 +26,16 @@ import software.amazon.kinesis.lifecycle.events.*;
 import software.amazon.kinesis.processor.RecordProcessorCheckpointer;
 import software.amazon.kinesis.processor.ShardRecordProcessor;
 import software.amazon.kinesis.retrieval.KinesisClientRecord;
+import software.amazon.kinesis.retrieval.kpl.ExtendedSequenceNumber;
 
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
 public class KclRecordProcessor implements ShardRecordProcessor {
 
@@ -27,15 +47,113 @@ public class KclRecordProcessor implements ShardRecordProcessor {
 
     private static final long BACKOFF_TIME_IN_MILLIS = 3000L;
     private static final int NUM_RETRIES = 10;
-    private static final long CHECKPOINT_INTERVAL_MILLIS = 60000L;
-    private long nextCheckpointTimeInMillis;
+    private static final long LATENCY_REPORT_INTERVAL_MILLIS = 10000L;
+    private long nextLatencyReportTimeInMillis;
+    private long lastReportTimeInMillis;
+    private long lastReportCompletedRecords;
+    // How long to wait for submitted records at shutdown; the application waits longer for the graceful shutdown,
+    // so that the final checkpoint is taken
+    public static final long DRAIN_TIMEOUT_MILLIS = 15000L;
+
+    private static final PersonDecoder DECODER = new PersonDecoder();
+    // With requested fields, records are read by a PersonFieldDecoder of the worker thread instead of decoded to Person
+    private final ThreadLocal<PersonFieldDecoder> fieldDecoders;
+    // Records are tested on the fields of the filter before they are decoded; with requested fields the filter's
+    // fields are read along with them in one pass, otherwise by a separate PersonFieldDecoder
+    private final PersonPredicate filter;
+    private final ThreadLocal<PersonFieldDecoder> filterDecoders;
+    private final LongAdder filteredRecords = new LongAdder();
+    private final LongAdder matchedRecords = new LongAdder();
+    private final LongAdder filterNanos = new LongAdder();
+    private long batches = 0;
+    // Skips records processed before, shared by all shards; null without dedup
+    private final Deduplicator deduplicator;
+    // Windows of this shard, updated in shard order as records complete and saved with every checkpoint;
+    // null without windows
+    private final WindowAggregator windows;
+    private final WindowStateStore windowStates;
+    // Distinct ids and top partition keys of this shard, published to the report shared by all shards;
+    // null without sketches
+    private final SketchReport sketchReport;
+    private ShardSketches sketches;
+    // Decoded records per format and total decode time since the last checkpoint, updated by the workers
+    private final AtomicLongArray decodedRecords = new AtomicLongArray(PayloadFormat.values().length);
+    private final LongAdder decodeNanos = new LongAdder();
+    private final LongAdder invalidRecords = new LongAdder();
+    // Shared by all shards, as the records of one producer run are spread over them
+    private static final SequenceVerifier SEQUENCES = new SequenceVerifier();
+
+    private final String retrievalMode;
+    // Updated by the shard thread, and by the workers when records complete
+    private LatencyStats latencyStats;
+    // When processRecords received the current batch
+    private long batchReceivedMicros;
+
+    // Records run on the workers in partition key order; the shard is checkpointed up to the completed prefix
+    private final KeyOrderedExecutor workers;
+    private final CheckpointTracker tracker = new CheckpointTracker();
+    private final SimulatedDownstream downstream;
+    private final CheckpointPolicy checkpointPolicy;
+    // Failed records are retried off the workers, then dead-lettered; both are shared by all shards
+    private final RetryScheduler retries;
+    private final DeadLetterStore deadLetters;
+    // Set once the lease is lost; the records still queued or waiting for a retry are dropped, as the next owner of
+    // the shard reads them again from the last checkpoint
+    private volatile boolean lost;
 
     private final AWSXRayRecorder recorder = AWSXRay.getGlobalRecorder();
     private final Entity traceEntity;
 
-    public KclRecordProcessor(Entity traceEntityPassed) {
+    /**
+     * @param retrievalMode    "polling" or "fanout", to tell latencies apart
+     * @param workers          Runs the records, shared by all shards
+     * @param downstream       Simulated business logic for every record
+     * @param checkpointPolicy When to checkpoint, owned by this processor
+     * @param retries          Runs the retries of failed records
+     * @param deadLetters      Keeps the records that failed every attempt
+     * @param decodeFields     Person fields to read, empty to decode the whole Person
+     * @param filter           Records to process, null for all
+     * @param deduplicator     Skips records processed before, null for no dedup
+     * @param windows          Windowed aggregation of this shard, null for none
+     * @param windowStates     Keeps the open windows of every shard across lease handoffs
+     * @param sketchReport     Merges the sketches of every shard, null for no sketches
+     */
+    public KclRecordProcessor(Entity traceEntityPassed, String retrievalMode, KeyOrderedExecutor workers,
+                              SimulatedDownstream downstream, CheckpointPolicy checkpointPolicy,
+                              RetryScheduler retries, DeadLetterStore deadLetters, Set<String> decodeFields,
+                              PersonPredicate filter, Deduplicator deduplicator, WindowAggregator windows,
+                              WindowStateStore windowStates, SketchReport sketchReport) {
         log.info(String.format("traceEntity(%s:%s)", traceEntityPassed.getId(), traceEntityPassed.getName()));
         this.traceEntity = traceEntityPassed;
+        this.retrievalMode = retrievalMode;
+        this.workers = workers;
+        this.downstream = downstream;
+        this.checkpointPolicy = checkpointPolicy;
+        this.retries = retries;
+        this.deadLetters = deadLetters;
+        Set<String> readFields = new LinkedHashSet<>(decodeFields);
+        if (filter != null) {
+            readFields.addAll(filter.fields());
+        }
+        if (deduplicator != null && deduplicator.key() == Deduplicator.Key.ID) {
+            readFields.add("id");
+        }
+        if (sketchReport != null) {
+            readFields.add("id");
+        }
+        if (windows != null) {
+            readFields.add("score");
+            readFields.add("pets");
+        }
+        this.fieldDecoders = decodeFields.isEmpty() ? null
+                : ThreadLocal.withInitial(() -> new PersonFieldDecoder(readFields));
+        this.filter = filter;
+        this.deduplicator = deduplicator;
+        this.windows = windows;
+        this.windowStates = windowStates;
+        this.sketchReport = sketchReport;
+        this.filterDecoders = filter == null || !decodeFields.isEmpty() ? null
+                : ThreadLocal.withInitial(() -> new PersonFieldDecoder(filter.fields()));
     }
 
     /**
@@ -46,22 +164,52 @@ public class KclRecordProcessor implements ShardRecordProcessor {
      */
     public void initialize(InitializationInput initializationInput) {
         shardId = initializationInput.shardId();
+        latencyStats = new LatencyStats(shardId, retrievalMode);
+        lastReportTimeInMillis = System.currentTimeMillis();
+        nextLatencyReportTimeInMillis = lastReportTimeInMillis + LATENCY_REPORT_INTERVAL_MILLIS;
+        checkpointPolicy.start(lastReportTimeInMillis);
+        if (sketchReport != null) {
+            sketches = sketchReport.forShard(shardId);
+        }
         MDC.put(SHARD_ID_MDC_KEY, shardId);
         try {
             log.info("Initializing @ shard: {}, Sequence: {}", shardId, initializationInput.extendedSequenceNumber());
+            if (windows != null) {
+                restoreWindows(initializationInput.extendedSequenceNumber());
+            }
         } finally {
             MDC.remove(SHARD_ID_MDC_KEY);
         }
     }
 
+    /**
+     * Picks up the open windows saved with the checkpoint the shard resumes from.
+     */
+    private void restoreWindows(ExtendedSequenceNumber position) {
+        try {
+            JsonNode state = windowStates.load(shardId, position);
+            if (state == null) {
+                log.info("No window state of shard {} at {}, starting with empty windows", shardId, position);
+                return;
+            }
+            windows.restore(state);
+            log.info("Restored windows of shard {} at {}: {}", shardId, position, windows.summary(shardId));
+        } catch (UncheckedIOException | IllegalArgumentException e) {
+            log.error("Cannot restore window state of shard " + shardId + ", starting with empty windows", e);
+        }
+    }
+
     /**
      * Handles record processing logic. The Amazon Kinesis Client Library will invoke this method to deliver
-     * data records to the application. In this example we simply log our records.
+     * data records to the application. The records are handed to the workers, which process records with the same
+     * partition key in order; this returns as soon as they are queued, and blocks only while the queues are full.
      *
      * @param processRecordsInput Provides the records to be processed as well as information and capabilities
      *                            related to them (e.g. checkpointing).
      */
     public void processRecords(ProcessRecordsInput processRecordsInput) {
+        batchReceivedMicros = epochMicros(Instant.now());
+        batches++;
         MDC.put(SHARD_ID_MDC_KEY, shardId);
 
         //sets the trace entity to the recorder to ensure subsegment that is running on a different thread is added to the trace
@@ -74,12 +222,25 @@ public class KclRecordProcessor implements ShardRecordProcessor {
             log.info("Processing {} records from {}, MillisBehindLatest: {}, TimeSpentInCache: {}",
                     processRecordsInput.records().size(), shardId, processRecordsInput.millisBehindLatest(), processRecordsInput.timeSpentInCache().getSeconds());
 
-            processRecordsWithRetries(processRecordsInput.records());
+            submitRecords(processRecordsInput.records());
+            logWindowResults();
+
+            if (System.currentTimeMillis() > nextLatencyReportTimeInMillis) {
+                logThroughput();
+                log.info(checkpointPolicy.summary(shardId, System.currentTimeMillis()));
+                if (windows != null) {
+                    log.info(windows.summary(shardId));
+                }
+                publishSketches();
+                if (latencyStats.intervalCount() > 0) {
+                    log.info(latencyStats.intervalSummary());
+                }
+                nextLatencyReportTimeInMillis = System.currentTimeMillis() + LATENCY_REPORT_INTERVAL_MILLIS;
+            }
 
-            // Checkpoint once every checkpoint interval.
-            if (System.currentTimeMillis() > nextCheckpointTimeInMillis) {
+            // Checkpoint when the policy's record, byte or time threshold is reached.
+            if (checkpointPolicy.shouldCheckpoint(System.currentTimeMillis())) {
                 checkpoint(processRecordsInput.checkpointer());
-                nextCheckpointTimeInMillis = System.currentTimeMillis() + CHECKPOINT_INTERVAL_MILLIS;
             }
 
         } catch (Throwable t) {
@@ -93,37 +254,293 @@ public class KclRecordProcessor implements ShardRecordProcessor {
         }
     }
 
-    private void processRecordsWithRetries(List<KinesisClientRecord> records) {
+    private void submitRecords(List<KinesisClientRecord> records) throws InterruptedException {
         for (KinesisClientRecord record : records) {
-            boolean processedSuccessfully = false;
-            for (int i = 0; i < NUM_RETRIES; i++) {
-                try {
-                    processSingleRecord(record);
-                    processedSuccessfully = true;
-                    break;
-                } catch (Throwable t) {
-                    log.warn("Caught throwable while processing record " + record, t);
-                }
+            receiveRecord(record);
+            CheckpointTracker.Pending pending = tracker.submit(record);
+            workers.submit(record.partitionKey(), () -> attempt(record, pending, 1));
+        }
+    }
 
-                // backoff if we encounter an exception.
-                try {
-                    Thread.sleep(BACKOFF_TIME_IN_MILLIS);
-                } catch (InterruptedException e) {
-                    log.debug("Interrupted sleep", e);
-                }
+    /**
+     * Bookkeeping in arrival order on the shard thread, before the record is handed to a worker.
+     */
+    private void receiveRecord(KinesisClientRecord record) {
+        ByteBuffer data = record.data();
+        checkpointPolicy.onRecord(data.remaining());
+        if (sketches != null) {
+            sketches.addPartitionKey(record.partitionKey());
+        }
+        if (PersonDecoder.hasSequence(data)) {
+            if (!SEQUENCES.record(PersonDecoder.runIdOf(data), PersonDecoder.sequenceOf(data))) {
+                log.debug("Duplicate record {}: run {} sequence {}", record.sequenceNumber(),
+                        Long.toHexString(PersonDecoder.runIdOf(data)), PersonDecoder.sequenceOf(data));
             }
+            if (record.approximateArrivalTimestamp() != null) {
+                latencyStats.record(PersonDecoder.produceMicrosOf(data),
+                        epochMicros(record.approximateArrivalTimestamp()), batchReceivedMicros);
+            }
+        }
+    }
 
-            if (!processedSuccessfully) {
-                log.error("Couldn't process record " + record + ". Skipping the record.");
+    /**
+     * Runs on a worker. A failed record is handed to the retry scheduler, which submits it to the workers again after
+     * the backoff, so the worker moves on to the next record; once every attempt has failed it is dead-lettered. The
+     * record is complete, and can be checkpointed, once it has been processed or stored as a dead letter. After the
+     * lease is lost the record is dropped, without calling the downstream or dead-lettering it.
+     */
+    private void attempt(KinesisClientRecord record, CheckpointTracker.Pending pending, int attempt) {
+        if (lost) {
+            return;
+        }
+        MDC.put(SHARD_ID_MDC_KEY, shardId);
+        try {
+            tracker.complete(pending, processSingleRecord(shardId, record));
+            if (record.approximateArrivalTimestamp() != null && PersonDecoder.hasSequence(record.data())) {
+                latencyStats.recordProcessed(epochMicros(record.approximateArrivalTimestamp()),
+                        epochMicros(Instant.now()));
+            }
+        } catch (Throwable t) {
+            if (lost) {
+                log.debug("Lease lost, dropping failed record {}", record.sequenceNumber());
+            } else if (attempt < retries.maxAttempts()) {
+                log.warn("Attempt {} of {} failed for record {}, retrying: {}",
+                        attempt, retries.maxAttempts(), record.sequenceNumber(), t.toString());
+                retries.schedule(attempt, () -> retry(record, pending, attempt + 1));
+            } else {
+                log.error("Couldn't process record " + record + " in " + attempt + " attempts. Dead-lettering it.", t);
+                deadLetter(record, pending, attempt, t);
             }
+        } finally {
+            MDC.remove(SHARD_ID_MDC_KEY);
+        }
+    }
+
+    private void retry(KinesisClientRecord record, CheckpointTracker.Pending pending, int attempt) {
+        if (lost) {
+            return;
+        }
+        try {
+            workers.submit(record.partitionKey(), () -> attempt(record, pending, attempt));
+        } catch (InterruptedException e) {
+            // Shutting down; the record stays pending, so it is not checkpointed
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deadLetter(KinesisClientRecord record, CheckpointTracker.Pending pending, int attempts, Throwable t) {
+        try {
+            deadLetters.store(shardId, record, attempts, t);
+            tracker.complete(pending);
+        } catch (UncheckedIOException e) {
+            // Not completing the record keeps checkpoints before it, so it is read again after a restart
+            log.error("Cannot dead-letter record " + record.sequenceNumber() + ", leaving it pending", e);
         }
     }
 
-    private void processSingleRecord(KinesisClientRecord record) {
+    /**
+     * Processes a record of the dead-letter store once, on the calling thread; exceptions of the business logic are
+     * thrown to the caller.
+     *
+     * @param recordShardId Shard the record was read from
+     */
+    public void replay(String recordShardId, KinesisClientRecord record) {
+        processSingleRecord(recordShardId, record);
+    }
+
+    /**
+     * @return What the record adds to the windows, to run in shard order once it has completed; null for nothing
+     */
+    private Runnable processSingleRecord(String recordShardId, KinesisClientRecord record) {
         // log.info("record : PartitionKey {}, SequenceNumber {}, ApproximateArrivalTimestamp {}",
         //         record.partitionKey(), record.sequenceNumber(), record.approximateArrivalTimestamp());
 
-        // !!!! Do your business logic here !!!!
+        // Records delivered again skip the business logic, and without windows are not even decoded. They still go
+        // to the windows, which were restored from the checkpoint and so have not seen the records after it, even
+        // when this process handled them before it lost the lease
+        long dedupKey = 0;
+        boolean dedup = deduplicator != null;
+        boolean duplicate = false;
+        if (dedup && deduplicator.key() == Deduplicator.Key.SEQUENCE) {
+            dedupKey = Deduplicator.sequenceKey(recordShardId, record.sequenceNumber(), record.subSequenceNumber());
+            duplicate = deduplicator.isDuplicate(dedupKey);
+            if (duplicate && windows == null) {
+                return null;
+            }
+        }
+
+        Person person = null;
+        PersonFields fields = null;
+        long start = System.nanoTime();
+        try {
+            if (filter != null) {
+                PersonFields tested = (filterDecoders != null ? filterDecoders : fieldDecoders).get()
+                        .decode(record.data());
+                boolean matched = filter.test(tested);
+                filterNanos.add(System.nanoTime() - start);
+                filteredRecords.increment();
+                if (!matched) {
+                    return null;
+                }
+                matchedRecords.increment();
+                if (filterDecoders == null) {
+                    // The requested fields were read with the filter's
+                    fields = tested;
+                } else {
+                    start = System.nanoTime();
+                }
+            }
+            if (fieldDecoders == null) {
+                person = DECODER.decode(record.data());
+            } else if (fields == null) {
+                fields = fieldDecoders.get().decode(record.data());
+            }
+        } catch (UncheckedIOException | IllegalArgumentException e) {
+            // Decoding again would fail the same way, so the record is not retried
+            invalidRecords.increment();
+            log.warn("Skipping undecodable record " + record.sequenceNumber() + ": " + e.getMessage());
+            return null;
+        }
+        decodeNanos.add(System.nanoTime() - start);
+        decodedRecords.incrementAndGet(PersonDecoder.formatOf(record.data()).ordinal());
+
+        if (dedup && deduplicator.key() == Deduplicator.Key.ID) {
+            // A record without id is never a duplicate
+            dedup = person != null || fields.has("id");
+            if (dedup) {
+                dedupKey = Deduplicator.idKey(person != null ? person.getId() : fields.id());
+                duplicate = deduplicator.isDuplicate(dedupKey);
+                if (duplicate && windows == null) {
+                    return null;
+                }
+            }
+        }
+
+        if (!duplicate) {
+            if (sketches != null && (person != null || fields.has("id"))) {
+                sketches.addId(person != null ? person.getId() : fields.id());
+            }
+
+            // !!!! Do your business logic here, with person or the requested fields !!!!
+            downstream.call();
+
+            if (dedup) {
+                deduplicator.processed(dedupKey);
+            }
+        }
+
+        if (windows == null || record.approximateArrivalTimestamp() == null) {
+            return null;
+        }
+        long arrivalMillis = record.approximateArrivalTimestamp().toEpochMilli();
+        if (person != null) {
+            Person decoded = person;
+            return () -> windows.add(arrivalMillis, decoded);
+        }
+        // The fields are overwritten by the next decode, so only their values are kept
+        long score = fields.score();
+        int pets = fields.pets();
+        return () -> windows.add(arrivalMillis, score, pets);
+    }
+
+    private void logWindowResults() {
+        if (windows == null) {
+            return;
+        }
+        for (WindowResult result : windows.takeResults()) {
+            log.info("Window {} {}", shardId, result);
+        }
+    }
+
+    private void logThroughput() {
+        long now = System.currentTimeMillis();
+        long completed = tracker.completedRecords();
+        double seconds = (now - lastReportTimeInMillis) / 1000.0;
+        log.info(String.format("Processed %d records in %.1f sec (%.0f records/sec) on %d workers, %d pending, "
+                        + "%d waiting for retry", completed - lastReportCompletedRecords, seconds,
+                (completed - lastReportCompletedRecords) / seconds, workers.threads(), tracker.pendingRecords(),
+                retries.scheduled()));
+        String deadLetterSummary = deadLetters.summary();
+        if (!deadLetterSummary.isEmpty()) {
+            log.info(deadLetterSummary);
+        }
+        lastReportTimeInMillis = now;
+        lastReportCompletedRecords = completed;
+    }
+
+    private void logDecodeStats() {
+        long total = 0;
+        StringBuilder formats = new StringBuilder();
+        for (PayloadFormat format : PayloadFormat.values()) {
+            long count = decodedRecords.getAndSet(format.ordinal(), 0);
+            if (count > 0) {
+                formats.append(' ').append(format.formatName()).append('=').append(count);
+                total += count;
+            }
+        }
+        long nanos = decodeNanos.sumThenReset();
+        long invalid = invalidRecords.sumThenReset();
+        if (total > 0 || invalid > 0) {
+            log.info(String.format("Decoded %d records (%s), %.0f ns/record, %d invalid",
+                    total, formats.toString().trim(), total == 0 ? 0.0 : (double) nanos / total, invalid));
+        }
+        logFilterStats(total == 0 ? 0.0 : (double) nanos / total);
+        batches = 0;
+    }
+
+    /**
+     * Selectivity of the filter and the CPU it saved: the records it rejected would have been decoded at the mean
+     * decode time of the matching ones, less the time spent testing every record.
+     */
+    private void logFilterStats(double decodeNanosPerRecord) {
+        long filtered = filteredRecords.sumThenReset();
+        long matched = matchedRecords.sumThenReset();
+        long nanos = filterNanos.sumThenReset();
+        if (filtered == 0) {
+            return;
+        }
+        String selectivity = String.format("Filter '%s' matched %d of %d records (%.1f%%), %.0f ns/record",
+                filter, matched, filtered, 100.0 * matched / filtered, (double) nanos / filtered);
+        if (filterDecoders == null) {
+            // Matching records are not decoded again, so only the business logic of the others is saved
+            log.info(selectivity + ", decoded in the same pass");
+            return;
+        }
+        double savedMillis = ((filtered - matched) * decodeNanosPerRecord - nanos) / 1e6;
+        log.info(String.format("%s; saved %.1f ms of decoding, %.2f ms per batch over %d batches",
+                selectivity, savedMillis, batches == 0 ? 0.0 : savedMillis / batches, batches));
+    }
+
+    private void publishSketches() {
+        if (sketches != null) {
+            sketchReport.publish(sketches);
+        }
+    }
+
+    private void retireSketches() {
+        if (sketches != null) {
+            sketchReport.retire(sketches);
+        }
+    }
+
+    private void commitWindowState() {
+        try {
+            windowStates.committed(shardId);
+        } catch (UncheckedIOException e) {
+            // The saved state is still found by its sequence number
+            log.warn("Cannot commit window state of shard {}: {}", shardId, e.getMessage());
+        }
+    }
+
+    private static long epochMicros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1000;
+    }
+
+    private static void logSequenceStats() {
+        String summary = SEQUENCES.summary();
+        if (!summary.isEmpty()) {
+            log.info(summary);
+        }
     }
 
     /**
@@ -136,6 +553,8 @@ public class KclRecordProcessor implements ShardRecordProcessor {
         MDC.put(SHARD_ID_MDC_KEY, shardId);
         try {
             log.info("Lost lease so terminating. : {}", shardId);
+            lost = true;
+            retireSketches();
         } finally {
             MDC.remove(SHARD_ID_MDC_KEY);
         }
@@ -151,10 +570,31 @@ public class KclRecordProcessor implements ShardRecordProcessor {
         MDC.put(SHARD_ID_MDC_KEY, shardId);
         try {
             log.info("Reached shard end checkpointing. : {}", shardId);
+            log.info(latencyStats.totalSummary());
+            log.info(checkpointPolicy.summary(shardId, System.currentTimeMillis()));
+            // The shard end checkpoint covers every record, so all of them must have completed
+            if (!tracker.awaitCompletion(DRAIN_TIMEOUT_MILLIS)) {
+                log.error("{} records still pending at shard end, not checkpointing", tracker.pendingRecords());
+                return;
+            }
+            if (windows != null) {
+                // No record will come after these, so every window closes
+                windows.closeAll();
+                logWindowResults();
+                log.info(windows.summary(shardId));
+            }
             shardEndedInput.checkpointer().checkpoint();
+            if (windows != null) {
+                windowStates.delete(shardId);
+            }
+        } catch (UncheckedIOException e) {
+            log.warn("Cannot delete window state of ended shard {}: {}", shardId, e.getMessage());
         } catch (ShutdownException | InvalidStateException e) {
             log.error("Exception while checkpointing at shard end. Giving up.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } finally {
+            retireSketches();
             MDC.remove(SHARD_ID_MDC_KEY);
         }
     }
@@ -170,31 +610,76 @@ public class KclRecordProcessor implements ShardRecordProcessor {
         MDC.put(SHARD_ID_MDC_KEY, shardId);
         try {
             log.info("Scheduler is shutting down, checkpointing. {}", shardId);
-            shutdownRequestedInput.checkpointer().checkpoint();
-        } catch (ShutdownException | InvalidStateException e) {
-            log.error("Exception while checkpointing at requested shutdown. Giving up.", e);
+            if (!tracker.awaitCompletion(DRAIN_TIMEOUT_MILLIS)) {
+                log.warn("{} records still pending at shutdown, checkpointing the completed ones",
+                        tracker.pendingRecords());
+            }
+            log.info(latencyStats.totalSummary());
+            publishSketches();
+            checkpoint(shutdownRequestedInput.checkpointer());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } finally {
             MDC.remove(SHARD_ID_MDC_KEY);
         }
     }
 
     /**
-     * Checkpoint with retries.
+     * Checkpoint with retries, at the last record of the completed prefix. The open windows are saved first, as of the
+     * same record, so that the next owner of the shard resumes them from the checkpoint.
      *
      * @param checkpointer checkpointer
      */
     private void checkpoint(RecordProcessorCheckpointer checkpointer) {
-        log.info("Checkpointing shard " + shardId);
+        logDecodeStats();
+        logSequenceStats();
+        if (deduplicator != null) {
+            log.info(deduplicator.summary());
+        }
+        ExtendedSequenceNumber position;
+        JsonNode windowState = null;
+        synchronized (tracker) {
+            position = tracker.checkpointCandidate();
+            if (windows != null && position != null) {
+                windowState = windows.snapshot();
+            }
+        }
+        // The windows closed before the snapshot are no longer part of it, so they are emitted before the checkpoint
+        logWindowResults();
+        if (position == null) {
+            log.info("Nothing completed since the last checkpoint of shard {}, {} records pending",
+                    shardId, tracker.pendingRecords());
+            checkpointPolicy.onSkipped(System.currentTimeMillis());
+            return;
+        }
+        log.info("Checkpointing shard {} at {}, {} records pending", shardId, position, tracker.pendingRecords());
+        if (windowState != null) {
+            try {
+                windowStates.save(shardId, position, windowState);
+            } catch (UncheckedIOException e) {
+                // Checkpointing without the windows would lose the records before the checkpoint on failover
+                log.error("Cannot save window state of shard " + shardId + ", not checkpointing", e);
+                checkpointPolicy.onSkipped(System.currentTimeMillis());
+                return;
+            }
+        }
 
         for (int i = 0; i < NUM_RETRIES; i++) {
+            long start = System.currentTimeMillis();
             try {
-                checkpointer.checkpoint();
+                checkpointer.checkpoint(position.sequenceNumber(), position.subSequenceNumber());
+                tracker.checkpointed(position);
+                checkpointPolicy.onCheckpoint(System.currentTimeMillis(), System.currentTimeMillis() - start);
+                if (windowState != null) {
+                    commitWindowState();
+                }
                 break;
             } catch (ShutdownException se) {
                 // Ignore checkpoint if the processor instance has been shutdown (fail over).
                 log.info("Caught shutdown exception, skipping checkpoint.", se);
                 break;
             } catch (ThrottlingException e) {
+                checkpointPolicy.onThrottled();
                 // Backoff and re-attempt checkpoint upon transient failures
                 if (i >= (NUM_RETRIES - 1)) {
                     log.error("Checkpoint failed after " + (i + 1) + "attempts.", e);
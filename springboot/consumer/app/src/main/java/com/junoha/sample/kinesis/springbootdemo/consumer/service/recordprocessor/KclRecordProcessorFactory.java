@@ -1,18 +1,63 @@
 package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
 
 import com.amazonaws.xray.entities.Entity;
+import com.junoha.sample.kinesis.springbootdemo.consumer.codec.PersonPredicate;
+import com.junoha.sample.kinesis.springbootdemo.consumer.sketch.SketchReport;
+import com.junoha.sample.kinesis.springbootdemo.consumer.window.WindowAggregator;
+import com.junoha.sample.kinesis.springbootdemo.consumer.window.WindowStateStore;
 import software.amazon.kinesis.processor.ShardRecordProcessorFactory;
 
+import java.util.Set;
+
 public class KclRecordProcessorFactory implements ShardRecordProcessorFactory {
 
     private final Entity traceEntity;
+    private final String retrievalMode;
+    private final KeyOrderedExecutor workers;
+    private final SimulatedDownstream downstream;
+    private final CheckpointPolicy checkpointPolicy;
+    private final RetryScheduler retries;
+    private final DeadLetterStore deadLetters;
+    private final Set<String> decodeFields;
+    private final PersonPredicate filter;
+    private final Deduplicator deduplicator;
+    private final WindowAggregator windows;
+    private final WindowStateStore windowStates;
+    private final SketchReport sketchReport;
 
-    public KclRecordProcessorFactory(Entity traceEntity) {
+    public KclRecordProcessorFactory(Entity traceEntity, String retrievalMode, KeyOrderedExecutor workers,
+                                     SimulatedDownstream downstream, CheckpointPolicy checkpointPolicy,
+                                     RetryScheduler retries, DeadLetterStore deadLetters, Set<String> decodeFields,
+                                     PersonPredicate filter, Deduplicator deduplicator, WindowAggregator windows,
+                                     WindowStateStore windowStates, SketchReport sketchReport) {
         this.traceEntity = traceEntity;
+        this.retrievalMode = retrievalMode;
+        this.workers = workers;
+        this.downstream = downstream;
+        this.checkpointPolicy = checkpointPolicy;
+        this.retries = retries;
+        this.deadLetters = deadLetters;
+        this.decodeFields = decodeFields;
+        this.filter = filter;
+        this.deduplicator = deduplicator;
+        this.windows = windows;
+        this.windowStates = windowStates;
+        this.sketchReport = sketchReport;
     }
 
     @Override
     public KclRecordProcessor shardRecordProcessor() {
-        return new KclRecordProcessor(traceEntity);
+        return new KclRecordProcessor(traceEntity, retrievalMode, workers, downstream, checkpointPolicy.forShard(),
+                retries, deadLetters, decodeFields, filter, deduplicator, windows == null ? null : windows.forShard(),
+                windowStates, sketchReport);
+    }
+
+    /**
+     * Stops the workers and the retries shared by the record processors; queued records and pending retries are
+     * dropped. Call once the scheduler has shut down.
+     */
+    public void shutdown() {
+        workers.shutdown();
+        retries.shutdown();
     }
 }
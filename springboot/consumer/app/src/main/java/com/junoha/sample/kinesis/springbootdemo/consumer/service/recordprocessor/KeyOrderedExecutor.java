@@ -0,0 +1,83 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Runs tasks on a fixed set of lanes, one thread each. Tasks with the same key always go to the same lane, so they
+ * run one at a time in submission order, while tasks with different keys run in parallel.
+ * <p>
+ * Each lane has a bounded queue; {@link #submit(String, Runnable)} blocks while the lane is full, which holds back
+ * the KCL shard thread and with it the retrieval of the shard. With 0 threads tasks run on the submitting thread.
+ * Shared by all record processors.
+ */
+public class KeyOrderedExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyOrderedExecutor.class);
+
+    private final List<BlockingQueue<Runnable>> lanes = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+
+    /**
+     * @param threads   Number of lanes, 0 to run tasks on the submitting thread
+     * @param queueSize Tasks waiting in each lane before submit blocks
+     */
+    public KeyOrderedExecutor(int threads, int queueSize) {
+        if (threads < 0 || queueSize <= 0) {
+            throw new IllegalArgumentException("Processing threads should be 0 or more and queue size positive");
+        }
+        for (int i = 0; i < threads; i++) {
+            BlockingQueue<Runnable> lane = new ArrayBlockingQueue<>(queueSize);
+            Thread thread = new Thread(() -> runLane(lane), "record-worker-" + i);
+            thread.setDaemon(true);
+            lanes.add(lane);
+            this.threads.add(thread);
+            thread.start();
+        }
+    }
+
+    public int threads() {
+        return threads.size();
+    }
+
+    /**
+     * Queues the task on the key's lane, waiting for room if the lane is full.
+     */
+    public void submit(String key, Runnable task) throws InterruptedException {
+        if (lanes.isEmpty()) {
+            task.run();
+            return;
+        }
+        lanes.get(Math.floorMod(key.hashCode(), lanes.size())).put(task);
+    }
+
+    private static void runLane(BlockingQueue<Runnable> lane) {
+        while (true) {
+            Runnable task;
+            try {
+                task = lane.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Task failed", e);
+            }
+        }
+    }
+
+    /**
+     * Stops the lanes; queued tasks are dropped.
+     */
+    public void shutdown() {
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * End-to-end latency of the records of one shard, in three parts:
+ * <ul>
+ * <li>produce to arrival: from the produce time in the record header to ApproximateArrivalTimestamp, i.e. the
+ * producer's buffering and put</li>
+ * <li>arrival to receive: from ApproximateArrivalTimestamp to the time processRecords received the record, i.e. the
+ * retrieval</li>
+ * <li>arrival to process: from ApproximateArrivalTimestamp to the time a worker completed the record, i.e. the
+ * retrieval plus the queueing, processing and retries on the workers</li>
+ * </ul>
+ * The first compares the producer's clock with Kinesis', the others Kinesis' with the consumer's, so all rely on
+ * synchronized clocks. Negative values from clock skew are counted and recorded as 0. ApproximateArrivalTimestamp
+ * has a resolution of 1 ms.
+ * <p>
+ * {@link #recordProcessed(long, long)} is lock-free and called by the workers; everything else is called by the
+ * shard thread of the record processor that owns it.
+ */
+public class LatencyStats {
+
+    // Track latencies from 1 us up to 1 day with 3 significant digits
+    private static final long MAX_LATENCY_MICROS = TimeUnit.DAYS.toMicros(1);
+
+    private final String shardId;
+    private final String retrievalMode;
+    private final Histogram intervalProduceToArrival = new Histogram(1, MAX_LATENCY_MICROS, 3);
+    private final Histogram intervalArrivalToReceive = new Histogram(1, MAX_LATENCY_MICROS, 3);
+    private final Recorder arrivalToProcessRecorder = new Recorder(1, MAX_LATENCY_MICROS, 3);
+    private final Histogram totalProduceToArrival = new Histogram(1, MAX_LATENCY_MICROS, 3);
+    private final Histogram totalArrivalToReceive = new Histogram(1, MAX_LATENCY_MICROS, 3);
+    private final Histogram totalArrivalToProcess = new Histogram(1, MAX_LATENCY_MICROS, 3);
+    private Histogram intervalArrivalToProcess;
+    private final LongAdder skewed = new LongAdder();
+
+    /**
+     * @param retrievalMode "polling" or "fanout"
+     */
+    public LatencyStats(String shardId, String retrievalMode) {
+        this.shardId = shardId;
+        this.retrievalMode = retrievalMode;
+    }
+
+    /**
+     * @param produceMicros Produce time from the record header
+     * @param arrivalMicros ApproximateArrivalTimestamp
+     * @param receiveMicros Time processRecords received the record
+     */
+    public void record(long produceMicros, long arrivalMicros, long receiveMicros) {
+        intervalProduceToArrival.recordValue(clamp(arrivalMicros - produceMicros));
+        intervalArrivalToReceive.recordValue(clamp(receiveMicros - arrivalMicros));
+    }
+
+    /**
+     * From any worker, once the record has completed.
+     *
+     * @param arrivalMicros   ApproximateArrivalTimestamp
+     * @param processedMicros Time the record completed
+     */
+    public void recordProcessed(long arrivalMicros, long processedMicros) {
+        arrivalToProcessRecorder.recordValue(clamp(processedMicros - arrivalMicros));
+    }
+
+    private long clamp(long micros) {
+        if (micros < 0) {
+            skewed.increment();
+            return 0;
+        }
+        return Math.min(micros, MAX_LATENCY_MICROS);
+    }
+
+    public long intervalCount() {
+        return intervalProduceToArrival.getTotalCount();
+    }
+
+    /**
+     * Percentiles recorded since the previous call.
+     */
+    public String intervalSummary() {
+        intervalArrivalToProcess = arrivalToProcessRecorder.getIntervalHistogram(intervalArrivalToProcess);
+        String summary = summary("last interval", intervalProduceToArrival, intervalArrivalToReceive,
+                intervalArrivalToProcess);
+        addToTotal();
+        return summary;
+    }
+
+    private void addToTotal() {
+        totalProduceToArrival.add(intervalProduceToArrival);
+        totalArrivalToReceive.add(intervalArrivalToReceive);
+        totalArrivalToProcess.add(intervalArrivalToProcess);
+        intervalProduceToArrival.reset();
+        intervalArrivalToReceive.reset();
+        intervalArrivalToProcess.reset();
+    }
+
+    /**
+     * Percentiles since the processor started, including the current interval.
+     */
+    public String totalSummary() {
+        intervalArrivalToProcess = arrivalToProcessRecorder.getIntervalHistogram(intervalArrivalToProcess);
+        addToTotal();
+        return summary("total", totalProduceToArrival, totalArrivalToReceive, totalArrivalToProcess);
+    }
+
+    private String summary(String period, Histogram produceToArrival, Histogram arrivalToReceive,
+                           Histogram arrivalToProcess) {
+        return String.format("Latency %s (%s), %s, %d records: produce->arrival %s; arrival->receive %s; "
+                        + "arrival->process %s (%d records); %d negative from clock skew",
+                shardId, retrievalMode, period, produceToArrival.getTotalCount(),
+                percentiles(produceToArrival), percentiles(arrivalToReceive), percentiles(arrivalToProcess),
+                arrivalToProcess.getTotalCount(), skewed.sum());
+    }
+
+    private static String percentiles(Histogram latency) {
+        if (latency.getTotalCount() == 0) {
+            return "n/a";
+        }
+        return String.format("ms p50 %.1f p99 %.1f p99.9 %.1f max %.1f",
+                latency.getValueAtPercentile(50) / 1000.0,
+                latency.getValueAtPercentile(99) / 1000.0,
+                latency.getValueAtPercentile(99.9) / 1000.0,
+                latency.getMaxValue() / 1000.0);
+    }
+}
@@ -0,0 +1,75 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the most recently seen keys, up to capacity, in stripes that each evict their least recently used key.
+ * Exact: a key is only reported as seen if it was added. Stripes are locked separately, so the workers seldom wait
+ * for each other.
+ */
+public class LruDedupCache implements DedupCache {
+
+    private static final int STRIPES = 16;
+    // LinkedHashMap entry (40), boxed Long key (16) and table slot (8) on a 64-bit JVM with compressed oops
+    static final int BYTES_PER_ENTRY = 64;
+
+    private final List<Map<Long, Boolean>> stripes;
+    private final int capacity;
+
+    public LruDedupCache(int capacity) {
+        if (capacity < STRIPES) {
+            throw new IllegalArgumentException("Dedup capacity should be at least " + STRIPES + ": " + capacity);
+        }
+        this.capacity = capacity;
+        int perStripe = capacity / STRIPES;
+        stripes = new ArrayList<>(STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.add(new LinkedHashMap<>(perStripe * 4 / 3 + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                    return size() > perStripe;
+                }
+            });
+        }
+    }
+
+    private Map<Long, Boolean> stripe(long key) {
+        return stripes.get((int) (key >>> 60) & (STRIPES - 1));
+    }
+
+    @Override
+    public boolean mightContain(long key) {
+        Map<Long, Boolean> stripe = stripe(key);
+        synchronized (stripe) {
+            // get, not containsKey, to refresh the key's recency
+            return stripe.get(key) != null;
+        }
+    }
+
+    @Override
+    public void add(long key) {
+        Map<Long, Boolean> stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.put(key, Boolean.TRUE);
+        }
+    }
+
+    @Override
+    public long memoryBytes() {
+        long entries = 0;
+        for (Map<Long, Boolean> stripe : stripes) {
+            synchronized (stripe) {
+                entries += stripe.size();
+            }
+        }
+        return entries * BYTES_PER_ENTRY;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LRU of %d keys in %d stripes", capacity, STRIPES);
+    }
+}
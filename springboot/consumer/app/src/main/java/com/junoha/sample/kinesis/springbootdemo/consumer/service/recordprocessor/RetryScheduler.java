@@ -0,0 +1,85 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the retries of failed records after an exponential backoff, off the shard and worker threads, so that a
+ * failing record holds up neither the retrieval nor the records behind it.
+ * <p>
+ * The n-th retry waits between half and all of initialBackoffMillis * 2^(n-1), capped at maxBackoffMillis; the random
+ * part spreads out the retries of records that failed together. Shared by all record processors.
+ */
+public class RetryScheduler {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "record-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final AtomicInteger scheduled = new AtomicInteger();
+
+    /**
+     * @param maxAttempts          Attempts per record, including the first one, before it is dead-lettered
+     * @param initialBackoffMillis Backoff before the first retry
+     * @param maxBackoffMillis     Longest backoff
+     */
+    public RetryScheduler(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis) {
+        if (maxAttempts <= 0 || initialBackoffMillis <= 0 || maxBackoffMillis < initialBackoffMillis) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid retry policy: %d attempts, backoff %d ms to %d ms",
+                    maxAttempts, initialBackoffMillis, maxBackoffMillis));
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public int maxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Backoff after the given failed attempt, before jitter.
+     */
+    long backoffMillis(int failedAttempt) {
+        int shift = Math.min(failedAttempt - 1, 62);
+        long backoff = initialBackoffMillis << shift;
+        return backoff <= 0 || backoff >> shift != initialBackoffMillis ? maxBackoffMillis
+                : Math.min(backoff, maxBackoffMillis);
+    }
+
+    /**
+     * Runs the retry after the backoff of the given failed attempt.
+     */
+    public void schedule(int failedAttempt, Runnable retry) {
+        long backoff = backoffMillis(failedAttempt);
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        scheduled.incrementAndGet();
+        scheduler.schedule(() -> {
+            scheduled.decrementAndGet();
+            retry.run();
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Retries waiting for their backoff.
+     */
+    public int scheduled() {
+        return scheduled.get();
+    }
+
+    /**
+     * Stops the scheduler; waiting retries are dropped.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
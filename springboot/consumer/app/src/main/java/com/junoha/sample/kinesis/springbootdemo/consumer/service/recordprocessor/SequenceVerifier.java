@@ -0,0 +1,146 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Checks that every record of a producer run arrives exactly once, from the run id and sequence number the
+ * producer puts in the record header.
+ * <p>
+ * Each run keeps the sequence numbers seen so far as a set of ranges, so a run that arrives in order takes a
+ * single range however many records it has. Records of different shards arrive interleaved, which leaves a
+ * few open ranges until the slower shards catch up. Memory is bounded by maxRanges per run: beyond it the two
+ * lowest ranges are merged and the numbers between them are counted as lost. A lost record arriving after that
+ * is counted as a duplicate.
+ * <p>
+ * Gaps can only be told apart from records still on their way at the end of a run, and only if this process
+ * reads all the shards of the stream. Shared by all record processors; thread safe.
+ */
+public class SequenceVerifier {
+
+    public static final int DEFAULT_MAX_RANGES = 65536;
+    private static final int MAX_RUNS = 16;
+    private static final int MAX_LISTED_GAPS = 5;
+
+    private static final class Run {
+        private final long runId;
+        // Range start -> end (exclusive), non-adjacent
+        private final TreeMap<Long, Long> ranges = new TreeMap<>();
+        private long received = 0;
+        private long distinct = 0;
+        private long duplicates = 0;
+        private long forgotten = 0;
+        private long highest = -1;
+
+        private Run(long runId) {
+            this.runId = runId;
+        }
+    }
+
+    private final int maxRanges;
+    private final Map<Long, Run> runs = new LinkedHashMap<>(MAX_RUNS, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Run> eldest) {
+            return size() > MAX_RUNS;
+        }
+    };
+
+    public SequenceVerifier() {
+        this(DEFAULT_MAX_RANGES);
+    }
+
+    /**
+     * @param maxRanges Ranges kept per run, at least 2
+     */
+    public SequenceVerifier(int maxRanges) {
+        if (maxRanges < 2) {
+            throw new IllegalArgumentException("Sequence verifier needs at least 2 ranges");
+        }
+        this.maxRanges = maxRanges;
+    }
+
+    /**
+     * @return false if the record was seen before
+     */
+    public synchronized boolean record(long runId, long sequence) {
+        Run run = runs.computeIfAbsent(runId, Run::new);
+        run.received++;
+        run.highest = Math.max(run.highest, sequence);
+
+        Map.Entry<Long, Long> below = run.ranges.floorEntry(sequence);
+        if (below != null && sequence < below.getValue()) {
+            run.duplicates++;
+            return false;
+        }
+        run.distinct++;
+        long start = sequence;
+        long end = sequence + 1;
+        if (below != null && below.getValue() == sequence) {
+            start = below.getKey();
+        }
+        Long above = run.ranges.get(end);
+        if (above != null) {
+            run.ranges.remove(end);
+            end = above;
+        }
+        run.ranges.put(start, end);
+
+        if (run.ranges.size() > maxRanges) {
+            Map.Entry<Long, Long> first = run.ranges.pollFirstEntry();
+            Map.Entry<Long, Long> second = run.ranges.pollFirstEntry();
+            run.forgotten += second.getKey() - first.getValue();
+            run.ranges.put(first.getKey(), second.getValue());
+        }
+        return true;
+    }
+
+    public synchronized long duplicates(long runId) {
+        Run run = runs.get(runId);
+        return run == null ? 0 : run.duplicates;
+    }
+
+    /**
+     * Sequence numbers up to the highest seen that have not arrived, including those merged away.
+     */
+    public synchronized long missing(long runId) {
+        Run run = runs.get(runId);
+        return run == null ? 0 : run.highest + 1 - run.distinct;
+    }
+
+    /**
+     * One line per run: records received, duplicates, missing records and the first gaps.
+     */
+    public synchronized String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (Run run : runs.values()) {
+            if (summary.length() > 0) {
+                summary.append(System.lineSeparator());
+            }
+            summary.append(String.format(
+                    "Run %x: %d records received, %d distinct, %d duplicates, highest %d, %d missing so far "
+                            + "(%d given up), %d ranges",
+                    run.runId, run.received, run.distinct, run.duplicates, run.highest,
+                    run.highest + 1 - run.distinct, run.forgotten, run.ranges.size()));
+            appendGaps(summary, run);
+        }
+        return summary.toString();
+    }
+
+    private static void appendGaps(StringBuilder summary, Run run) {
+        long next = 0;
+        int listed = 0;
+        for (Map.Entry<Long, Long> range : run.ranges.entrySet()) {
+            if (range.getKey() > next) {
+                if (listed == MAX_LISTED_GAPS) {
+                    summary.append(" ...");
+                    return;
+                }
+                summary.append(listed == 0 ? ", gaps:" : ",")
+                        .append(String.format(" %d-%d", next, range.getKey() - 1));
+                listed++;
+            }
+            next = range.getValue();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Stands in for the business logic of a record: takes latencyMillis and fails with the given probability, like a
+ * downstream service that is slow or rejects some requests. Thread safe.
+ */
+public class SimulatedDownstream {
+
+    private final long latencyMillis;
+    private final double failureRate;
+
+    /**
+     * @param failureRate Probability between 0 and 1 that a call fails
+     */
+    public SimulatedDownstream(long latencyMillis, double failureRate) {
+        if (latencyMillis < 0 || failureRate < 0 || failureRate > 1) {
+            throw new IllegalArgumentException(String.format(
+                    "Downstream latency should be 0 or more and failure rate between 0 and 1: %d ms, %s",
+                    latencyMillis, failureRate));
+        }
+        this.latencyMillis = latencyMillis;
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * @throws IllegalStateException when the call fails
+     */
+    public void call() {
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+            throw new IllegalStateException("Simulated downstream failure");
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.sketch;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Estimates the number of distinct values added, within about 1.04 / sqrt(2^precision), in 2^precision bytes whatever
+ * the number of values: 16 KB and 0.8% at the default precision of 14.
+ * <p>
+ * Each value is hashed to 64 bits; the first precision bits pick a register, which keeps the highest position of the
+ * first 1 bit among the other bits of its values. Registers only grow, so {@link #add(long)} is lock free, with a
+ * compare-and-set per register, and two sketches merge by taking the larger register of each pair.
+ */
+public class HyperLogLog {
+
+    private static final VarHandle REGISTERS = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * @param precision Bits of the register index, 4 to 18
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("HyperLogLog precision should be between 4 and 18: " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    private HyperLogLog(int precision, byte[] registers) {
+        this.precision = precision;
+        this.registers = registers;
+    }
+
+    public int precision() {
+        return precision;
+    }
+
+    /**
+     * Thread safe.
+     */
+    public void add(long value) {
+        long hash = mix(value);
+        int index = (int) (hash >>> (64 - precision));
+        // The bit below the remaining ones bounds the rank when they are all 0
+        byte rank = (byte) (Long.numberOfLeadingZeros(hash << precision | 1L << (precision - 1)) + 1);
+        byte current;
+        while ((current = (byte) REGISTERS.getVolatile(registers, index)) < rank) {
+            if (REGISTERS.compareAndSet(registers, index, current, rank)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Final mix of MurmurHash3, so that every bit of the hash depends on every bit of the value.
+     */
+    private static long mix(long hash) {
+        hash = (hash ^ hash >>> 33) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ hash >>> 33) * 0xc4ceb9fe1a85ec53L;
+        return hash ^ hash >>> 33;
+    }
+
+    /**
+     * A copy of the registers; values added meanwhile may or may not be in it.
+     */
+    public HyperLogLog copy() {
+        return new HyperLogLog(precision, Arrays.copyOf(registers, registers.length));
+    }
+
+    /**
+     * Adds the values of another sketch of the same precision to this one. Not thread safe.
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException(String.format("Cannot merge HyperLogLog of precision %d into %d",
+                    other.precision, precision));
+        }
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+        }
+    }
+
+    public long estimate() {
+        double m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += Math.scalb(1.0, -register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = switch (precision) {
+            case 4 -> 0.673;
+            case 5 -> 0.697;
+            case 6 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / m);
+        };
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // Linear counting is more accurate while many registers are still empty
+            estimate = m * Math.log(m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Relative standard error of {@link #estimate()}.
+     */
+    public double standardError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    public long memoryBytes() {
+        return registers.length;
+    }
+}
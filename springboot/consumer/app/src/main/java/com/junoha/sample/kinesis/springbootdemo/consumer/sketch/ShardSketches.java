@@ -0,0 +1,70 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.sketch;
+
+/**
+ * The sketches of one record processor: distinct Person ids, added by the workers, and partition keys, added in
+ * arrival order by the shard thread. Created by {@link SketchReport#forShard(String)}.
+ */
+public class ShardSketches {
+
+    private final String shardId;
+    private final String owner;
+    private final HyperLogLog ids;
+    private final SpaceSaving partitionKeys;
+
+    ShardSketches(String shardId, String owner, HyperLogLog ids, SpaceSaving partitionKeys) {
+        this.shardId = shardId;
+        this.owner = owner;
+        this.ids = ids;
+        this.partitionKeys = partitionKeys;
+    }
+
+    String shardId() {
+        return shardId;
+    }
+
+    String owner() {
+        return owner;
+    }
+
+    HyperLogLog ids() {
+        return ids;
+    }
+
+    SpaceSaving partitionKeys() {
+        return partitionKeys;
+    }
+
+    /**
+     * Thread safe.
+     */
+    public void addId(long id) {
+        ids.add(id);
+    }
+
+    /**
+     * From the shard thread only.
+     */
+    public void addPartitionKey(String partitionKey) {
+        partitionKeys.add(partitionKey);
+    }
+
+    /**
+     * A copy, from the shard thread; ids added by the workers meanwhile may or may not be in it.
+     */
+    ShardSketches copy() {
+        return new ShardSketches(shardId, owner, ids.copy(), partitionKeys.copy());
+    }
+
+    /**
+     * New sketches of both, owned by the shard; neither is modified.
+     */
+    ShardSketches merge(ShardSketches other) {
+        HyperLogLog mergedIds = ids.copy();
+        mergedIds.merge(other.ids);
+        return new ShardSketches(shardId, shardId, mergedIds, partitionKeys.merge(other.partitionKeys));
+    }
+
+    public long memoryBytes() {
+        return ids.memoryBytes() + partitionKeys.memoryBytes();
+    }
+}
@@ -0,0 +1,96 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.sketch;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Distinct Person ids and most frequent partition keys of all shards, at a constant memory per shard.
+ * <p>
+ * Each record processor updates its own {@link ShardSketches} and publishes a copy of them from time to time; a
+ * report merges the latest copies of every processor into new sketches. Processors never wait for each other or for
+ * the report: publishing replaces a map entry, and merging only reads copies that are no longer written. When a
+ * processor loses its lease or ends its shard, its last copy is folded into sketches kept per shard and its entry is
+ * removed, so the report holds at most one entry per live processor and one per shard, however often leases move.
+ * The records it processed are still counted; partition keys of the records replayed by the next owner are counted
+ * twice, while ids are counted once however often they are added. Thread safe; shared by all record processors.
+ */
+public class SketchReport {
+
+    private final int precision;
+    private final int counters;
+    private final int topKeys;
+    private final AtomicLong processors = new AtomicLong();
+    private final Map<String, ShardSketches> published = new ConcurrentHashMap<>();
+    // Sketches of the processors gone from each shard
+    private final Map<String, ShardSketches> retired = new ConcurrentHashMap<>();
+
+    /**
+     * @param precision HyperLogLog precision of the distinct ids
+     * @param counters  Space-Saving counters of the partition keys, per shard
+     * @param topKeys   Partition keys to report, at most counters
+     */
+    public SketchReport(int precision, int counters, int topKeys) {
+        if (topKeys <= 0 || topKeys > counters) {
+            throw new IllegalArgumentException(String.format(
+                    "Top partition keys should be between 1 and the %d counters: %d", counters, topKeys));
+        }
+        this.precision = precision;
+        this.counters = counters;
+        this.topKeys = topKeys;
+        // Fails fast on an invalid precision
+        new HyperLogLog(precision);
+    }
+
+    /**
+     * New sketches for a record processor of the shard.
+     */
+    public ShardSketches forShard(String shardId) {
+        return new ShardSketches(shardId, shardId + "#" + processors.incrementAndGet(), new HyperLogLog(precision),
+                new SpaceSaving(counters));
+    }
+
+    /**
+     * Makes a copy of the sketches the processor's latest in the report.
+     */
+    public void publish(ShardSketches sketches) {
+        published.put(sketches.owner(), sketches.copy());
+    }
+
+    /**
+     * Folds a last copy of the sketches into those kept for the shard and drops the processor's entry. Called once,
+     * when the processor loses its lease or ends its shard.
+     */
+    public void retire(ShardSketches sketches) {
+        retired.merge(sketches.shardId(), sketches.copy(), ShardSketches::merge);
+        published.remove(sketches.owner());
+    }
+
+    public String summary() {
+        HyperLogLog ids = new HyperLogLog(precision);
+        SpaceSaving partitionKeys = new SpaceSaving(counters);
+        long memoryBytes = 0;
+        int live = 0;
+        int shards = 0;
+        // A processor being retired may be in both maps for a moment and have its partition keys counted twice
+        for (ShardSketches sketches : published.values()) {
+            ids.merge(sketches.ids());
+            partitionKeys = partitionKeys.merge(sketches.partitionKeys());
+            memoryBytes += sketches.memoryBytes();
+            live++;
+        }
+        for (ShardSketches sketches : retired.values()) {
+            ids.merge(sketches.ids());
+            partitionKeys = partitionKeys.merge(sketches.partitionKeys());
+            memoryBytes += sketches.memoryBytes();
+            shards++;
+        }
+        if (live + shards == 0) {
+            return "Sketches: nothing published yet";
+        }
+        return String.format("Sketches of %d processors and %d shards of earlier owners: %d distinct ids "
+                        + "(%.1f%% error), top %d partition keys of %d records %s, %.1f KB per sketch",
+                live, shards, ids.estimate(), 100 * ids.standardError(), topKeys, partitionKeys.total(),
+                partitionKeys.top(topKeys), memoryBytes / 1024.0 / (live + shards));
+    }
+}
@@ -0,0 +1,215 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.sketch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The most frequent keys of a stream, with a fixed number of counters (Space-Saving). A key without a counter takes
+ * the one of the least counted key and its count plus one, so a count overestimates the key's occurrences by at most
+ * its error, the count taken over. Any key occurring more than total / capacity times has a counter.
+ * <p>
+ * Counters are kept in a min-heap, so that an add costs O(log capacity), and found by key in a hash map. Not thread
+ * safe.
+ */
+public class SpaceSaving {
+
+    // Slot (40), heap reference (8), HashMap entry and table slot (40) and String header (40) on a 64-bit JVM,
+    // plus the key
+    static final int BYTES_PER_COUNTER = 128;
+
+    /**
+     * A key and its count, an upper bound of its occurrences; count - error is a lower bound.
+     */
+    public static final class Counter {
+        private final String key;
+        private final long count;
+        private final long error;
+
+        Counter(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String key() {
+            return key;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long error() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return error == 0 ? key + "=" + count : key + "=" + count + " (-" + error + ")";
+        }
+    }
+
+    // A counter, reused by the next key when its key is evicted
+    private static final class Slot {
+        private String key;
+        private long count;
+        private long error;
+        private int position;
+    }
+
+    // Min-heap by count, so that the least counted key is at 0
+    private final Slot[] heap;
+    private final Map<String, Slot> slots;
+    private int size = 0;
+    private long total = 0;
+    private long keyChars = 0;
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Space-Saving capacity should be positive: " + capacity);
+        }
+        heap = new Slot[capacity];
+        slots = new HashMap<>(capacity * 4 / 3 + 1);
+    }
+
+    public int capacity() {
+        return heap.length;
+    }
+
+    public void add(String key) {
+        total++;
+        Slot slot = slots.get(key);
+        if (slot != null) {
+            slot.count++;
+            siftDown(slot.position);
+        } else if (size < heap.length) {
+            insert(key, 1, 0);
+        } else {
+            // Takes over the least counted key, whose count bounds how often the new key was missed
+            slot = heap[0];
+            slots.remove(slot.key);
+            keyChars += key.length() - slot.key.length();
+            slot.key = key;
+            slot.error = slot.count;
+            slot.count++;
+            slots.put(key, slot);
+            siftDown(0);
+        }
+    }
+
+    private void insert(String key, long count, long error) {
+        Slot slot = new Slot();
+        slot.key = key;
+        slot.count = count;
+        slot.error = error;
+        slot.position = size;
+        heap[size] = slot;
+        slots.put(key, slot);
+        keyChars += key.length();
+        siftUp(size++);
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (heap[parent].count <= heap[position].count) {
+                return;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int smallest = position;
+            int left = 2 * position + 1;
+            if (left < size && heap[left].count < heap[smallest].count) {
+                smallest = left;
+            }
+            if (left + 1 < size && heap[left + 1].count < heap[smallest].count) {
+                smallest = left + 1;
+            }
+            if (smallest == position) {
+                return;
+            }
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        Slot slot = heap[i];
+        heap[i] = heap[j];
+        heap[j] = slot;
+        heap[i].position = i;
+        heap[j].position = j;
+    }
+
+    /**
+     * Keys added in total.
+     */
+    public long total() {
+        return total;
+    }
+
+    /**
+     * The n keys with the highest counts, highest first.
+     */
+    public List<Counter> top(int n) {
+        List<Counter> counters = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            counters.add(new Counter(heap[i].key, heap[i].count, heap[i].error));
+        }
+        counters.sort(Comparator.comparingLong(Counter::count).reversed());
+        return counters.subList(0, Math.min(n, counters.size()));
+    }
+
+    public SpaceSaving copy() {
+        SpaceSaving copy = new SpaceSaving(heap.length);
+        for (int i = 0; i < size; i++) {
+            copy.insert(heap[i].key, heap[i].count, heap[i].error);
+        }
+        copy.total = total;
+        return copy;
+    }
+
+    /**
+     * Summary of the keys of both sketches, with the capacity of this one: counts of the same key add up, and a key
+     * missing from a full sketch may have been counted by its least counted key, so it gets that count as count and
+     * error. The largest counts are kept.
+     */
+    public SpaceSaving merge(SpaceSaving other) {
+        long missingThis = size == heap.length ? heap[0].count : 0;
+        long missingOther = other.size == other.heap.length ? other.heap[0].count : 0;
+        Map<String, long[]> merged = new HashMap<>((size + other.size) * 4 / 3 + 1);
+        for (int i = 0; i < size; i++) {
+            merged.put(heap[i].key, new long[]{heap[i].count + missingOther, heap[i].error + missingOther});
+        }
+        for (int i = 0; i < other.size; i++) {
+            Slot slot = other.heap[i];
+            long[] counter = merged.get(slot.key);
+            if (counter == null) {
+                merged.put(slot.key, new long[]{slot.count + missingThis, slot.error + missingThis});
+            } else {
+                counter[0] += slot.count - missingOther;
+                counter[1] += slot.error - missingOther;
+            }
+        }
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(merged.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<String, long[]> entry) -> entry.getValue()[0]).reversed());
+        SpaceSaving result = new SpaceSaving(heap.length);
+        for (Map.Entry<String, long[]> entry : entries.subList(0, Math.min(heap.length, entries.size()))) {
+            result.insert(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+        }
+        result.total = total + other.total;
+        return result;
+    }
+
+    public long memoryBytes() {
+        return (long) heap.length * BYTES_PER_COUNTER + keyChars;
+    }
+}
@@ -0,0 +1,380 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.window;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.junoha.sample.kinesis.springbootdemo.consumer.model.Person;
+import com.junoha.sample.kinesis.springbootdemo.consumer.model.Pet;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Tumbling or sliding windows over the arrival time of the records of one shard: records, score sum, min and max,
+ * and pets in total and by type, per window.
+ * <p>
+ * Time is cut in panes as long as the slide. Each pane holds the partial aggregates of its records in primitive arrays,
+ * and a window, size / slide consecutive panes, is summed from them when it closes, so a record is added once however
+ * many windows it falls in. The watermark of the shard is the latest arrival time seen less the allowed lateness; a
+ * window closes once its end is at or below the watermark, and its result is queued for {@link #takeResults()}. A
+ * record arriving after every window it falls in has closed is counted as late and dropped. Windows without records
+ * are not emitted.
+ * <p>
+ * Records are added in shard order, so that a {@link #snapshot()} is the state of a prefix of the shard. Thread safe;
+ * each record processor has its own, see {@link #forShard()}.
+ */
+public class WindowAggregator {
+
+    // Pet types get an index when first seen, shared by all shards; the last one counts every type beyond
+    static final int PET_TYPES = 32;
+    static final String OTHER_PET_TYPE = "other";
+    private static final Map<String, Integer> PET_TYPE_INDEX = new ConcurrentHashMap<>();
+    private static final AtomicReferenceArray<String> PET_TYPE_NAMES = new AtomicReferenceArray<>(PET_TYPES);
+
+    static {
+        PET_TYPE_NAMES.set(PET_TYPES - 1, OTHER_PET_TYPE);
+    }
+
+    // Bounds the panes kept per shard: window size plus allowed lateness, in slides
+    static final int MAX_PANES = 100_000;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final long sizeMillis;
+    private final long slideMillis;
+    private final long allowedLatenessMillis;
+    private final int panesPerWindow;
+
+    // Ring of panes, indexed by pane number modulo its length; a slot whose pane number differs is empty
+    private final long[] paneOf;
+    private final long[] records;
+    private final long[] scoreSum;
+    private final long[] scoreMin;
+    private final long[] scoreMax;
+    private final long[] pets;
+    // PET_TYPES counts per slot
+    private final long[] petTypes;
+
+    private boolean started = false;
+    // First pane of the earliest window not emitted yet; panes before it are no longer needed
+    private long firstOpenPane;
+    private long maxArrivalMillis;
+    // Records in the panes from firstOpenPane on
+    private long openRecords = 0;
+    private long lateRecords = 0;
+    private long emittedWindows = 0;
+    private final List<WindowResult> results = new ArrayList<>();
+
+    /**
+     * @param sizeMillis            Length of a window
+     * @param slideMillis           Time between the starts of two windows, equal to the size for tumbling windows;
+     *                              divides the size
+     * @param allowedLatenessMillis How long a window stays open after its end for records arriving out of order
+     */
+    public WindowAggregator(long sizeMillis, long slideMillis, long allowedLatenessMillis) {
+        if (sizeMillis <= 0 || slideMillis <= 0 || sizeMillis % slideMillis != 0 || allowedLatenessMillis < 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid windows: size %d ms, slide %d ms, allowed lateness %d ms",
+                    sizeMillis, slideMillis, allowedLatenessMillis));
+        }
+        long ring = sizeMillis / slideMillis + (allowedLatenessMillis + slideMillis - 1) / slideMillis + 2;
+        if (ring > MAX_PANES) {
+            throw new IllegalArgumentException(String.format("Windows need %d panes, more than %d: "
+                    + "size %d ms, slide %d ms, allowed lateness %d ms",
+                    ring, MAX_PANES, sizeMillis, slideMillis, allowedLatenessMillis));
+        }
+        this.sizeMillis = sizeMillis;
+        this.slideMillis = slideMillis;
+        this.allowedLatenessMillis = allowedLatenessMillis;
+        this.panesPerWindow = (int) (sizeMillis / slideMillis);
+        this.paneOf = new long[(int) ring];
+        this.records = new long[(int) ring];
+        this.scoreSum = new long[(int) ring];
+        this.scoreMin = new long[(int) ring];
+        this.scoreMax = new long[(int) ring];
+        this.pets = new long[(int) ring];
+        this.petTypes = new long[(int) ring * PET_TYPES];
+        Arrays.fill(paneOf, Long.MIN_VALUE);
+    }
+
+    /**
+     * New, empty windows of the same size, for another shard.
+     */
+    public WindowAggregator forShard() {
+        return new WindowAggregator(sizeMillis, slideMillis, allowedLatenessMillis);
+    }
+
+    static int petTypeIndex(String type) {
+        if (type == null || type.equals(OTHER_PET_TYPE)) {
+            return PET_TYPES - 1;
+        }
+        Integer index = PET_TYPE_INDEX.get(type);
+        if (index != null) {
+            return index;
+        }
+        synchronized (PET_TYPE_INDEX) {
+            index = PET_TYPE_INDEX.get(type);
+            if (index == null) {
+                if (PET_TYPE_INDEX.size() >= PET_TYPES - 1) {
+                    return PET_TYPES - 1;
+                }
+                index = PET_TYPE_INDEX.size();
+                PET_TYPE_NAMES.set(index, type);
+                PET_TYPE_INDEX.put(type, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Adds a record of which only the score and the number of pets were read.
+     */
+    public synchronized void add(long arrivalMillis, long score, int petCount) {
+        int slot = slotFor(arrivalMillis);
+        if (slot >= 0) {
+            addTo(slot, score, petCount);
+        }
+    }
+
+    public synchronized void add(long arrivalMillis, Person person) {
+        int slot = slotFor(arrivalMillis);
+        if (slot < 0) {
+            return;
+        }
+        List<Pet> petList = person.getPets();
+        addTo(slot, person.getScore(), petList == null ? 0 : petList.size());
+        if (petList != null) {
+            for (Pet pet : petList) {
+                petTypes[slot * PET_TYPES + petTypeIndex(pet.getType())]++;
+            }
+        }
+    }
+
+    /**
+     * Moves the watermark with the record and finds the slot of its pane.
+     *
+     * @return -1 if the record is late
+     */
+    private int slotFor(long arrivalMillis) {
+        if (!started) {
+            started = true;
+            maxArrivalMillis = arrivalMillis;
+            firstOpenPane = Math.floorDiv(arrivalMillis - allowedLatenessMillis, slideMillis) - panesPerWindow + 1;
+        } else if (arrivalMillis > maxArrivalMillis) {
+            maxArrivalMillis = arrivalMillis;
+            advance(maxArrivalMillis - allowedLatenessMillis);
+        }
+        long pane = Math.floorDiv(arrivalMillis, slideMillis);
+        if (pane < firstOpenPane) {
+            lateRecords++;
+            return -1;
+        }
+        return slot(pane);
+    }
+
+    private int slot(long pane) {
+        int slot = (int) Math.floorMod(pane, (long) paneOf.length);
+        if (paneOf[slot] != pane) {
+            // The pane held before is older than firstOpenPane
+            paneOf[slot] = pane;
+            records[slot] = 0;
+            scoreSum[slot] = 0;
+            scoreMin[slot] = Long.MAX_VALUE;
+            scoreMax[slot] = Long.MIN_VALUE;
+            pets[slot] = 0;
+            Arrays.fill(petTypes, slot * PET_TYPES, (slot + 1) * PET_TYPES, 0L);
+        }
+        return slot;
+    }
+
+    private void addTo(int slot, long score, int petCount) {
+        records[slot]++;
+        scoreSum[slot] += score;
+        scoreMin[slot] = Math.min(scoreMin[slot], score);
+        scoreMax[slot] = Math.max(scoreMax[slot], score);
+        pets[slot] += petCount;
+        openRecords++;
+    }
+
+    /**
+     * Emits the windows ending at or below the watermark.
+     */
+    private void advance(long watermarkMillis) {
+        while (firstOpenPane + panesPerWindow <= Math.floorDiv(watermarkMillis, slideMillis)) {
+            if (openRecords == 0) {
+                // Nothing left to emit: skip to the first window still open
+                firstOpenPane = Math.floorDiv(watermarkMillis, slideMillis) - panesPerWindow + 1;
+                return;
+            }
+            emit(firstOpenPane);
+            int slot = (int) Math.floorMod(firstOpenPane, (long) paneOf.length);
+            if (paneOf[slot] == firstOpenPane) {
+                openRecords -= records[slot];
+            }
+            firstOpenPane++;
+        }
+    }
+
+    private void emit(long firstPane) {
+        long windowRecords = 0;
+        long windowScoreSum = 0;
+        long windowScoreMin = Long.MAX_VALUE;
+        long windowScoreMax = Long.MIN_VALUE;
+        long windowPets = 0;
+        long[] windowPetTypes = null;
+        for (long pane = firstPane; pane < firstPane + panesPerWindow; pane++) {
+            int slot = (int) Math.floorMod(pane, (long) paneOf.length);
+            if (paneOf[slot] != pane || records[slot] == 0) {
+                continue;
+            }
+            windowRecords += records[slot];
+            windowScoreSum += scoreSum[slot];
+            windowScoreMin = Math.min(windowScoreMin, scoreMin[slot]);
+            windowScoreMax = Math.max(windowScoreMax, scoreMax[slot]);
+            windowPets += pets[slot];
+            for (int type = 0; type < PET_TYPES; type++) {
+                long count = petTypes[slot * PET_TYPES + type];
+                if (count != 0) {
+                    if (windowPetTypes == null) {
+                        windowPetTypes = new long[PET_TYPES];
+                    }
+                    windowPetTypes[type] += count;
+                }
+            }
+        }
+        if (windowRecords == 0) {
+            return;
+        }
+        Map<String, Long> petsPerType = new LinkedHashMap<>();
+        if (windowPetTypes != null) {
+            for (int type = 0; type < PET_TYPES; type++) {
+                if (windowPetTypes[type] != 0) {
+                    petsPerType.put(PET_TYPE_NAMES.get(type), windowPetTypes[type]);
+                }
+            }
+        }
+        long startMillis = firstPane * slideMillis;
+        results.add(new WindowResult(startMillis, startMillis + sizeMillis, windowRecords, windowScoreSum,
+                windowScoreMin, windowScoreMax, windowPets, petsPerType));
+        emittedWindows++;
+    }
+
+    /**
+     * Emits every window with records, at the end of the shard.
+     */
+    public synchronized void closeAll() {
+        if (started) {
+            advance(Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * The results of the windows closed since the last call, in window order.
+     */
+    public synchronized List<WindowResult> takeResults() {
+        if (results.isEmpty()) {
+            return List.of();
+        }
+        List<WindowResult> taken = new ArrayList<>(results);
+        results.clear();
+        return taken;
+    }
+
+    /**
+     * Latest arrival time less the allowed lateness, Long.MIN_VALUE before the first record.
+     */
+    public synchronized long watermarkMillis() {
+        return started ? maxArrivalMillis - allowedLatenessMillis : Long.MIN_VALUE;
+    }
+
+    public synchronized long lateRecords() {
+        return lateRecords;
+    }
+
+    /**
+     * State of the open windows, for {@link #restore(JsonNode)} by the next owner of the shard. Results not taken yet
+     * are not part of it.
+     */
+    public synchronized ObjectNode snapshot() {
+        ObjectNode state = MAPPER.createObjectNode()
+                .put("sizeMillis", sizeMillis)
+                .put("slideMillis", slideMillis)
+                .put("lateRecords", lateRecords);
+        if (!started) {
+            return state;
+        }
+        state.put("firstOpenPane", firstOpenPane).put("maxArrivalMillis", maxArrivalMillis);
+        ArrayNode panes = state.putArray("panes");
+        for (int slot = 0; slot < paneOf.length; slot++) {
+            if (paneOf[slot] < firstOpenPane || records[slot] == 0) {
+                continue;
+            }
+            ObjectNode pane = panes.addObject()
+                    .put("pane", paneOf[slot])
+                    .put("records", records[slot])
+                    .put("scoreSum", scoreSum[slot])
+                    .put("scoreMin", scoreMin[slot])
+                    .put("scoreMax", scoreMax[slot])
+                    .put("pets", pets[slot]);
+            ObjectNode types = pane.putObject("petTypes");
+            for (int type = 0; type < PET_TYPES; type++) {
+                long count = petTypes[slot * PET_TYPES + type];
+                if (count != 0) {
+                    types.put(PET_TYPE_NAMES.get(type), count);
+                }
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Replaces the state with a {@link #snapshot()}.
+     *
+     * @throws IllegalArgumentException if the snapshot is of windows of another size or slide
+     */
+    public synchronized void restore(JsonNode state) {
+        if (state.get("sizeMillis").asLong() != sizeMillis || state.get("slideMillis").asLong() != slideMillis) {
+            throw new IllegalArgumentException(String.format("Window state of %d ms windows sliding by %d ms, "
+                            + "not %d ms by %d ms", state.get("sizeMillis").asLong(),
+                    state.get("slideMillis").asLong(), sizeMillis, slideMillis));
+        }
+        Arrays.fill(paneOf, Long.MIN_VALUE);
+        results.clear();
+        openRecords = 0;
+        lateRecords = state.get("lateRecords").asLong();
+        started = state.has("firstOpenPane");
+        if (!started) {
+            return;
+        }
+        firstOpenPane = state.get("firstOpenPane").asLong();
+        maxArrivalMillis = state.get("maxArrivalMillis").asLong();
+        for (JsonNode pane : state.get("panes")) {
+            int slot = slot(pane.get("pane").asLong());
+            records[slot] = pane.get("records").asLong();
+            scoreSum[slot] = pane.get("scoreSum").asLong();
+            scoreMin[slot] = pane.get("scoreMin").asLong();
+            scoreMax[slot] = pane.get("scoreMax").asLong();
+            pets[slot] = pane.get("pets").asLong();
+            for (Iterator<Map.Entry<String, JsonNode>> it = pane.get("petTypes").fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> type = it.next();
+                petTypes[slot * PET_TYPES + petTypeIndex(type.getKey())] += type.getValue().asLong();
+            }
+            openRecords += records[slot];
+        }
+    }
+
+    public synchronized String summary(String shardId) {
+        return String.format("Windows %s of %d ms sliding by %d ms: watermark %s, %d windows emitted, "
+                        + "%d records in open windows, %d late records dropped", shardId, sizeMillis, slideMillis,
+                started ? Instant.ofEpochMilli(maxArrivalMillis - allowedLatenessMillis) : "none", emittedWindows,
+                openRecords, lateRecords);
+    }
+}
@@ -0,0 +1,73 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.window;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Aggregates of the records of one shard whose arrival time is in [start, end).
+ */
+public final class WindowResult {
+
+    private final long startMillis;
+    private final long endMillis;
+    private final long records;
+    private final long scoreSum;
+    private final long scoreMin;
+    private final long scoreMax;
+    private final long pets;
+    private final Map<String, Long> petsPerType;
+
+    WindowResult(long startMillis, long endMillis, long records, long scoreSum, long scoreMin, long scoreMax,
+                 long pets, Map<String, Long> petsPerType) {
+        this.startMillis = startMillis;
+        this.endMillis = endMillis;
+        this.records = records;
+        this.scoreSum = scoreSum;
+        this.scoreMin = scoreMin;
+        this.scoreMax = scoreMax;
+        this.pets = pets;
+        this.petsPerType = petsPerType;
+    }
+
+    public long startMillis() {
+        return startMillis;
+    }
+
+    public long endMillis() {
+        return endMillis;
+    }
+
+    public long records() {
+        return records;
+    }
+
+    public long scoreSum() {
+        return scoreSum;
+    }
+
+    public long scoreMin() {
+        return scoreMin;
+    }
+
+    public long scoreMax() {
+        return scoreMax;
+    }
+
+    public long pets() {
+        return pets;
+    }
+
+    /**
+     * Pets by type, empty when only the number of pets was read.
+     */
+    public Map<String, Long> petsPerType() {
+        return petsPerType;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[%s, %s): %d records, score sum %d (min %d, max %d, mean %.1f), %d pets %s",
+                Instant.ofEpochMilli(startMillis), Instant.ofEpochMilli(endMillis), records, scoreSum, scoreMin,
+                scoreMax, (double) scoreSum / records, pets, petsPerType);
+    }
+}
@@ -0,0 +1,108 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.window;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import software.amazon.kinesis.retrieval.kpl.ExtendedSequenceNumber;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The open windows of every shard, saved with each checkpoint so that the next owner of the shard carries on from
+ * them instead of losing the records before the checkpoint.
+ * <p>
+ * A shard has two files in the store's directory: {@code <shardId>.json}, its state at the last checkpoint, and
+ * {@code <shardId>.next.json}, saved before the checkpoint in progress and renamed once it succeeded. Each holds the
+ * sequence number it was saved at, and a shard only picks up the state saved at the sequence number it resumes from;
+ * any other would count records twice or lose them. For the state to follow a lease to another host, the directory
+ * must be shared by the consumers, e.g. on EFS. Thread safe; shared by all record processors.
+ */
+public class WindowStateStore {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Path directory;
+
+    public WindowStateStore(Path directory) {
+        this.directory = directory;
+    }
+
+    private Path file(String shardId) {
+        return directory.resolve(shardId + ".json");
+    }
+
+    private Path nextFile(String shardId) {
+        return directory.resolve(shardId + ".next.json");
+    }
+
+    /**
+     * Saves the state of the shard for the checkpoint at the given position; call {@link #committed(String)} once the
+     * checkpoint succeeded.
+     *
+     * @throws UncheckedIOException if the state could not be written; the shard must not be checkpointed then
+     */
+    public void save(String shardId, ExtendedSequenceNumber position, JsonNode state) {
+        ObjectNode node = MAPPER.createObjectNode()
+                .put("sequenceNumber", position.sequenceNumber())
+                .put("subSequenceNumber", position.subSequenceNumber());
+        node.set("state", state);
+        try {
+            Files.createDirectories(directory);
+            Files.write(nextFile(shardId), MAPPER.writeValueAsBytes(node));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot save window state to " + nextFile(shardId), e);
+        }
+    }
+
+    public void committed(String shardId) {
+        try {
+            Files.move(nextFile(shardId), file(shardId), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot commit window state " + nextFile(shardId), e);
+        }
+    }
+
+    /**
+     * The state of the shard saved at the position it resumes from.
+     *
+     * @return null if there is none
+     */
+    public JsonNode load(String shardId, ExtendedSequenceNumber position) {
+        if (position == null) {
+            return null;
+        }
+        for (Path path : new Path[]{nextFile(shardId), file(shardId)}) {
+            if (!Files.exists(path)) {
+                continue;
+            }
+            JsonNode node;
+            try {
+                node = MAPPER.readTree(path.toFile());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read window state from " + path, e);
+            }
+            if (node.get("sequenceNumber").asText().equals(position.sequenceNumber())
+                    && node.get("subSequenceNumber").asLong() == position.subSequenceNumber()) {
+                return node.get("state");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the state of a shard that has ended.
+     */
+    public void delete(String shardId) {
+        try {
+            Files.deleteIfExists(nextFile(shardId));
+            Files.deleteIfExists(file(shardId));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot delete window state of " + shardId, e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.avro.AvroMapper;
+import com.fasterxml.jackson.dataformat.avro.AvroSchema;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.junoha.sample.kinesis.springbootdemo.consumer.model.Person;
+import com.junoha.sample.kinesis.springbootdemo.consumer.model.Pet;
+import org.apache.avro.Schema;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PersonFieldDecoderTest {
+
+    @Test
+    void readsRequestedFieldsOfEveryFormat() throws Exception {
+        Pet pet = new Pet();
+        pet.setType("turtle");
+        pet.setName("Donatello");
+        Person person = new Person();
+        person.setId(54207);
+        person.setDate("2019/09/28 15:36:46");
+        person.setScore(-6315932014L);
+        person.setFirstName("Doyle");
+        person.setLastName("Goldn\u00e9r");
+        person.setAddress("Apt. 339 84193 Lockman Parkway");
+        person.setPets(List.of(pet, pet));
+
+        AvroSchema schema;
+        try (InputStream in = getClass().getResourceAsStream("/person.avsc")) {
+            schema = new AvroSchema(new Schema.Parser().parse(in));
+        }
+        PersonFieldDecoder decoder = new PersonFieldDecoder(Set.of("id", "score", "lastName", "pets"));
+        for (PayloadFormat format : PayloadFormat.values()) {
+            byte[] payload = switch (format) {
+                case JSON -> new ObjectMapper().writeValueAsBytes(person);
+                case SMILE -> new SmileMapper().writeValueAsBytes(person);
+                case CBOR -> new CBORMapper().writeValueAsBytes(person);
+                case AVRO -> new AvroMapper().writer(schema).writeValueAsBytes(person);
+            };
+            ByteBuffer record = ByteBuffer.allocate(payload.length + PersonDecoder.HEADER_LENGTH)
+                    .put(PersonDecoder.HEADER_MAGIC).put(format.id()).put(payload).flip();
+            // Read-only like the buffers of KCL records, so the array is not accessible
+            PersonFields fields = decoder.decode(record.asReadOnlyBuffer());
+            assertEquals(54207, fields.id(), format.formatName());
+            assertEquals(-6315932014L, fields.score(), format.formatName());
+            assertEquals("Goldn\u00e9r", fields.lastName(), format.formatName());
+            assertEquals(2, fields.pets(), format.formatName());
+            assertNull(fields.date(), format.formatName());
+            assertFalse(fields.has("date"));
+        }
+    }
+
+    @Test
+    void scansJsonInPlace() {
+        String json = "  { \"pets\" : [ {\"type\":\"cat\",\"name\":\"}\"} ], \"extra\": {\"id\": 1},"
+                + " \"firstName\" : \"A \\\"quoted\\\" \\u00e9\\ud83d\\ude00 name\", \"id\" : 42 , \"score\": null }";
+        ByteBuffer data = ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+        PersonFields fields = new PersonFieldDecoder(PersonFieldDecoder.parseFields("id, firstName,score"))
+                .decode(data);
+        assertEquals(42, fields.id());
+        assertEquals("A \"quoted\" \u00e9\ud83d\ude00 name", fields.firstName());
+        assertTrue(fields.has("id"));
+        assertFalse(fields.has("score"));
+        assertEquals(0, data.position());
+
+        PersonFieldDecoder decoder = new PersonFieldDecoder(Set.of("id"));
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode(ByteBuffer.wrap("{\"id\":1.5}".getBytes())));
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode(ByteBuffer.wrap("{\"id\":".getBytes())));
+        assertThrows(IllegalArgumentException.class, () -> PersonFieldDecoder.parseFields("id,age"));
+    }
+}
@@ -0,0 +1,42 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PersonPredicateTest {
+
+    private static PersonFields read(PersonPredicate predicate, String json) {
+        return new PersonFieldDecoder(predicate.fields())
+                .decode(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testsFieldsReadFromTheRawRecord() {
+        PersonPredicate predicate = PersonPredicate.parse("score > 1000 && pets>=1 && lastName != \"Smith\"");
+        assertEquals(Set.of("score", "pets", "lastName"), predicate.fields());
+
+        assertTrue(predicate.test(read(predicate,
+                "{\"id\":1,\"score\":1001,\"lastName\":\"Doe\",\"pets\":[{\"type\":\"cat\",\"name\":\"Tom\"}]}")));
+        assertFalse(predicate.test(read(predicate, "{\"id\":1,\"score\":1001,\"lastName\":\"Doe\",\"pets\":[]}")));
+        assertFalse(predicate.test(read(predicate,
+                "{\"id\":1,\"score\":1001,\"lastName\":\"Smith\",\"pets\":[{\"type\":\"cat\",\"name\":\"Tom\"}]}")));
+        // A missing field does not match
+        assertFalse(predicate.test(read(predicate, "{\"id\":1,\"lastName\":\"Doe\",\"pets\":[{}]}")));
+    }
+
+    @Test
+    void rejectsInvalidConditions() {
+        assertThrows(IllegalArgumentException.class, () -> PersonPredicate.parse("age>1"));
+        assertThrows(IllegalArgumentException.class, () -> PersonPredicate.parse("score>high"));
+        assertThrows(IllegalArgumentException.class, () -> PersonPredicate.parse("lastName<B"));
+        assertThrows(IllegalArgumentException.class, () -> PersonPredicate.parse("score"));
+    }
+}
@@ -0,0 +1,160 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.local;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeAction;
+import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValueUpdate;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.CreateTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ExpectedAttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
+import software.amazon.awssdk.services.dynamodb.model.KeyType;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScalarAttributeType;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalDynamoDbClientTest {
+
+    private static final String TABLE = "leases";
+
+    private static LocalDynamoDbClient client() {
+        LocalDynamoDbClient client = new LocalDynamoDbClient(new FaultInjector(0, 0, 0));
+        client.createTable(CreateTableRequest.builder()
+                .tableName(TABLE)
+                .keySchema(KeySchemaElement.builder().attributeName("leaseKey").keyType(KeyType.HASH).build())
+                .attributeDefinitions(AttributeDefinition.builder()
+                        .attributeName("leaseKey").attributeType(ScalarAttributeType.S).build())
+                .build()).join();
+        return client;
+    }
+
+    private static AttributeValue s(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+
+    private static AttributeValue n(long value) {
+        return AttributeValue.builder().n(Long.toString(value)).build();
+    }
+
+    private static Map<String, AttributeValue> key(String leaseKey) {
+        return Map.of("leaseKey", s(leaseKey));
+    }
+
+    private static Map<String, AttributeValue> get(LocalDynamoDbClient client, String leaseKey) {
+        return client.getItem(GetItemRequest.builder().tableName(TABLE).key(key(leaseKey)).build()).join().item();
+    }
+
+    private static void assertConditionFails(CompletableFuture<?> future) {
+        CompletionException e = assertThrows(CompletionException.class, future::join);
+        assertTrue(e.getCause() instanceof ConditionalCheckFailedException, e.getCause().toString());
+    }
+
+    @Test
+    void putChecksExpectedAttributes() {
+        LocalDynamoDbClient client = client();
+        PutItemRequest create = PutItemRequest.builder().tableName(TABLE)
+                .item(Map.of("leaseKey", s("shard-0"), "leaseCounter", n(1)))
+                .expected(Map.of("leaseKey", ExpectedAttributeValue.builder().exists(false).build()))
+                .build();
+        client.putItem(create).join();
+        // Only created once
+        assertConditionFails(client.putItem(create));
+
+        PutItemRequest.Builder overwrite = PutItemRequest.builder().tableName(TABLE)
+                .item(Map.of("leaseKey", s("shard-0"), "leaseCounter", n(2)));
+        assertConditionFails(client.putItem(overwrite.copy()
+                .expected(Map.of("leaseCounter", ExpectedAttributeValue.builder().value(n(5)).build())).build()));
+        assertConditionFails(client.putItem(overwrite.copy()
+                .expected(Map.of("leaseOwner", ExpectedAttributeValue.builder().exists(true).build())).build()));
+        client.putItem(overwrite.copy()
+                .expected(Map.of("leaseCounter", ExpectedAttributeValue.builder().value(n(1)).build())).build()).join();
+        assertEquals(n(2), get(client, "shard-0").get("leaseCounter"));
+    }
+
+    @Test
+    void updateAddsPutsAndDeletesAttributes() {
+        LocalDynamoDbClient client = client();
+        UpdateItemRequest.Builder update = UpdateItemRequest.builder().tableName(TABLE).key(key("shard-0"));
+        // ADD to a missing item creates it with the key and the value added
+        client.updateItem(update.copy().attributeUpdates(Map.of(
+                "leaseCounter", AttributeValueUpdate.builder().action(AttributeAction.ADD).value(n(1)).build(),
+                "leaseOwner", AttributeValueUpdate.builder().value(s("worker-a")).build())).build()).join();
+        client.updateItem(update.copy().attributeUpdates(Map.of(
+                "leaseCounter", AttributeValueUpdate.builder().action(AttributeAction.ADD).value(n(41)).build()))
+                .build()).join();
+        Map<String, AttributeValue> item = get(client, "shard-0");
+        assertEquals(s("shard-0"), item.get("leaseKey"));
+        assertEquals("42", item.get("leaseCounter").n());
+        assertEquals(s("worker-a"), item.get("leaseOwner"));
+
+        // A lease is taken only from the owner it was read from
+        assertConditionFails(client.updateItem(update.copy()
+                .expected(Map.of("leaseOwner", ExpectedAttributeValue.builder().value(s("worker-b")).build()))
+                .attributeUpdates(Map.of("leaseOwner", AttributeValueUpdate.builder()
+                        .action(AttributeAction.DELETE).build()))
+                .build()));
+        client.updateItem(update.copy()
+                .expected(Map.of("leaseOwner", ExpectedAttributeValue.builder().value(s("worker-a")).build()))
+                .attributeUpdates(Map.of("leaseOwner", AttributeValueUpdate.builder()
+                        .action(AttributeAction.DELETE).build()))
+                .build()).join();
+        assertFalse(get(client, "shard-0").containsKey("leaseOwner"));
+        assertEquals("42", get(client, "shard-0").get("leaseCounter").n());
+    }
+
+    @Test
+    void deleteChecksExpectedAttributes() {
+        LocalDynamoDbClient client = client();
+        client.putItem(PutItemRequest.builder().tableName(TABLE)
+                .item(Map.of("leaseKey", s("shard-0"), "leaseCounter", n(3))).build()).join();
+        DeleteItemRequest.Builder delete = DeleteItemRequest.builder().tableName(TABLE).key(key("shard-0"));
+        assertConditionFails(client.deleteItem(delete.copy()
+                .expected(Map.of("leaseCounter", ExpectedAttributeValue.builder().value(n(2)).build())).build()));
+        client.deleteItem(delete.copy()
+                .expected(Map.of("leaseCounter", ExpectedAttributeValue.builder().value(n(3)).build())).build()).join();
+        assertTrue(get(client, "shard-0").isEmpty());
+    }
+
+    @Test
+    void scanPagesInKeyOrder() {
+        LocalDynamoDbClient client = client();
+        for (int i = 4; i >= 0; i--) {
+            client.putItem(PutItemRequest.builder().tableName(TABLE).item(key("shard-" + i)).build()).join();
+        }
+        List<String> keys = new ArrayList<>();
+        List<Integer> pages = new ArrayList<>();
+        Map<String, AttributeValue> startKey = null;
+        do {
+            ScanResponse response = client.scan(ScanRequest.builder().tableName(TABLE).limit(2)
+                    .exclusiveStartKey(startKey).build()).join();
+            pages.add(response.count());
+            response.items().forEach(item -> keys.add(item.get("leaseKey").s()));
+            startKey = response.hasLastEvaluatedKey() ? response.lastEvaluatedKey() : null;
+        } while (startKey != null);
+        assertEquals(List.of("shard-0", "shard-1", "shard-2", "shard-3", "shard-4"), keys);
+        assertEquals(List.of(2, 2, 1), pages);
+
+        // A page ending on the last item is the last page
+        ScanResponse last = client.scan(ScanRequest.builder().tableName(TABLE).limit(2)
+                .exclusiveStartKey(key("shard-2")).build()).join();
+        assertEquals(2, last.count());
+        assertFalse(last.hasLastEvaluatedKey());
+        assertEquals(5, client.scan(ScanRequest.builder().tableName(TABLE).build()).join().count());
+    }
+}
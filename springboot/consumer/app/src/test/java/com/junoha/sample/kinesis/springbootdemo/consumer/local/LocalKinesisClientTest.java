@@ -0,0 +1,118 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.local;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.GetShardIteratorRequest;
+import software.amazon.awssdk.services.kinesis.model.ListShardsRequest;
+import software.amazon.awssdk.services.kinesis.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.kinesis.model.Record;
+import software.amazon.awssdk.services.kinesis.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+import software.amazon.awssdk.services.kinesis.model.ShardIteratorType;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalKinesisClientTest {
+
+    private static final String STREAM = "sandbox";
+    private static final String SHARD_ID = "shardId-000000000001";
+
+    private static LocalKinesisClient client() {
+        return new LocalKinesisClient(STREAM, 2, 100, new FaultInjector(0, 0, 0));
+    }
+
+    private static String iterator(LocalKinesisClient client, GetShardIteratorRequest.Builder request) {
+        return client.getShardIterator(request.streamName(STREAM).shardId(SHARD_ID).build()).join().shardIterator();
+    }
+
+    private static GetRecordsResponse getRecords(LocalKinesisClient client, String iterator, int limit) {
+        return client.getRecords(GetRecordsRequest.builder().shardIterator(iterator).limit(limit).build()).join();
+    }
+
+    /**
+     * The first record returned from the iterator.
+     */
+    private static Record first(LocalKinesisClient client, GetShardIteratorRequest.Builder request) {
+        List<Record> records = getRecords(client, iterator(client, request), 1).records();
+        assertEquals(1, records.size());
+        return records.get(0);
+    }
+
+    @Test
+    void listsShardsCoveringTheHashKeySpace() {
+        List<Shard> shards = client().listShards(ListShardsRequest.builder().streamName(STREAM).build()).join()
+                .shards();
+        assertEquals(2, shards.size());
+        assertEquals("0", shards.get(0).hashKeyRange().startingHashKey());
+        assertEquals(SHARD_ID, shards.get(1).shardId());
+        assertEquals("340282366920938463463374607431768211455", shards.get(1).hashKeyRange().endingHashKey());
+    }
+
+    @Test
+    void pagesThroughTheShardFromTrimHorizon() {
+        LocalKinesisClient client = client();
+        String iterator = iterator(client, GetShardIteratorRequest.builder()
+                .shardIteratorType(ShardIteratorType.TRIM_HORIZON));
+        int read = 0;
+        Instant lastArrival = Instant.MIN;
+        while (read < 100) {
+            GetRecordsResponse response = getRecords(client, iterator, 30);
+            for (Record record : response.records()) {
+                assertTrue(record.approximateArrivalTimestamp().isAfter(lastArrival));
+                lastArrival = record.approximateArrivalTimestamp();
+            }
+            read += response.records().size();
+            assertEquals(100 - read, response.millisBehindLatest());
+            iterator = response.nextShardIterator();
+        }
+        assertEquals(100, read);
+        assertEquals(4, client.getGetRecordsCalls());
+        assertEquals(100, client.getServedRecords());
+        // At the tip the shard returns no records
+        assertTrue(getRecords(client, iterator, 30).records().isEmpty());
+    }
+
+    @Test
+    void iteratorsStartAtTheirPositions() {
+        LocalKinesisClient client = client();
+        Record tenth = getRecords(client, iterator(client, GetShardIteratorRequest.builder()
+                .shardIteratorType(ShardIteratorType.TRIM_HORIZON)), 11).records().get(10);
+
+        assertEquals(tenth.sequenceNumber(), first(client, GetShardIteratorRequest.builder()
+                .shardIteratorType(ShardIteratorType.AT_SEQUENCE_NUMBER)
+                .startingSequenceNumber(tenth.sequenceNumber())).sequenceNumber());
+        Record after = first(client, GetShardIteratorRequest.builder()
+                .shardIteratorType(ShardIteratorType.AFTER_SEQUENCE_NUMBER)
+                .startingSequenceNumber(tenth.sequenceNumber()));
+        assertEquals(tenth.approximateArrivalTimestamp().plusMillis(1), after.approximateArrivalTimestamp());
+        assertEquals(tenth.sequenceNumber(), first(client, GetShardIteratorRequest.builder()
+                .shardIteratorType(ShardIteratorType.AT_TIMESTAMP)
+                .timestamp(tenth.approximateArrivalTimestamp())).sequenceNumber());
+
+        GetRecordsResponse latest = getRecords(client, iterator(client, GetShardIteratorRequest.builder()
+                .shardIteratorType(ShardIteratorType.LATEST)), 10);
+        assertTrue(latest.records().isEmpty());
+        assertEquals(0, latest.millisBehindLatest());
+    }
+
+    @Test
+    void rejectsUnknownStreamsAndThrottlesGetRecords() {
+        CompletionException unknown = assertThrows(CompletionException.class, () -> client().getShardIterator(
+                GetShardIteratorRequest.builder().streamName("other").shardId(SHARD_ID)
+                        .shardIteratorType(ShardIteratorType.TRIM_HORIZON).build()).join());
+        assertTrue(unknown.getCause() instanceof ResourceNotFoundException, unknown.getCause().toString());
+
+        LocalKinesisClient throttled = new LocalKinesisClient(STREAM, 1, 10, new FaultInjector(0, 0, 1));
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> getRecords(throttled, "0/0", 10));
+        assertTrue(e.getCause() instanceof ProvisionedThroughputExceededException, e.getCause().toString());
+        assertEquals(1, throttled.getThrottledCalls());
+    }
+}
@@ -0,0 +1,57 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckpointPolicyTest {
+
+    @Test
+    void checkpointsOnRecordsBytesOrInterval() {
+        CheckpointPolicy policy = new CheckpointPolicy(3, 1000, 60000, 1000, false);
+        policy.start(0);
+        // The first batch is checkpointed right away
+        policy.onRecord(10);
+        assertTrue(policy.shouldCheckpoint(0));
+        policy.onCheckpoint(0, 5);
+
+        policy.onRecord(10);
+        policy.onRecord(10);
+        policy.onRecord(10);
+        // Record threshold reached, but not before the minimum interval
+        assertFalse(policy.shouldCheckpoint(500));
+        assertTrue(policy.shouldCheckpoint(1000));
+        policy.onCheckpoint(1000, 5);
+
+        policy.onRecord(2000);
+        assertTrue(policy.shouldCheckpoint(2000));
+        policy.onCheckpoint(2000, 5);
+
+        assertFalse(policy.shouldCheckpoint(61999));
+        assertTrue(policy.shouldCheckpoint(62000));
+        // Not adaptive, the interval stays
+        assertEquals(60000, policy.intervalMillis());
+    }
+
+    @Test
+    void adaptiveIntervalShrinksWhenFastAndBacksOffWhenThrottled() {
+        CheckpointPolicy policy = new CheckpointPolicy(1, 0, 8000, 1000, true);
+        policy.start(0);
+        policy.onCheckpoint(8000, 10);
+        assertEquals(6000, policy.intervalMillis());
+        policy.onCheckpoint(14000, CheckpointPolicy.FAST_CHECKPOINT_MILLIS);
+        assertEquals(6000, policy.intervalMillis());
+
+        policy.onThrottled();
+        assertEquals(8000, policy.intervalMillis());
+        // Record threshold suspended until a checkpoint succeeds without throttling
+        policy.onRecord(1);
+        assertFalse(policy.shouldCheckpoint(16000));
+        policy.onCheckpoint(22000, 10);
+        assertEquals(8000, policy.intervalMillis());
+        policy.onRecord(1);
+        assertTrue(policy.shouldCheckpoint(23000));
+    }
+}
@@ -0,0 +1,49 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.kinesis.retrieval.kpl.ExtendedSequenceNumber;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckpointTrackerTest {
+
+    @Test
+    void checkpointsUpToTheCompletedPrefix() throws InterruptedException {
+        CheckpointTracker tracker = new CheckpointTracker();
+        CheckpointTracker.Pending first = tracker.submit("1", 0);
+        CheckpointTracker.Pending second = tracker.submit("1", 1);
+        CheckpointTracker.Pending third = tracker.submit("2", 0);
+
+        tracker.complete(third);
+        assertNull(tracker.checkpointCandidate());
+
+        tracker.complete(first);
+        assertEquals(new ExtendedSequenceNumber("1", 0L), tracker.checkpointCandidate());
+        tracker.checkpointed(tracker.checkpointCandidate());
+        assertNull(tracker.checkpointCandidate());
+
+        tracker.complete(second);
+        assertEquals(new ExtendedSequenceNumber("2", 0L), tracker.checkpointCandidate());
+        assertTrue(tracker.awaitCompletion(0));
+    }
+
+    @Test
+    void runsInOrderWorkInShardOrder() {
+        CheckpointTracker tracker = new CheckpointTracker();
+        CheckpointTracker.Pending first = tracker.submit("1", 0);
+        CheckpointTracker.Pending second = tracker.submit("2", 0);
+        CheckpointTracker.Pending third = tracker.submit("3", 0);
+        List<String> applied = new ArrayList<>();
+
+        tracker.complete(third, () -> applied.add("3"));
+        tracker.complete(second);
+        assertEquals(List.of(), applied);
+        tracker.complete(first, () -> applied.add("1"));
+        assertEquals(List.of("1", "3"), applied);
+    }
+}
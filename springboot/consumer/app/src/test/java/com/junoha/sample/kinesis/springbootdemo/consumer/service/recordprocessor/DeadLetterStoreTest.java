@@ -0,0 +1,51 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.kinesis.retrieval.KinesisClientRecord;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeadLetterStoreTest {
+
+    @Test
+    void drainsStoredRecordsForReplay(@TempDir Path directory) {
+        DeadLetterStore store = new DeadLetterStore(directory);
+        KinesisClientRecord record = KinesisClientRecord.builder()
+                .sequenceNumber("49590338271490256608559692538361571095921575989136588898")
+                .subSequenceNumber(3)
+                .partitionKey("key")
+                .approximateArrivalTimestamp(Instant.ofEpochMilli(1610000000123L))
+                .data(ByteBuffer.wrap("{\"id\":1}".getBytes(StandardCharsets.UTF_8)))
+                .build();
+        store.store("shardId-000000000001", record, 10, new IllegalStateException("Downstream down"));
+        assertEquals(1, store.storedRecords());
+        assertTrue(store.summary().contains("IllegalStateException=1"));
+
+        List<DeadLetterStore.Entry> entries = store.drain();
+        assertFalse(Files.exists(store.file()));
+        assertEquals(1, entries.size());
+        DeadLetterStore.Entry entry = entries.get(0);
+        assertEquals("shardId-000000000001", entry.shardId());
+        assertEquals(10, entry.attempts());
+        assertEquals(record.sequenceNumber(), entry.record().sequenceNumber());
+        assertEquals(3, entry.record().subSequenceNumber());
+        assertEquals("key", entry.record().partitionKey());
+        assertEquals(record.approximateArrivalTimestamp(), entry.record().approximateArrivalTimestamp());
+        assertEquals("{\"id\":1}", StandardCharsets.UTF_8.decode(entry.record().data()).toString());
+
+        // An interrupted replay is picked up again
+        assertEquals(1, store.drain().size());
+        store.replayed();
+        assertTrue(store.drain().isEmpty());
+    }
+}
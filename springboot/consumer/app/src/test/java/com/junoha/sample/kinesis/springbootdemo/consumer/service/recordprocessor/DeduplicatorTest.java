@@ -0,0 +1,85 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeduplicatorTest {
+
+    @Test
+    void skipsProcessedRecordsOnly() {
+        Deduplicator deduplicator = Deduplicator.create("lru", "sequence", 1000, 0.001, 60000);
+        long key = Deduplicator.sequenceKey("shardId-000000000000",
+                "49590338271490256608559692538361571095921575989136588898", 0);
+        assertNotEquals(key, Deduplicator.sequenceKey("shardId-000000000001",
+                "49590338271490256608559692538361571095921575989136588898", 0));
+        assertNotEquals(key, Deduplicator.sequenceKey("shardId-000000000000",
+                "49590338271490256608559692538361571095921575989136588898", 1));
+
+        assertFalse(deduplicator.isDuplicate(key));
+        // Failed: looked up again when it is retried
+        assertFalse(deduplicator.isDuplicate(key));
+        deduplicator.processed(key);
+        assertTrue(deduplicator.isDuplicate(key));
+        assertTrue(deduplicator.summary().contains("1 duplicates skipped of 3 records"));
+
+        assertNull(Deduplicator.create("none", "id", 1000, 0.001, 60000));
+    }
+
+    @Test
+    void lruEvictsLeastRecentlyUsedKeys() {
+        LruDedupCache cache = new LruDedupCache(16 * 100);
+        for (long id = 0; id < 10000; id++) {
+            cache.add(Deduplicator.idKey(id));
+        }
+        int kept = 0;
+        for (long id = 0; id < 10000; id++) {
+            if (cache.mightContain(Deduplicator.idKey(id))) {
+                kept++;
+            }
+        }
+        assertTrue(kept <= 1600, "kept " + kept);
+        assertTrue(cache.mightContain(Deduplicator.idKey(9999)));
+        assertFalse(cache.mightContain(Deduplicator.idKey(0)));
+        assertEquals(kept * LruDedupCache.BYTES_PER_ENTRY, cache.memoryBytes());
+    }
+
+    @Test
+    void bloomFilterKeepsItsFalsePositiveRate() {
+        AtomicLong nowMillis = new AtomicLong(1000);
+        BloomDedupCache cache = new BloomDedupCache(10000, 0.01, 200, nowMillis::get);
+        for (long id = 0; id < 10000; id++) {
+            cache.add(Deduplicator.idKey(id));
+        }
+        int falsePositives = 0;
+        for (long id = 10000; id < 110000; id++) {
+            if (cache.mightContain(Deduplicator.idKey(id))) {
+                falsePositives++;
+            }
+        }
+        // 1% expected
+        assertTrue(falsePositives < 2000, falsePositives + " false positives");
+        for (long id = 0; id < 10000; id++) {
+            assertTrue(cache.mightContain(Deduplicator.idKey(id)));
+        }
+
+        // Forgotten two windows later
+        nowMillis.addAndGet(199);
+        assertTrue(cache.mightContain(Deduplicator.idKey(42)));
+        nowMillis.addAndGet(1);
+        assertTrue(cache.mightContain(Deduplicator.idKey(42)));
+        nowMillis.addAndGet(200);
+        assertFalse(cache.mightContain(Deduplicator.idKey(42)));
+
+        // Not rotated for more than a window: both filters are out of date
+        cache.add(Deduplicator.idKey(42));
+        nowMillis.addAndGet(400);
+        assertFalse(cache.mightContain(Deduplicator.idKey(42)));
+    }
+}
@@ -0,0 +1,179 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.entities.Entity;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.junoha.sample.kinesis.springbootdemo.consumer.window.WindowAggregator;
+import com.junoha.sample.kinesis.springbootdemo.consumer.window.WindowResult;
+import com.junoha.sample.kinesis.springbootdemo.consumer.window.WindowStateStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.kinesis.exceptions.ShutdownException;
+import software.amazon.kinesis.lifecycle.events.InitializationInput;
+import software.amazon.kinesis.lifecycle.events.LeaseLostInput;
+import software.amazon.kinesis.lifecycle.events.ProcessRecordsInput;
+import software.amazon.kinesis.processor.RecordProcessorCheckpointer;
+import software.amazon.kinesis.retrieval.KinesisClientRecord;
+import software.amazon.kinesis.retrieval.kpl.ExtendedSequenceNumber;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KclRecordProcessorTest {
+
+    private static final String SHARD_ID = "shardId-000000000000";
+
+    private static KinesisClientRecord record(int sequence) {
+        String json = "{\"id\":" + sequence + ",\"score\":10,\"pets\":[]}";
+        return KinesisClientRecord.builder()
+                .sequenceNumber(Integer.toString(sequence))
+                .partitionKey("key-" + sequence)
+                .approximateArrivalTimestamp(Instant.ofEpochMilli(1000 + sequence))
+                .data(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)))
+                .build();
+    }
+
+    private static List<KinesisClientRecord> records(int from, int to) {
+        List<KinesisClientRecord> records = new ArrayList<>();
+        for (int sequence = from; sequence < to; sequence++) {
+            records.add(record(sequence));
+        }
+        return records;
+    }
+
+    /**
+     * Checkpointer remembering the last position it was asked for, failing like a lost lease when not allowed.
+     */
+    private static RecordProcessorCheckpointer checkpointer(AtomicReference<String> last, AtomicBoolean allowed) {
+        return (RecordProcessorCheckpointer) Proxy.newProxyInstance(KclRecordProcessorTest.class.getClassLoader(),
+                new Class<?>[]{RecordProcessorCheckpointer.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("checkpoint") || args == null || args.length != 2) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    last.set((String) args[0]);
+                    if (!allowed.get()) {
+                        throw new ShutdownException("Lease lost");
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * Feeds empty batches, which checkpoint what has completed, until the condition holds.
+     */
+    private static void processUntil(KclRecordProcessor processor, RecordProcessorCheckpointer checkpointer,
+                                     BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(10);
+            processor.processRecords(ProcessRecordsInput.builder().records(Collections.emptyList())
+                    .checkpointer(checkpointer).millisBehindLatest(0L).build());
+        }
+    }
+
+    private static void process(KclRecordProcessor processor, RecordProcessorCheckpointer checkpointer,
+                                List<KinesisClientRecord> records) {
+        processor.processRecords(ProcessRecordsInput.builder().records(records)
+                .checkpointer(checkpointer).millisBehindLatest(0L).build());
+    }
+
+    @Test
+    void redeliveredRecordsGoToTheRestoredWindowsAfterTheLeaseComesBack(@TempDir Path directory) throws Exception {
+        AWSXRay.getGlobalRecorder().beginSegment("KclRecordProcessorTest");
+        Entity traceEntity = AWSXRay.getGlobalRecorder().getTraceEntity();
+        WindowStateStore windowStates = new WindowStateStore(directory.resolve("windows"));
+        Deduplicator deduplicator = Deduplicator.create("lru", "sequence", 1000, 0.001, 60000);
+        KeyOrderedExecutor workers = new KeyOrderedExecutor(2, 100);
+        RetryScheduler retries = new RetryScheduler(3, 10, 10);
+        KclRecordProcessorFactory factory = new KclRecordProcessorFactory(traceEntity, "polling", workers,
+                new SimulatedDownstream(0, 0.0), new CheckpointPolicy(0, 0, 1, 0, false), retries,
+                new DeadLetterStore(directory.resolve("dead-letters")), Set.of(), null, deduplicator,
+                new WindowAggregator(60000, 60000, 0), windowStates, null);
+        AtomicReference<String> checkpointed = new AtomicReference<>();
+        AtomicBoolean leased = new AtomicBoolean(true);
+        RecordProcessorCheckpointer checkpointer = checkpointer(checkpointed, leased);
+        try {
+            // The first owner checkpoints records 0 to 2, processes 3 to 5, then loses the lease
+            KclRecordProcessor first = factory.shardRecordProcessor();
+            first.initialize(InitializationInput.builder().shardId(SHARD_ID)
+                    .extendedSequenceNumber(ExtendedSequenceNumber.TRIM_HORIZON).build());
+            process(first, checkpointer, records(0, 3));
+            processUntil(first, checkpointer, () -> "2".equals(checkpointed.get()));
+            leased.set(false);
+            process(first, checkpointer, records(3, 6));
+            processUntil(first, checkpointer, () -> "5".equals(checkpointed.get()));
+            first.leaseLost(LeaseLostInput.builder().build());
+
+            // The same process gets the lease back: KCL delivers again everything after the checkpoint
+            leased.set(true);
+            checkpointed.set(null);
+            KclRecordProcessor second = factory.shardRecordProcessor();
+            second.initialize(InitializationInput.builder().shardId(SHARD_ID)
+                    .extendedSequenceNumber(new ExtendedSequenceNumber("2")).build());
+            process(second, checkpointer, records(3, 6));
+            processUntil(second, checkpointer, () -> "5".equals(checkpointed.get()));
+        } finally {
+            factory.shutdown();
+            AWSXRay.getGlobalRecorder().endSegment();
+        }
+
+        // Skipped by the dedup, but still counted by the windows resumed from the checkpoint
+        assertTrue(deduplicator.summary().contains("3 duplicates skipped of 9 records"), deduplicator.summary());
+        JsonNode state = windowStates.load(SHARD_ID, new ExtendedSequenceNumber("5"));
+        assertNotNull(state);
+        WindowAggregator windows = new WindowAggregator(60000, 60000, 0);
+        windows.restore(state);
+        windows.closeAll();
+        List<WindowResult> results = windows.takeResults();
+        assertEquals(1, results.size());
+        assertEquals(6, results.get(0).records());
+        assertEquals(60, results.get(0).scoreSum());
+    }
+
+    @Test
+    void recordsAreDroppedAfterTheLeaseIsLost(@TempDir Path directory) throws Exception {
+        AWSXRay.getGlobalRecorder().beginSegment("KclRecordProcessorTest");
+        Entity traceEntity = AWSXRay.getGlobalRecorder().getTraceEntity();
+        DeadLetterStore deadLetters = new DeadLetterStore(directory.resolve("dead-letters"));
+        RetryScheduler retries = new RetryScheduler(3, 200, 200);
+        // Every call fails, so every record waits for a retry when the lease is lost
+        KclRecordProcessorFactory factory = new KclRecordProcessorFactory(traceEntity, "polling",
+                new KeyOrderedExecutor(2, 100), new SimulatedDownstream(0, 1.0),
+                new CheckpointPolicy(0, 0, 1, 0, false), retries, deadLetters, Set.of(), null, null, null,
+                new WindowStateStore(directory.resolve("windows")), null);
+        AtomicReference<String> checkpointed = new AtomicReference<>();
+        RecordProcessorCheckpointer checkpointer = checkpointer(checkpointed, new AtomicBoolean(true));
+        try {
+            KclRecordProcessor processor = factory.shardRecordProcessor();
+            processor.initialize(InitializationInput.builder().shardId(SHARD_ID)
+                    .extendedSequenceNumber(ExtendedSequenceNumber.TRIM_HORIZON).build());
+            process(processor, checkpointer, records(0, 3));
+            processor.leaseLost(LeaseLostInput.builder().build());
+
+            // Without the lease the retries would run out after 400 ms and dead-letter the records
+            Thread.sleep(1000);
+            assertEquals(0, retries.scheduled());
+        } finally {
+            factory.shutdown();
+            AWSXRay.getGlobalRecorder().endSegment();
+        }
+        assertEquals(0, deadLetters.storedRecords());
+        assertNull(checkpointed.get());
+    }
+}
@@ -0,0 +1,43 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyOrderedExecutorTest {
+
+    @Test
+    void keepsOrderPerKey() throws InterruptedException {
+        KeyOrderedExecutor executor = new KeyOrderedExecutor(4, 10);
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            int value = i;
+            executor.submit(i % 2 == 0 ? "even" : "odd", () -> {
+                seen.add(value);
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        int lastEven = -2;
+        int lastOdd = -1;
+        for (int value : seen) {
+            if (value % 2 == 0) {
+                assertEquals(lastEven + 2, value);
+                lastEven = value;
+            } else {
+                assertEquals(lastOdd + 2, value);
+                lastOdd = value;
+            }
+        }
+    }
+}
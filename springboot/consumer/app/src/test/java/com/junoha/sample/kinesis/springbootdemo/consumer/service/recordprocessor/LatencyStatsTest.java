@@ -0,0 +1,44 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyStatsTest {
+
+    @Test
+    void reportsTheProcessLegRecordedByTheWorkers() throws InterruptedException {
+        LatencyStats stats = new LatencyStats("shardId-000000000000", "polling");
+        // Produced at 0, arrived 10 ms later, received 5 ms after arrival
+        for (int i = 0; i < 100; i++) {
+            stats.record(0, 10_000, 15_000);
+        }
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            workers.add(new Thread(() -> {
+                // Completed 200 ms after arrival, reported as 200.1 ms with 3 significant digits
+                for (int i = 0; i < 25; i++) {
+                    stats.recordProcessed(10_000, 210_000);
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        String summary = stats.intervalSummary();
+        assertTrue(summary.contains("produce->arrival ms p50 10.0"), summary);
+        assertTrue(summary.contains("arrival->receive ms p50 5.0"), summary);
+        assertTrue(summary.contains("arrival->process ms p50 200.1 p99 200.1 p99.9 200.1 max 200.1 (100 records)"),
+                summary);
+
+        stats.recordProcessed(10_000, 5_000);
+        String total = stats.totalSummary();
+        assertTrue(total.contains("(101 records); 1 negative from clock skew"), total);
+        assertTrue(stats.intervalSummary().contains("arrival->process n/a (0 records)"));
+    }
+}
@@ -0,0 +1,27 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetrySchedulerTest {
+
+    @Test
+    void backsOffExponentiallyUpToTheMaximum() throws InterruptedException {
+        RetryScheduler retries = new RetryScheduler(10, 100, 1000);
+        assertEquals(100, retries.backoffMillis(1));
+        assertEquals(200, retries.backoffMillis(2));
+        assertEquals(800, retries.backoffMillis(4));
+        assertEquals(1000, retries.backoffMillis(5));
+        assertEquals(1000, retries.backoffMillis(100));
+
+        CountDownLatch ran = new CountDownLatch(1);
+        retries.schedule(1, ran::countDown);
+        assertTrue(ran.await(1, TimeUnit.SECONDS));
+        retries.shutdown();
+    }
+}
@@ -0,0 +1,38 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.service.recordprocessor;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SequenceVerifierTest {
+
+    @Test
+    void reportsGapsAndDuplicates() {
+        SequenceVerifier verifier = new SequenceVerifier();
+        // Two shards interleaved, 3 and 7 lost, 5 delivered twice
+        for (long sequence : new long[]{0, 2, 1, 4, 6, 5, 8, 5, 9}) {
+            verifier.record(1, sequence);
+        }
+
+        assertEquals(1, verifier.duplicates(1));
+        assertEquals(2, verifier.missing(1));
+        assertTrue(verifier.summary().contains("gaps: 3-3, 7-7"), verifier.summary());
+        assertEquals(0, verifier.missing(2));
+    }
+
+    @Test
+    void mergesLowestRangesWhenFull() {
+        SequenceVerifier verifier = new SequenceVerifier(2);
+        // Ranges 0, 2 and 4: 0 and 2 are merged, so 1 is given up
+        verifier.record(1, 0);
+        verifier.record(1, 2);
+        verifier.record(1, 4);
+
+        assertEquals(2, verifier.missing(1));
+        assertTrue(verifier.summary().contains("(1 given up), 2 ranges"), verifier.summary());
+        assertFalse(verifier.record(1, 1));
+        assertTrue(verifier.record(1, 3));
+    }
+}
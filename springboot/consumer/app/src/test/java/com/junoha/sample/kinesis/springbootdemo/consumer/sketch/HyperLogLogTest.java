@@ -0,0 +1,32 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HyperLogLogTest {
+
+    @Test
+    void estimatesDistinctValuesOfMergedSketches() {
+        HyperLogLog first = new HyperLogLog(14);
+        HyperLogLog second = new HyperLogLog(14);
+        // 1,000,000 distinct values, 200,000 of them added to both
+        LongStream.range(0, 600_000).parallel().forEach(first::add);
+        LongStream.range(400_000, 1_000_000).forEach(second::add);
+        LongStream.range(0, 1000).forEach(second::add);
+
+        assertEquals(600_000, first.estimate(), 600_000 * 3 * first.standardError());
+        HyperLogLog merged = first.copy();
+        merged.merge(second);
+        assertEquals(1_000_000, merged.estimate(), 1_000_000 * 3 * merged.standardError());
+        assertEquals(600_000, first.estimate(), 600_000 * 3 * first.standardError());
+
+        HyperLogLog small = new HyperLogLog(14);
+        LongStream.range(0, 100).forEach(small::add);
+        assertEquals(100, small.estimate(), 2);
+        assertThrows(IllegalArgumentException.class, () -> merged.merge(new HyperLogLog(12)));
+    }
+}
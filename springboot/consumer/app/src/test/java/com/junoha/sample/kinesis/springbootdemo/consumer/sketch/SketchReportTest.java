@@ -0,0 +1,34 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SketchReportTest {
+
+    @Test
+    void keepsOneSketchPerShardAsLeasesMove() {
+        SketchReport report = new SketchReport(12, 10, 1);
+        long id = 0;
+        // The lease of the shard moves 100 times, every owner processing 100 records of key "hot"
+        for (int owner = 0; owner < 100; owner++) {
+            ShardSketches sketches = report.forShard("shardId-000000000000");
+            for (int i = 0; i < 100; i++) {
+                sketches.addId(id++);
+                sketches.addPartitionKey("hot");
+            }
+            report.publish(sketches);
+            report.retire(sketches);
+        }
+        ShardSketches current = report.forShard("shardId-000000000000");
+        current.addId(id);
+        current.addPartitionKey("hot");
+        report.publish(current);
+
+        String summary = report.summary();
+        assertTrue(summary.startsWith("Sketches of 1 processors and 1 shards of earlier owners"), summary);
+        assertTrue(summary.contains("of 10001 records [hot=10001]"), summary);
+        long distinct = Long.parseLong(summary.replaceAll(".*: (\\d+) distinct ids.*", "$1"));
+        assertTrue(Math.abs(distinct - 10001) < 10001 * 0.05, summary);
+    }
+}
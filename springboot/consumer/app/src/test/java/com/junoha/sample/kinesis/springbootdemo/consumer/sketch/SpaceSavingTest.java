@@ -0,0 +1,35 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpaceSavingTest {
+
+    @Test
+    void findsHotKeysAmongManyAndAcrossShards() {
+        SpaceSaving first = new SpaceSaving(100);
+        SpaceSaving second = new SpaceSaving(100);
+        for (int i = 0; i < 100_000; i++) {
+            // "hot" is 10% of the first shard, "warm" 5% of both, the rest distinct keys
+            first.add(i % 10 == 0 ? "hot" : i % 20 == 1 ? "warm" : "cold-" + i);
+            second.add(i % 20 == 1 ? "warm" : "cold-" + i);
+        }
+
+        List<SpaceSaving.Counter> top = first.top(2);
+        assertEquals("hot", top.get(0).key());
+        assertTrue(top.get(0).count() - top.get(0).error() <= 10_000 && top.get(0).count() >= 10_000);
+        assertEquals("warm", top.get(1).key());
+
+        SpaceSaving merged = first.merge(second);
+        assertEquals(200_000, merged.total());
+        top = merged.top(2);
+        assertEquals("hot", top.get(0).key());
+        assertEquals("warm", top.get(1).key());
+        assertTrue(top.get(1).count() - top.get(1).error() <= 10_000 && top.get(1).count() >= 10_000);
+        assertEquals(100, merged.capacity());
+    }
+}
@@ -0,0 +1,109 @@
+package com.junoha.sample.kinesis.springbootdemo.consumer.window;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.junoha.sample.kinesis.springbootdemo.consumer.model.Person;
+import com.junoha.sample.kinesis.springbootdemo.consumer.model.Pet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.kinesis.retrieval.kpl.ExtendedSequenceNumber;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WindowAggregatorTest {
+
+    private static Person person(long score, String... petTypes) {
+        Person person = new Person();
+        person.setScore(score);
+        List<Pet> pets = new ArrayList<>();
+        for (String type : petTypes) {
+            Pet pet = new Pet();
+            pet.setType(type);
+            pets.add(pet);
+        }
+        person.setPets(pets);
+        return person;
+    }
+
+    @Test
+    void emitsTumblingWindowsBehindTheWatermark() {
+        WindowAggregator windows = new WindowAggregator(1000, 1000, 500);
+        windows.add(10_100, person(10, "dog"));
+        windows.add(10_900, person(30, "dog", "cat"));
+        // Out of order but within the allowed lateness
+        windows.add(11_400, 5, 1);
+        windows.add(10_950, person(20));
+        assertEquals(List.of(), windows.takeResults());
+
+        // Watermark 11,500: [10,000, 11,000) closes
+        windows.add(12_000, 7, 0);
+        List<WindowResult> results = windows.takeResults();
+        assertEquals(1, results.size());
+        WindowResult result = results.get(0);
+        assertEquals(10_000, result.startMillis());
+        assertEquals(11_000, result.endMillis());
+        assertEquals(3, result.records());
+        assertEquals(60, result.scoreSum());
+        assertEquals(10, result.scoreMin());
+        assertEquals(30, result.scoreMax());
+        assertEquals(3, result.pets());
+        assertEquals(Map.of("dog", 2L, "cat", 1L), result.petsPerType());
+
+        windows.add(10_999, 1, 0);
+        assertEquals(1, windows.lateRecords());
+
+        windows.closeAll();
+        results = windows.takeResults();
+        assertEquals(2, results.size());
+        assertEquals(1, results.get(0).records());
+        assertEquals(5, results.get(0).scoreSum());
+        assertEquals(12_000, results.get(1).startMillis());
+    }
+
+    @Test
+    void countsARecordInEverySlidingWindow() {
+        WindowAggregator windows = new WindowAggregator(3000, 1000, 0);
+        windows.add(10_500, 1, 0);
+        windows.add(11_500, 2, 0);
+        windows.add(100_000, 0, 0);
+        List<WindowResult> results = windows.takeResults();
+        // Windows starting at 8, 9, 10 and 11 seconds
+        assertEquals(4, results.size());
+        assertEquals(8_000, results.get(0).startMillis());
+        assertEquals(1, results.get(0).scoreSum());
+        assertEquals(3, results.get(2).scoreSum());
+        assertEquals(2, results.get(2).records());
+        assertEquals(2, results.get(3).scoreSum());
+    }
+
+    @Test
+    void resumesFromASnapshotAtTheCheckpoint(@TempDir Path directory) {
+        WindowAggregator windows = new WindowAggregator(1000, 1000, 0);
+        windows.add(10_100, person(10, "dog"));
+        windows.add(10_200, person(20, "cat"));
+
+        WindowStateStore store = new WindowStateStore(directory);
+        ExtendedSequenceNumber position = new ExtendedSequenceNumber("42", 0L);
+        store.save("shardId-000000000000", position, windows.snapshot());
+        assertNull(store.load("shardId-000000000000", new ExtendedSequenceNumber("41", 0L)));
+        store.committed("shardId-000000000000");
+        JsonNode state = store.load("shardId-000000000000", position);
+
+        WindowAggregator resumed = windows.forShard();
+        resumed.restore(state);
+        resumed.add(11_000, person(30, "dog"));
+        List<WindowResult> results = resumed.takeResults();
+        assertEquals(1, results.size());
+        assertEquals(30, results.get(0).scoreSum());
+        assertEquals(Map.of("dog", 1L, "cat", 1L), results.get(0).petsPerType());
+
+        assertThrows(IllegalArgumentException.class, () -> new WindowAggregator(2000, 1000, 0).restore(state));
+        assertThrows(IllegalArgumentException.class, () -> new WindowAggregator(1000, 300, 0));
+    }
+}
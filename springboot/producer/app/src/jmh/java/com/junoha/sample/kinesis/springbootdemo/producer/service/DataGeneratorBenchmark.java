@@ -0,0 +1,83 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service;
+
+import com.amazonaws.services.kinesis.producer.UserRecord;
+import com.junoha.sample.kinesis.springbootdemo.producer.model.Person;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.codec.PayloadFormat;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.codec.PersonCodec;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.codec.RunSequence;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.partitionkey.PartitionKeyStrategy;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of each step of generating a record, per record. Run with `./gradlew jmh`; the gc profiler adds the bytes
+ * allocated per record (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DataGeneratorBenchmark {
+
+    private static final String STREAM_NAME = "sandbox";
+
+    private PartitionKeyStrategy partitionKeyStrategy;
+    private PersonCodec codec;
+    private RunSequence sequence;
+    private PayloadCorpus corpus;
+    private Person person;
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        partitionKeyStrategy = PartitionKeyStrategy.of("uuid", 0);
+        codec = new PersonCodec(PayloadFormat.JSON);
+        sequence = new RunSequence(1);
+        corpus = PayloadCorpus.generate(1000);
+        person = DataGenerator.getPerson();
+        payload = DataGenerator.serialize(person);
+    }
+
+    @Benchmark
+    public Person getPerson() {
+        return DataGenerator.getPerson();
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return DataGenerator.serialize(person);
+    }
+
+    @Benchmark
+    public ByteBuffer wrap() {
+        return ByteBuffer.wrap(payload);
+    }
+
+    @Benchmark
+    public UserRecord newUserRecord() {
+        return new UserRecord()
+                .withStreamName(STREAM_NAME)
+                .withPartitionKey(partitionKeyStrategy.partitionKey(person.getId()))
+                .withData(ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * All of the above, as done for every record with DATA_SOURCE=faker.
+     */
+    @Benchmark
+    public UserRecord generateUserRecord() {
+        return DataGenerator.generateUserRecord(STREAM_NAME, partitionKeyStrategy, codec, sequence);
+    }
+
+    /**
+     * Same record with DATA_SOURCE=corpus.
+     */
+    @Benchmark
+    public UserRecord corpusUserRecord() {
+        return corpus.nextUserRecord(STREAM_NAME, partitionKeyStrategy, sequence);
+    }
+}
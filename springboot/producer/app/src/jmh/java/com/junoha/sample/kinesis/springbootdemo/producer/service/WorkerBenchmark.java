@@ -0,0 +1,111 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service;
+
+import com.amazonaws.services.kinesis.producer.UserRecord;
+import com.amazonaws.services.kinesis.producer.UserRecordResult;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.engine.SdkProducerEngine;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.engine.StubKinesisClient;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.metrics.PutMetrics;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.metrics.RuntimeStats;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records/sec, platform threads and RSS of the producer's worker modes, with the sdk engine against the in-memory
+ * {@link StubKinesisClient} answering in 20 ms:
+ * <ul>
+ * <li>callbacks: platform workers hand every put to a callback on the completing thread (the default)</li>
+ * <li>waiting: platform workers wait for each of their puts to complete</li>
+ * <li>virtual: virtual workers wait for each of their puts, callbacks run on their own virtual thread
+ * (VIRTUAL_THREADS=true, Java 21 or later)</li>
+ * </ul>
+ * Workers are paced by the same {@link RateEngine} as the application. Run with
+ * `./gradlew workerBenchmark -Pmode=virtual -Pworkers=4000 -PrecordsPerSecond=20000 -Pseconds=30`.
+ */
+public class WorkerBenchmark {
+
+    private static final int RECORD_BYTES = 300;
+    private static final String STREAM_NAME = "sandbox";
+
+    public static void main(String[] args) throws InterruptedException {
+        String mode = args[0];
+        int workers = Integer.parseInt(args[1]);
+        int recordsPerSecond = Integer.parseInt(args[2]);
+        int seconds = Integer.parseInt(args[3]);
+        boolean virtual = "virtual".equals(mode);
+        boolean waiting = virtual || "waiting".equals(mode);
+        if (!virtual && !waiting && !"callbacks".equals(mode)) {
+            throw new IllegalArgumentException("Mode should be callbacks, waiting or virtual: " + mode);
+        }
+        if (virtual && !VirtualThreads.isSupported()) {
+            throw new IllegalArgumentException("Virtual threads need Java 21 or later, running on Java "
+                    + System.getProperty("java.version"));
+        }
+
+        SdkProducerEngine engine = new SdkProducerEngine(new StubKinesisClient(STREAM_NAME, 0, new AtomicLong()),
+                STREAM_NAME, new SdkProducerEngine.Config(100, 24, true));
+        PutMetrics putMetrics = new PutMetrics();
+        AtomicLong completed = new AtomicLong();
+        Executor callbackExecutor = virtual
+                ? VirtualThreads.newThreadPerTaskExecutor("producer-callback-")
+                : MoreExecutors.directExecutor();
+        byte[] data = new byte[RECORD_BYTES];
+        Arrays.fill(data, (byte) 'x');
+
+        Runnable putOneRecord = () -> {
+            long enqueuedNanos = System.nanoTime();
+            ListenableFuture<UserRecordResult> f = engine.addUserRecord(new UserRecord(STREAM_NAME,
+                    Long.toString(ThreadLocalRandom.current().nextLong()), ByteBuffer.wrap(data)));
+            Futures.addCallback(f, new FutureCallback<UserRecordResult>() {
+                @Override
+                public void onSuccess(UserRecordResult result) {
+                    putMetrics.record(enqueuedNanos, result.getAttempts().size());
+                    completed.incrementAndGet();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                }
+            }, callbackExecutor);
+            if (waiting) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    // Counted by the callback
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        AtomicLong workerId = new AtomicLong();
+        ThreadFactory threadFactory = virtual
+                ? VirtualThreads.factory("producer-worker-")
+                : runnable -> new Thread(runnable, "producer-worker-" + workerId.getAndIncrement());
+
+        long start = System.nanoTime();
+        new RateEngine(LoadProfile.constant(recordsPerSecond, seconds), workers, threadFactory)
+                .run(putOneRecord, new AtomicLong(), seconds, () -> false);
+        engine.flushSync();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        engine.destroy();
+        if (callbackExecutor instanceof ExecutorService) {
+            ((ExecutorService) callbackExecutor).shutdown();
+        }
+
+        System.out.println(String.format("%s, %d workers, target %d records/sec on Java %s with %d cpus: "
+                        + "%.0f records/sec completed; %s; %s",
+                mode, workers, recordsPerSecond, System.getProperty("java.version"),
+                Runtime.getRuntime().availableProcessors(), completed.get() / elapsed, putMetrics.totalSummary(),
+                RuntimeStats.summary()));
+    }
+}
@@ -0,0 +1,54 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.codec;
+
+import com.junoha.sample.kinesis.springbootdemo.producer.model.Person;
+import com.junoha.sample.kinesis.springbootdemo.producer.model.Pet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode cost of one Person record in every payload format.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PersonCodecBenchmark {
+
+    @Param({"json", "smile", "cbor", "avro"})
+    private String format;
+
+    private PersonCodec codec;
+    private Person person;
+    private byte[] record;
+
+    @Setup
+    public void setup() {
+        Pet pet = new Pet();
+        pet.setType("turtle");
+        pet.setName("Donatello");
+        person = new Person();
+        person.setId(54207);
+        person.setDate("2019/09/28 15:36:46");
+        person.setScore(6315932014L);
+        person.setFirstName("Doyle");
+        person.setLastName("Goldner");
+        person.setAddress("Apt. 339 84193 Lockman Parkway, Jerdeshire, WI 17484");
+        person.setPets(List.of(pet, pet));
+        codec = PersonCodec.of(format);
+        record = codec.encode(person);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(person);
+    }
+
+    @Benchmark
+    public Person decode() {
+        return codec.decode(record);
+    }
+}
@@ -0,0 +1,82 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.engine;
+
+import com.amazonaws.services.kinesis.producer.UserRecord;
+import com.amazonaws.services.kinesis.producer.UserRecordResult;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.metrics.PutMetrics;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Throughput and put latency of the sdk engine against an in-memory Kinesis client, without the network: the
+ * {@link StubKinesisClient} has 4 shards, answers PutRecords after 20 ms and rejects the given share of the entries
+ * with ProvisionedThroughputExceededException. The engine runs with the default settings (100 ms buffered time,
+ * 24 concurrent requests, aggregation).
+ * <p>
+ * KPL cannot run against this stub, as its native child process calls the Kinesis endpoint itself; compare it by
+ * running the application against a stream, as described in the README.
+ * <p>
+ * Run with `./gradlew engineBenchmark -Precords=200000 -PrecordsPerSecond=20000 -PfailureRate=0.05`;
+ * recordsPerSecond 0 puts as fast as possible.
+ */
+public class EngineBenchmark {
+
+    private static final int RECORD_BYTES = 300;
+    private static final String STREAM_NAME = "sandbox";
+
+    public static void main(String[] args) throws InterruptedException {
+        int records = Integer.parseInt(args[0]);
+        int recordsPerSecond = Integer.parseInt(args[1]);
+        double failureRate = Double.parseDouble(args[2]);
+
+        AtomicLong requests = new AtomicLong();
+        SdkProducerEngine engine = new SdkProducerEngine(new StubKinesisClient(STREAM_NAME, failureRate, requests),
+                STREAM_NAME, new SdkProducerEngine.Config(100, 24, true));
+        PutMetrics putMetrics = new PutMetrics();
+        AtomicLong completed = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        byte[] data = new byte[RECORD_BYTES];
+        Arrays.fill(data, (byte) 'x');
+
+        long start = System.nanoTime();
+        for (int i = 0; i < records; i++) {
+            if (recordsPerSecond > 0 && i % 100 == 0) {
+                long due = start + (long) (i * 1e9 / recordsPerSecond);
+                while (System.nanoTime() < due) {
+                    LockSupport.parkNanos(100000);
+                }
+            }
+            long enqueuedNanos = System.nanoTime();
+            ListenableFuture<UserRecordResult> f = engine.addUserRecord(new UserRecord(STREAM_NAME,
+                    Long.toString(ThreadLocalRandom.current().nextLong()), ByteBuffer.wrap(data)));
+            Futures.addCallback(f, new FutureCallback<UserRecordResult>() {
+                @Override
+                public void onSuccess(UserRecordResult result) {
+                    putMetrics.record(enqueuedNanos, result.getAttempts().size());
+                    completed.incrementAndGet();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    failed.incrementAndGet();
+                }
+            }, MoreExecutors.directExecutor());
+        }
+        engine.flushSync();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        engine.destroy();
+
+        System.out.println(String.format("sdk engine, %d records of %d bytes, target %s, %.0f%% of puts failing: "
+                        + "%d completed, %d failed in %.1f sec, %.0f records/sec, %d PutRecords requests; %s",
+                records, RECORD_BYTES, recordsPerSecond > 0 ? recordsPerSecond + " records/sec" : "unthrottled",
+                100 * failureRate, completed.get(), failed.get(), seconds, completed.get() / seconds,
+                requests.get(), putMetrics.totalSummary()));
+    }
+}
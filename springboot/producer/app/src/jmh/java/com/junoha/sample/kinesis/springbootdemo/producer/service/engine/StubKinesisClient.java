@@ -0,0 +1,93 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.engine;
+
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.model.HashKeyRange;
+import software.amazon.awssdk.services.kinesis.model.ListShardsRequest;
+import software.amazon.awssdk.services.kinesis.model.ListShardsResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResultEntry;
+import software.amazon.awssdk.services.kinesis.model.SequenceNumberRange;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory Kinesis for the benchmarks: answers ListShards with 4 shards of equal hash key ranges, and PutRecords
+ * with the shard of each entry's partition key after 20 ms, rejecting the given share of the entries with
+ * ProvisionedThroughputExceededException.
+ */
+public final class StubKinesisClient implements KinesisAsyncClient {
+
+    private static final int SHARDS = 4;
+    private static final long PUT_LATENCY_MILLIS = 20;
+
+    private final double failureRate;
+    private final AtomicLong requests;
+    private final List<Shard> shards = new ArrayList<>();
+    private final ShardMap shardMap;
+
+    /**
+     * @param requests Counts the PutRecords requests
+     */
+    public StubKinesisClient(String streamName, double failureRate, AtomicLong requests) {
+        this.failureRate = failureRate;
+        this.requests = requests;
+        BigInteger maxHashKey = BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE);
+        BigInteger range = maxHashKey.divide(BigInteger.valueOf(SHARDS));
+        for (int i = 0; i < SHARDS; i++) {
+            BigInteger first = range.multiply(BigInteger.valueOf(i));
+            BigInteger last = i == SHARDS - 1 ? maxHashKey : first.add(range).subtract(BigInteger.ONE);
+            shards.add(Shard.builder()
+                    .shardId(String.format("shardId-%012d", i))
+                    .hashKeyRange(HashKeyRange.builder()
+                            .startingHashKey(first.toString()).endingHashKey(last.toString()).build())
+                    .sequenceNumberRange(SequenceNumberRange.builder().startingSequenceNumber("0").build())
+                    .build());
+        }
+        this.shardMap = ShardMap.load(this, streamName);
+    }
+
+    @Override
+    public String serviceName() {
+        return "kinesis";
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public CompletableFuture<ListShardsResponse> listShards(ListShardsRequest request) {
+        return CompletableFuture.completedFuture(ListShardsResponse.builder().shards(shards).build());
+    }
+
+    @Override
+    public CompletableFuture<PutRecordsResponse> putRecords(PutRecordsRequest request) {
+        requests.incrementAndGet();
+        List<PutRecordsResultEntry> results = new ArrayList<>(request.records().size());
+        int failures = 0;
+        for (PutRecordsRequestEntry entry : request.records()) {
+            if (ThreadLocalRandom.current().nextDouble() < failureRate) {
+                failures++;
+                results.add(PutRecordsResultEntry.builder()
+                        .errorCode("ProvisionedThroughputExceededException")
+                        .errorMessage("Rate exceeded for shard").build());
+            } else {
+                results.add(PutRecordsResultEntry.builder()
+                        .shardId(shardMap.shardId(entry.partitionKey())).sequenceNumber("1").build());
+            }
+        }
+        PutRecordsResponse response = PutRecordsResponse.builder()
+                .records(results).failedRecordCount(failures).build();
+        return CompletableFuture.supplyAsync(() -> response,
+                CompletableFuture.delayedExecutor(PUT_LATENCY_MILLIS, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,83 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Pauses record generation while KPL is too far behind, so that its buffer and the pending futures
+ * stay bounded when the stream is throttled.
+ * <p>
+ * The producer is over the limit when the outstanding record count or the age of the oldest outstanding
+ * record exceeds its maximum. A maximum of 0 disables that check. Time spent over the limit is accumulated
+ * so the caller can shift its schedule instead of bursting to catch up.
+ * <p>
+ * {@link #update(long)} must be called from a single monitor thread; the rest may be called from any thread.
+ */
+public class Backpressure {
+
+    private final LongSupplier outstandingRecords;
+    private final LongSupplier oldestRecordAgeMillis;
+    private final long maxOutstandingRecords;
+    private final long maxOldestRecordAgeMillis;
+
+    private volatile long blockedSinceNanos = -1;
+    private volatile long blockedNanos = 0;
+
+    public Backpressure(LongSupplier outstandingRecords, LongSupplier oldestRecordAgeMillis,
+                        long maxOutstandingRecords, long maxOldestRecordAgeMillis) {
+        this.outstandingRecords = outstandingRecords;
+        this.oldestRecordAgeMillis = oldestRecordAgeMillis;
+        this.maxOutstandingRecords = maxOutstandingRecords;
+        this.maxOldestRecordAgeMillis = maxOldestRecordAgeMillis;
+    }
+
+    public boolean isEnabled() {
+        return maxOutstandingRecords > 0 || maxOldestRecordAgeMillis > 0;
+    }
+
+    public boolean isOverLimit() {
+        return (maxOutstandingRecords > 0 && outstandingRecords.getAsLong() >= maxOutstandingRecords)
+                || (maxOldestRecordAgeMillis > 0 && oldestRecordAgeMillis.getAsLong() >= maxOldestRecordAgeMillis);
+    }
+
+    /**
+     * Re-evaluates the limits. Called periodically from a single monitor thread.
+     *
+     * @param nowNanos System.nanoTime()
+     */
+    public void update(long nowNanos) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (isOverLimit()) {
+            if (blockedSinceNanos < 0) {
+                blockedSinceNanos = nowNanos;
+            }
+        } else if (blockedSinceNanos >= 0) {
+            blockedNanos += nowNanos - blockedSinceNanos;
+            blockedSinceNanos = -1;
+        }
+    }
+
+    /**
+     * @return true while generation should pause. Safe to call from any thread.
+     */
+    public boolean isPaused() {
+        return blockedSinceNanos >= 0;
+    }
+
+    /**
+     * Total time spent paused, including the current pause if any.
+     */
+    public long blockedNanos(long nowNanos) {
+        long since = blockedSinceNanos;
+        return blockedNanos + (since >= 0 ? nowNanos - since : 0);
+    }
+
+    public long outstandingRecords() {
+        return outstandingRecords.getAsLong();
+    }
+
+    public long oldestRecordAgeMillis() {
+        return oldestRecordAgeMillis.getAsLong();
+    }
+}
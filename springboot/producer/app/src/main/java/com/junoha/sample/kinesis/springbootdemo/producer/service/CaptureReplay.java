@@ -0,0 +1,184 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service;
+
+import com.amazonaws.services.kinesis.producer.UserRecord;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Replays records captured from a stream, with their partition keys and their original timing.
+ * <p>
+ * The capture file has one JSON object per line, in the shape of the records returned by
+ * {@code aws kinesis get-records}: "PartitionKey", "Data" (base64) and "ApproximateArrivalTimestamp" (epoch
+ * seconds or ISO-8601). Other fields are ignored. The file may be gzipped. It is parsed as a stream, so only
+ * the current record is on the heap.
+ * <p>
+ * With speed 1 records are put at their original inter-arrival times, with speed 2 twice as fast, and with
+ * speed 0 as fast as possible. Records without timestamp are put right after the previous one.
+ */
+public class CaptureReplay {
+
+    private static final Logger log = LoggerFactory.getLogger(CaptureReplay.class);
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long PAUSE_NANOS = 1_000_000L;
+
+    private static final class CapturedRecord {
+        private final String partitionKey;
+        private final byte[] data;
+        private final long arrivalMillis;
+
+        private CapturedRecord(String partitionKey, byte[] data, long arrivalMillis) {
+            this.partitionKey = partitionKey;
+            this.data = data;
+            this.arrivalMillis = arrivalMillis;
+        }
+    }
+
+    private final Path file;
+    private final double speed;
+    private final String streamName;
+    private long position = 0;
+
+    /**
+     * @param speed Replay speed relative to the capture, 0 for as fast as possible
+     */
+    public CaptureReplay(Path file, double speed, String streamName) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("Replay speed should be 0 or positive");
+        }
+        if (!Files.isRegularFile(file) || !Files.isReadable(file)) {
+            throw new IllegalArgumentException("Cannot read capture file " + file);
+        }
+        this.file = file;
+        this.speed = speed;
+        this.streamName = streamName;
+    }
+
+    /**
+     * Puts the captured records until the end of the file or of the duration, and blocks until then.
+     *
+     * @param put             Puts a record
+     * @param counter         Counter used to track how many records have been put
+     * @param durationSeconds Maximum time to run for
+     * @param paused          While true, no record is put. Paused time shifts the rest of the capture.
+     */
+    public void run(Consumer<UserRecord> put, AtomicLong counter, int durationSeconds, BooleanSupplier paused) {
+        final long startNanos = System.nanoTime();
+        final long endNanos = startNanos + durationSeconds * 1_000_000_000L;
+        long shiftNanos = 0;
+        long firstArrivalMillis = -1;
+        long lastArrivalMillis = -1;
+        long maxLagNanos = 0;
+        long count = 0;
+
+        try (InputStream in = open(file); JsonParser parser = JSON.createParser(in)) {
+            CapturedRecord record;
+            while ((record = next(parser)) != null) {
+                if (System.nanoTime() >= endNanos) {
+                    break;
+                }
+                if (record.arrivalMillis >= 0) {
+                    lastArrivalMillis = record.arrivalMillis;
+                    if (firstArrivalMillis < 0) {
+                        firstArrivalMillis = record.arrivalMillis;
+                    }
+                }
+                if (speed > 0 && lastArrivalMillis >= 0) {
+                    long dueNanos = startNanos + shiftNanos
+                            + (long) ((lastArrivalMillis - firstArrivalMillis) * 1_000_000L / speed);
+                    if (dueNanos >= endNanos) {
+                        break;
+                    }
+                    RateEngine.waitUntil(dueNanos);
+                    maxLagNanos = Math.max(maxLagNanos, System.nanoTime() - dueNanos);
+                }
+                if (paused.getAsBoolean()) {
+                    long pausedAt = System.nanoTime();
+                    while (paused.getAsBoolean()) {
+                        LockSupport.parkNanos(PAUSE_NANOS);
+                    }
+                    shiftNanos += System.nanoTime() - pausedAt;
+                }
+                counter.getAndIncrement();
+                count++;
+                put.accept(new UserRecord(streamName, record.partitionKey, ByteBuffer.wrap(record.data)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        log.info(String.format("Replay finished: %d records in %.1f sec (%.0f records/sec) from %s, "
+                        + "capture span %.1f sec, speed %s, max lag behind the capture timing %d ms",
+                count, seconds, count / seconds, file,
+                firstArrivalMillis < 0 ? 0.0 : (lastArrivalMillis - firstArrivalMillis) / 1000.0,
+                speed == 0 ? "max" : String.valueOf(speed), maxLagNanos / 1_000_000));
+    }
+
+    /**
+     * Reads the file through gunzip when it starts with the gzip magic bytes.
+     */
+    private static InputStream open(Path file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        in.reset();
+        if (b1 == 0x1f && b2 == 0x8b) {
+            return new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+        }
+        return in;
+    }
+
+    /**
+     * @return the next record, or null at the end of the file
+     */
+    private CapturedRecord next(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            return null;
+        }
+        position++;
+        if (token != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException(String.format("Record %d of %s is not a JSON object", position, file));
+        }
+        String partitionKey = null;
+        byte[] data = null;
+        long arrivalMillis = -1;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "PartitionKey" -> partitionKey = parser.getText();
+                case "Data" -> data = parser.getBinaryValue();
+                case "ApproximateArrivalTimestamp" -> arrivalMillis = value == JsonToken.VALUE_STRING
+                        ? OffsetDateTime.parse(parser.getText()).toInstant().toEpochMilli()
+                        : (long) (parser.getDoubleValue() * 1000);
+                default -> parser.skipChildren();
+            }
+        }
+        if (partitionKey == null || data == null) {
+            throw new IllegalArgumentException(String.format(
+                    "Record %d of %s has no PartitionKey or Data", position, file));
+        }
+        return new CapturedRecord(partitionKey, data, arrivalMillis);
+    }
+}
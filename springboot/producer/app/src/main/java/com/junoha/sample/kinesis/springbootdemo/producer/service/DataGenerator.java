@@ -6,9 +6,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.javafaker.Faker;
 import com.junoha.sample.kinesis.springbootdemo.producer.model.Person;
 import com.junoha.sample.kinesis.springbootdemo.producer.model.Pet;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.codec.PersonCodec;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.codec.RunSequence;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.partitionkey.PartitionKeyStrategy;
 
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
@@ -20,18 +22,17 @@ public class DataGenerator {
     private DataGenerator() {
     }
 
-    private static Faker faker;
+    // Faker is not thread-safe, so each producer worker gets its own instance
+    private static final ThreadLocal<Faker> faker = ThreadLocal.withInitial(
+            // () -> new Faker(new Locale.Builder().setLocale(Locale.JAPAN).build()));
+            () -> new Faker(new Locale.Builder().setLocale(Locale.US).build()));
     private static final ObjectMapper mapper = new ObjectMapper();
 
     private static Faker getFakerInstance() {
-        if (faker == null) {
-            // faker = new Faker(new Locale.Builder().setLocale(Locale.JAPAN).build());
-            faker = new Faker(new Locale.Builder().setLocale(Locale.US).build());
-        }
-        return faker;
+        return faker.get();
     }
 
-    private static Person getPerson() {
+    static Person getPerson() {
         /**
          * Generate Fake Data with Faker
          * https://github.com/DiUS/java-faker
@@ -76,21 +77,21 @@ public class DataGenerator {
         return person;
     }
 
-    private static String generateDummyData() {
-        Person person = getPerson();
+    static byte[] serialize(Person person) {
         try {
-            // Object to JSON String
-            return mapper.writeValueAsString(person);
+            // Object to JSON bytes (UTF-8)
+            return mapper.writeValueAsBytes(person);
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
     }
 
-    protected static UserRecord generateUserRecord(String streamName) {
-        // Partition key is timestamp mills
+    protected static UserRecord generateUserRecord(String streamName, PartitionKeyStrategy partitionKeyStrategy,
+                                                   PersonCodec codec, RunSequence sequence) {
+        Person person = getPerson();
         return new UserRecord()
                 .withStreamName(streamName)
-                .withPartitionKey(Long.toString(System.currentTimeMillis()))
-                .withData(ByteBuffer.wrap(generateDummyData().getBytes(StandardCharsets.UTF_8)));
+                .withPartitionKey(partitionKeyStrategy.partitionKey(person.getId()))
+                .withData(ByteBuffer.wrap(codec.encode(person, sequence)));
     }
 }
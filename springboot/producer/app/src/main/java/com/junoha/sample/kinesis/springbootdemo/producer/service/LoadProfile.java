@@ -0,0 +1,166 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Target records/sec for every second of a run, as a sequence of segments separated by ";":
+ * <ul>
+ * <li>constant(rate, seconds)</li>
+ * <li>ramp(from, to, seconds): linear from one rate to the other, to find where throttling starts</li>
+ * <li>step(from, to, steps, seconds): from one rate to the other in equally long steps</li>
+ * <li>burst(base, peak, period, burstSeconds, seconds): peak for the first burstSeconds of every period</li>
+ * <li>sine(mean, amplitude, period, seconds): e.g. a day compressed into a period</li>
+ * </ul>
+ * Example: {@code ramp(100, 5000, 300); constant(5000, 60); burst(1000, 4000, 30, 5, 120)}.
+ * Rates below 1 record/sec are raised to 1.
+ */
+public class LoadProfile {
+
+    private static final class Segment {
+        private final String text;
+        private final int seconds;
+        private final IntToDoubleFunction rate;
+
+        private Segment(String text, int seconds, IntToDoubleFunction rate) {
+            this.text = text;
+            this.seconds = seconds;
+            this.rate = rate;
+        }
+    }
+
+    private final List<Segment> segments;
+    private final int durationSeconds;
+
+    private LoadProfile(List<Segment> segments) {
+        if (segments.isEmpty()) {
+            throw new IllegalArgumentException("Load profile has no segment");
+        }
+        this.segments = segments;
+        this.durationSeconds = segments.stream().mapToInt(s -> s.seconds).sum();
+    }
+
+    public static LoadProfile constant(int rate, int seconds) {
+        return parse(String.format("constant(%d, %d)", rate, seconds));
+    }
+
+    public static LoadProfile parse(String profile) {
+        List<Segment> segments = new ArrayList<>();
+        for (String text : profile.split(";")) {
+            text = text.trim();
+            if (!text.isEmpty()) {
+                segments.add(parseSegment(text));
+            }
+        }
+        return new LoadProfile(segments);
+    }
+
+    private static Segment parseSegment(String text) {
+        int open = text.indexOf('(');
+        if (open < 0 || !text.endsWith(")")) {
+            throw new IllegalArgumentException("Invalid load profile segment: " + text);
+        }
+        String name = text.substring(0, open).trim();
+        String[] parts = text.substring(open + 1, text.length() - 1).split(",");
+        double[] args = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                args[i] = Double.parseDouble(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number in load profile segment: " + text);
+            }
+            if (args[i] < 0) {
+                throw new IllegalArgumentException("Negative number in load profile segment: " + text);
+            }
+        }
+        int expected = switch (name) {
+            case "constant" -> 2;
+            case "ramp" -> 3;
+            case "step", "sine" -> 4;
+            case "burst" -> 5;
+            default -> throw new IllegalArgumentException("Unknown load profile segment: " + text);
+        };
+        if (args.length != expected) {
+            throw new IllegalArgumentException(String.format(
+                    "%s takes %d arguments: %s", name, expected, text));
+        }
+        int seconds = (int) args[expected - 1];
+        if (seconds <= 0) {
+            throw new IllegalArgumentException("Load profile segment should last at least 1 second: " + text);
+        }
+        IntToDoubleFunction rate = switch (name) {
+            case "constant" -> t -> args[0];
+            // Reaches "to" in the last second
+            case "ramp" -> t -> args[0] + (args[1] - args[0]) * t / Math.max(1, seconds - 1);
+            case "step" -> {
+                int steps = Math.max(1, (int) args[2]);
+                yield t -> args[0] + (args[1] - args[0]) * ((long) t * steps / seconds) / Math.max(1, steps - 1);
+            }
+            case "burst" -> t -> t % Math.max(1, (int) args[2]) < args[3] ? args[1] : args[0];
+            case "sine" -> t -> args[0] + args[1] * Math.sin(2 * Math.PI * t / Math.max(1, args[2]));
+            default -> throw new IllegalStateException(name);
+        };
+        return new Segment(text, seconds, rate);
+    }
+
+    public int durationSeconds() {
+        return durationSeconds;
+    }
+
+    /**
+     * @param second Second since the start of the run, from 0
+     */
+    public double rateAt(int second) {
+        for (Segment segment : segments) {
+            if (second < segment.seconds) {
+                return Math.max(1, segment.rate.applyAsDouble(second));
+            }
+            second -= segment.seconds;
+        }
+        // After the end, stay at the last rate
+        Segment last = segments.get(segments.size() - 1);
+        return Math.max(1, last.rate.applyAsDouble(last.seconds - 1));
+    }
+
+    public double maxRate() {
+        double max = 0;
+        for (int t = 0; t < durationSeconds; t++) {
+            max = Math.max(max, rateAt(t));
+        }
+        return max;
+    }
+
+    public long totalRecords() {
+        double total = 0;
+        for (int t = 0; t < durationSeconds; t++) {
+            total += rateAt(t);
+        }
+        return (long) total;
+    }
+
+    /**
+     * The segment starting at the given second, or null if no segment starts there.
+     */
+    public String segmentStartingAt(int second) {
+        for (Segment segment : segments) {
+            if (second == 0) {
+                return segment.text;
+            }
+            if (second < segment.seconds) {
+                return null;
+            }
+            second -= segment.seconds;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Segment segment : segments) {
+            text.append(text.length() == 0 ? "" : "; ").append(segment.text);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,224 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service;
+
+import com.amazonaws.services.kinesis.producer.UserRecord;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.codec.PayloadFormat;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.codec.PersonCodec;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.codec.RunSequence;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.partitionkey.PartitionKeyStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pre-generated set of serialized Person payloads.
+ * <p>
+ * Faker and Jackson run once per corpus entry instead of once per record. Each entry is kept as the JSON
+ * that follows the "date" value, so a record is assembled by writing a fresh "id" and "date" in front of it
+ * and copying the stored bytes. Payloads are JSON only, with the {@link PersonCodec} header.
+ * <p>
+ * File layout (big endian): MAGIC, entry count, then (length, bytes) for each entry.
+ * The file is memory-mapped on load, so entries are not copied onto the heap.
+ */
+public class PayloadCorpus {
+
+    private static final Logger log = LoggerFactory.getLogger(PayloadCorpus.class);
+
+    private static final int MAGIC = 0x4b445331; // "KDS1"
+    private static final byte[] ID_PREFIX = "{\"id\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DATE_PREFIX = ",\"date\":\"".getBytes(StandardCharsets.US_ASCII);
+    // "yyyy/MM/dd HH:mm:ss"
+    private static final int DATE_LENGTH = 19;
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
+    // Person.id is generated with 5 digits
+    private static final long MAX_ID = 100000L;
+
+    private final List<ByteBuffer> tails;
+    private final AtomicLong cursor = new AtomicLong(0);
+    private volatile CachedDate cachedDate = new CachedDate(-1, new byte[0]);
+
+    private PayloadCorpus(List<ByteBuffer> tails) {
+        if (tails.isEmpty()) {
+            throw new IllegalArgumentException("Corpus must contain at least one payload");
+        }
+        this.tails = tails;
+    }
+
+    /**
+     * Builds a corpus with Faker, or loads it from the file when it already exists. When a file path is given
+     * and the file does not exist, the generated corpus is saved there for later runs.
+     *
+     * @param size Number of payloads to generate
+     * @param file Corpus file path, or empty to keep the corpus in memory only
+     */
+    public static PayloadCorpus loadOrGenerate(int size, String file) {
+        if (file == null || file.isEmpty()) {
+            return generate(size);
+        }
+        Path path = Path.of(file);
+        if (Files.exists(path)) {
+            return load(path);
+        }
+        PayloadCorpus corpus = generate(size);
+        corpus.save(path);
+        return corpus;
+    }
+
+    public static PayloadCorpus generate(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Corpus size should be a positive integer");
+        }
+        long start = System.nanoTime();
+        List<ByteBuffer> tails = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tails.add(ByteBuffer.wrap(toTail(DataGenerator.serialize(DataGenerator.getPerson()))));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log.info(String.format("Generated corpus of %d payloads in %.2f sec (%.0f payloads/sec with Faker)",
+                size, seconds, size / seconds));
+        return new PayloadCorpus(tails);
+    }
+
+    public static PayloadCorpus load(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a corpus file: " + path);
+            }
+            int count = mapped.getInt();
+            List<ByteBuffer> tails = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int length = mapped.getInt();
+                ByteBuffer tail = mapped.slice();
+                tail.limit(length);
+                tails.add(tail);
+                mapped.position(mapped.position() + length);
+            }
+            log.info(String.format("Loaded corpus of %d payloads from %s", count, path));
+            return new PayloadCorpus(tails);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void save(Path path) {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(tails.size());
+            header.flip();
+            channel.write(header);
+            for (ByteBuffer tail : tails) {
+                ByteBuffer length = ByteBuffer.allocate(4).putInt(tail.remaining());
+                length.flip();
+                channel.write(length);
+                channel.write(tail.duplicate());
+            }
+            log.info(String.format("Saved corpus of %d payloads to %s", tails.size(), path));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int size() {
+        return tails.size();
+    }
+
+    public static long nextId() {
+        return ThreadLocalRandom.current().nextLong(MAX_ID);
+    }
+
+    /**
+     * Next payload in the corpus with the given id and a fresh date. Safe to call from multiple threads.
+     *
+     * @param sequence Numbers the record, or null for a record without sequence number
+     */
+    public byte[] nextPayload(long personId, RunSequence sequence) {
+        ByteBuffer tail = tails.get((int) (cursor.getAndIncrement() % tails.size())).duplicate();
+        byte[] header = PersonCodec.header(PayloadFormat.JSON, sequence);
+        byte[] id = Long.toString(personId).getBytes(StandardCharsets.US_ASCII);
+        byte[] date = currentDate();
+
+        byte[] payload = new byte[header.length + ID_PREFIX.length + id.length + DATE_PREFIX.length + date.length
+                + tail.remaining()];
+        ByteBuffer.wrap(payload)
+                .put(header)
+                .put(ID_PREFIX)
+                .put(id)
+                .put(DATE_PREFIX)
+                .put(date)
+                .put(tail);
+        return payload;
+    }
+
+    public UserRecord nextUserRecord(String streamName, PartitionKeyStrategy partitionKeyStrategy,
+                                     RunSequence sequence) {
+        long personId = nextId();
+        return new UserRecord()
+                .withStreamName(streamName)
+                .withPartitionKey(partitionKeyStrategy.partitionKey(personId))
+                .withData(ByteBuffer.wrap(nextPayload(personId, sequence)));
+    }
+
+    /**
+     * The date has a resolution of one second, so it is formatted at most once per second.
+     */
+    private byte[] currentDate() {
+        long epochSecond = System.currentTimeMillis() / 1000;
+        CachedDate cached = cachedDate;
+        if (cached.epochSecond != epochSecond) {
+            cached = new CachedDate(epochSecond,
+                    DATE_FORMAT.format(LocalDateTime.now()).getBytes(StandardCharsets.US_ASCII));
+            cachedDate = cached;
+        }
+        return cached.bytes;
+    }
+
+    /**
+     * Strips '{"id":N,"date":"yyyy/MM/dd HH:mm:ss' from a serialized Person.
+     */
+    private static byte[] toTail(byte[] json) {
+        int datePrefixAt = indexOf(json, DATE_PREFIX);
+        if (!startsWith(json, ID_PREFIX) || datePrefixAt < 0) {
+            throw new IllegalStateException("Unexpected Person layout: " + new String(json, StandardCharsets.UTF_8));
+        }
+        return Arrays.copyOfRange(json, datePrefixAt + DATE_PREFIX.length + DATE_LENGTH, json.length);
+    }
+
+    private static boolean startsWith(byte[] array, byte[] prefix) {
+        return array.length >= prefix.length && Arrays.equals(array, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    private static int indexOf(byte[] array, byte[] target) {
+        for (int i = 0; i <= array.length - target.length; i++) {
+            if (Arrays.equals(array, i, i + target.length, target, 0, target.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class CachedDate {
+        private final long epochSecond;
+        private final byte[] bytes;
+
+        private CachedDate(long epochSecond, byte[] bytes) {
+            this.epochSecond = epochSecond;
+            this.bytes = bytes;
+        }
+    }
+}
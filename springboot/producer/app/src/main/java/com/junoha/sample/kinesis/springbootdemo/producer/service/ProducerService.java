@@ -1,6 +1,5 @@
 package com.junoha.sample.kinesis.springbootdemo.producer.service;
 
-import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
 import com.amazonaws.services.kinesis.producer.*;
 import com.amazonaws.xray.AWSXRay;
 import com.amazonaws.xray.AWSXRayRecorder;
@@ -11,16 +10,46 @@ import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.codec.CodecReport;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.codec.PayloadFormat;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.codec.PersonCodec;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.codec.RunSequence;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.engine.KplProducerEngine;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.engine.ProducerEngine;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.engine.SdkProducerEngine;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.journal.JournalReplayer;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.journal.SpillJournal;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.metrics.KplMetrics;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.metrics.ProducerMetrics;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.metrics.PutMetrics;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.metrics.RuntimeStats;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.partitionkey.HotShards;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.partitionkey.PartitionKeyStrategy;
+import com.junoha.sample.kinesis.springbootdemo.producer.service.partitionkey.ShardDistribution;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
 
 @Service
 public class ProducerService {
@@ -29,6 +58,13 @@ public class ProducerService {
     // https://docs.spring.io/spring-boot/docs/current/reference/html/spring-boot-features.html#boot-features-logging
     private static final Logger log = LoggerFactory.getLogger(ProducerService.class);
     private static final ScheduledExecutorService EXECUTOR = Executors.newScheduledThreadPool(1);
+    // Own thread, so that the progress report blocking on KPL metrics does not delay the backpressure checks
+    private static final ScheduledExecutorService BACKPRESSURE_MONITOR = Executors.newSingleThreadScheduledExecutor();
+    private static final int CALLBACK_QUEUE_SIZE = 10000;
+    private static final long JOURNAL_MAX_BACKOFF_MILLIS = 60000;
+    private static final int CODEC_REPORT_RECORDS = 1000;
+
+    private final MeterRegistry meterRegistry;
 
     @Value(value = "${aws.kinesis.region_name}")
     private String regionName;
@@ -42,30 +78,215 @@ public class ProducerService {
     @Value(value = "${aws.kinesis.records_per_second}")
     private int recordsPerSecond;
 
-    private static KinesisProducer createProducer(String region) {
-        KinesisProducerConfiguration config = new KinesisProducerConfiguration()
-                .setRegion(region)
-                .setCredentialsProvider(new DefaultAWSCredentialsProviderChain());
-        return new KinesisProducer(config);
+    @Value(value = "${aws.kinesis.load_profile}")
+    private String loadProfileText;
+
+    @Value(value = "${aws.kinesis.producer_threads}")
+    private int producerThreads;
+
+    @Value(value = "${aws.kinesis.callback_threads}")
+    private int callbackThreads;
+
+    @Value(value = "${aws.kinesis.virtual_threads}")
+    private boolean virtualThreads;
+
+    @Value(value = "${aws.kinesis.data_source}")
+    private String dataSource;
+
+    @Value(value = "${aws.kinesis.replay_file}")
+    private String replayFile;
+
+    @Value(value = "${aws.kinesis.replay_speed}")
+    private double replaySpeed;
+
+    @Value(value = "${aws.kinesis.payload_format}")
+    private String payloadFormat;
+
+    @Value(value = "${aws.kinesis.payload_format_report}")
+    private boolean payloadFormatReport;
+
+    @Value(value = "${aws.kinesis.corpus_size}")
+    private int corpusSize;
+
+    @Value(value = "${aws.kinesis.corpus_file}")
+    private String corpusFile;
+
+    @Value(value = "${aws.kinesis.partition_key_strategy}")
+    private String partitionKeyStrategyName;
+
+    @Value(value = "${aws.kinesis.partition_key_count}")
+    private int partitionKeyCount;
+
+    @Value(value = "${aws.kinesis.hot_shard_threshold}")
+    private double hotShardThreshold;
+
+    @Value(value = "${aws.kinesis.hot_shard_top}")
+    private int hotShardTop;
+
+    @Value(value = "${aws.kinesis.hot_shard_report_seconds}")
+    private int hotShardReportSeconds;
+
+    @Value(value = "${aws.kinesis.max_outstanding_records}")
+    private long maxOutstandingRecords;
+
+    @Value(value = "${aws.kinesis.max_oldest_record_age_millis}")
+    private long maxOldestRecordAgeMillis;
+
+    @Value(value = "${aws.kinesis.engine}")
+    private String engine;
+
+    @Value(value = "${aws.kinesis.sdk_max_buffered_time_millis}")
+    private long sdkMaxBufferedTimeMillis;
+
+    @Value(value = "${aws.kinesis.sdk_max_concurrent_requests}")
+    private int sdkMaxConcurrentRequests;
+
+    @Value(value = "${aws.kinesis.sdk_aggregation}")
+    private boolean sdkAggregation;
+
+    @Value(value = "${aws.kinesis.journal_file}")
+    private String journalFile;
+
+    @Value(value = "${aws.kinesis.journal_max_bytes}")
+    private int journalMaxBytes;
+
+    @Value(value = "${aws.kinesis.journal_retry_budget}")
+    private int journalRetryBudget;
+
+    @Value(value = "${aws.kinesis.journal_backoff_millis}")
+    private long journalBackoffMillis;
+
+    @Value(value = "${aws.kinesis.journal_drain_seconds}")
+    private int journalDrainSeconds;
+
+    public ProducerService(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * "kpl" uses KPL and its native child process, "sdk" the pure Java engine on the AWS SDK async client.
+     */
+    private ProducerEngine createProducer() {
+        return ProducerEngine.of(engine, regionName, streamName,
+                new SdkProducerEngine.Config(sdkMaxBufferedTimeMillis, sdkMaxConcurrentRequests, sdkAggregation));
     }
 
-    private static FutureCallback<UserRecordResult> createFutureCallback() {
+    /**
+     * "faker" generates every record with Faker, "corpus" cycles through pre-generated payloads.
+     * With "replay" the records come from {@link #createCaptureReplay()} instead.
+     */
+    private Supplier<UserRecord> createRecordSupplier(PartitionKeyStrategy partitionKeyStrategy, PersonCodec codec,
+                                                      RunSequence sequence) {
+        return switch (dataSource) {
+            case "faker" -> () -> DataGenerator.generateUserRecord(streamName, partitionKeyStrategy, codec, sequence);
+            case "corpus" -> {
+                if (codec.format() != PayloadFormat.JSON) {
+                    throw new IllegalArgumentException("Corpus data source only supports the json payload format");
+                }
+                PayloadCorpus corpus = PayloadCorpus.loadOrGenerate(corpusSize, corpusFile);
+                yield () -> corpus.nextUserRecord(streamName, partitionKeyStrategy, sequence);
+            }
+            default -> throw new IllegalArgumentException("Invalid data source: " + dataSource);
+        };
+    }
+
+    /**
+     * A load profile runs for its own duration; without one the rate is records_per_second for seconds_to_run.
+     */
+    private LoadProfile createLoadProfile() {
+        if (loadProfileText == null || loadProfileText.isBlank()) {
+            return LoadProfile.constant(recordsPerSecond, secondsToRun);
+        }
+        return LoadProfile.parse(loadProfileText);
+    }
+
+    /**
+     * "replay" puts the records of a capture file, or null for the other data sources.
+     */
+    private CaptureReplay createCaptureReplay() {
+        if (!"replay".equals(dataSource)) {
+            return null;
+        }
+        if (replayFile == null || replayFile.isEmpty()) {
+            throw new IllegalArgumentException("Replay data source needs a replay file");
+        }
+        return new CaptureReplay(Path.of(replayFile), replaySpeed, streamName);
+    }
+
+    /**
+     * Callbacks only update counters and histograms, so by default they run directly on the KPL thread
+     * completing the future. With callback_threads > 0 they run on a fixed pool with a bounded queue; when the
+     * queue is full the completing thread runs the callback itself. With virtual_threads every callback runs on
+     * a new virtual thread.
+     */
+    private Executor createCallbackExecutor() {
+        if (virtualThreads) {
+            return VirtualThreads.newThreadPerTaskExecutor("producer-callback-");
+        }
+        if (callbackThreads <= 0) {
+            return MoreExecutors.directExecutor();
+        }
+        return new ThreadPoolExecutor(callbackThreads, callbackThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(CALLBACK_QUEUE_SIZE), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Failed puts are spilled to the journal and replayed later. Without journal_file the producer stops
+     * at the first failure, as before.
+     */
+    private JournalReplayer createJournalReplayer(Backpressure backpressure) {
+        if (journalFile == null || journalFile.isEmpty()) {
+            return null;
+        }
+        if (journalMaxBytes <= 0) {
+            throw new IllegalArgumentException("Journal max bytes should be a positive integer");
+        }
+        SpillJournal journal = new SpillJournal(Path.of(journalFile), journalMaxBytes);
+        return new JournalReplayer(journal, journalRetryBudget, journalBackoffMillis, JOURNAL_MAX_BACKOFF_MILLIS,
+                backpressure::isPaused);
+    }
+
+    /**
+     * @param enqueuedNanos System.nanoTime() just before addUserRecord
+     * @param data          Record data, kept for the journal in case the put fails
+     * @param retryCount    Number of times the record has been replayed from the journal
+     * @param replayer      Journal for failed puts, or null to exit on the first failure
+     */
+    private static FutureCallback<UserRecordResult> createFutureCallback(
+            long enqueuedNanos, String partitionKey, ByteBuffer data, int retryCount,
+            ProducerMetrics producerMetrics, PutMetrics putMetrics, ShardDistribution shardDistribution,
+            HotShards hotShards, JournalReplayer replayer) {
+        final int bytes = data.remaining();
+        // Partition keys of all strategies are ASCII
+        final int recordBytes = bytes + partitionKey.length();
         return new FutureCallback<>() {
             @Override
             public void onFailure(Throwable t) {
+                int attempts = 1;
                 if (t instanceof UserRecordFailedException) {
-                    Attempt last = Iterables.getLast(
-                            ((UserRecordFailedException) t).getResult().getAttempts());
+                    List<Attempt> allAttempts = ((UserRecordFailedException) t).getResult().getAttempts();
+                    attempts = allAttempts.size();
+                    Attempt last = Iterables.getLast(allAttempts);
                     log.error(String.format(
                             "Record failed to put - %s : %s",
                             last.getErrorCode(), last.getErrorMessage()));
                 }
+                producerMetrics.onComplete(bytes, attempts, false);
+                if (replayer != null) {
+                    replayer.spill(partitionKey, data, retryCount);
+                    return;
+                }
                 log.error("Exception during put", t);
                 System.exit(1);
             }
 
             @Override
             public void onSuccess(UserRecordResult result) {
+                int attempts = result.getAttempts().size();
+                producerMetrics.onComplete(bytes, attempts, true);
+                putMetrics.record(enqueuedNanos, attempts);
+                shardDistribution.record(result.getShardId());
+                hotShards.record(result.getShardId(), recordBytes, attempts);
                 // Logging all record
                 // log.info(String.format("ShardId:%s,getSequenceNumber:%s,isSuccessful:%s", result.getShardId(), result.getSequenceNumber(), result.isSuccessful()));
             }
@@ -73,57 +294,42 @@ public class ProducerService {
     }
 
     /**
-     * Executes a function N times per second for M seconds with a
-     * ScheduledExecutorService. The executor is shutdown at the end. This is
-     * more precise than simply using scheduleAtFixedRate.
-     *
-     * @param exec            Executor
-     * @param task            Task to perform
-     * @param counter         Counter used to track how many times the task has been
-     *                        executed
-     * @param durationSeconds How many seconds to run for
-     * @param ratePerSecond   How many times to execute task per second
+     * Waits for the put to complete. The callback has already recorded a failure, so it is not rethrown.
      */
-    private static void executeAtTargetRate(
-            final ScheduledExecutorService exec,
-            final Runnable task,
-            final AtomicLong counter,
-            final int durationSeconds,
-            final int ratePerSecond,
-            final Entity traceEntity) {
-
-        exec.scheduleWithFixedDelay(new Runnable() {
-            final long startTime = System.nanoTime();
-
-            @Override
-            public void run() {
-                double secondsRun = (System.nanoTime() - startTime) / 1e9;
-                double targetCount = Math.min(durationSeconds, secondsRun) * ratePerSecond;
-
-                final AWSXRayRecorder recorder = AWSXRay.getGlobalRecorder();
-                recorder.setTraceEntity(traceEntity);
-                Subsegment addUserRecordSS = recorder.beginSubsegment("addUserRecord");
-                addUserRecordSS.putAnnotation("parentID", traceEntity.getId());
-
-                while (counter.get() < targetCount) {
-                    counter.getAndIncrement();
-                    try {
-                        task.run();
-                    } catch (Exception e) {
-                        log.error("Error running task", e);
-                        addUserRecordSS.addException(e);
-                        System.exit(1);
-                    }
-                }
+    private static void awaitPut(ListenableFuture<UserRecordResult> f) {
+        try {
+            f.get();
+        } catch (ExecutionException e) {
+            // Handled by the callback
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
+    /**
+     * Worker threads carry the X-Ray trace entity and record their puts in one subsegment each.
+     * They are virtual threads with virtual_threads, platform threads otherwise.
+     */
+    private ThreadFactory createWorkerThreadFactory(final Entity traceEntity) {
+        final AtomicLong workerId = new AtomicLong(0);
+        final ThreadFactory threadFactory = virtualThreads
+                ? VirtualThreads.factory("producer-worker-")
+                : runnable -> new Thread(runnable, "producer-worker-" + workerId.getAndIncrement());
+        return runnable -> threadFactory.newThread(() -> {
+            final AWSXRayRecorder recorder = AWSXRay.getGlobalRecorder();
+            recorder.setTraceEntity(traceEntity);
+            Subsegment addUserRecordSS = recorder.beginSubsegment("addUserRecord");
+            addUserRecordSS.putAnnotation("parentID", traceEntity.getId());
+            try {
+                runnable.run();
+            } catch (Exception e) {
+                addUserRecordSS.addException(e);
+                throw e;
+            } finally {
                 addUserRecordSS.putAnnotation("finish", true);
                 recorder.endSubsegment();
-
-                if (secondsRun >= durationSeconds) {
-                    exec.shutdown();
-                }
             }
-        }, 0, 1, TimeUnit.MILLISECONDS);
+        });
     }
 
     /**
@@ -138,8 +344,15 @@ public class ProducerService {
             log.error("Seconds to Run should be a positive integer");
             System.exit(1);
         }
+        if (virtualThreads && !VirtualThreads.isSupported()) {
+            throw new IllegalArgumentException("Virtual threads need Java 21 or later, running on Java "
+                    + System.getProperty("java.version"));
+        }
 
-        log.info(String.format("Stream name: %s Region: %s secondsToRun %d", streamName, regionName, secondsToRun));
+        final LoadProfile loadProfile = createLoadProfile();
+        final int durationSeconds = "replay".equals(dataSource) ? secondsToRun : loadProfile.durationSeconds();
+        log.info(String.format("Stream name: %s Region: %s secondsToRun %d dataSource %s partitionKeyStrategy %s engine %s payloadFormat %s",
+                streamName, regionName, durationSeconds, dataSource, partitionKeyStrategyName, engine, payloadFormat));
 
         /**
          * X-Ray setup
@@ -150,50 +363,166 @@ public class ProducerService {
 
         // The monotonically increasing sequence number we will put in the data of each record
         final AtomicLong sequenceNumber = new AtomicLong(0);
-        // The number of records that have finished (either successfully put, or failed)
-        final AtomicLong completed = new AtomicLong(0);
-
-        final KinesisProducer producer = createProducer(regionName);
-        final FutureCallback<UserRecordResult> callback = createFutureCallback();
-        final ExecutorService callbackThreadPool = Executors.newCachedThreadPool();
-        final Runnable putOneRecord = () -> {
-            ListenableFuture<UserRecordResult> f = producer.addUserRecord(DataGenerator.generateUserRecord(streamName));
-            Futures.addCallback(f, callback, callbackThreadPool);
+        // Records and bytes submitted, completed (either successfully put, or failed), failed and retried
+        final ProducerMetrics producerMetrics = new ProducerMetrics();
+
+        final PartitionKeyStrategy partitionKeyStrategy = PartitionKeyStrategy.of(partitionKeyStrategyName, partitionKeyCount);
+        final ShardDistribution shardDistribution = new ShardDistribution();
+        // KPL aggregates by default
+        final HotShards hotShards = new HotShards(hotShardThreshold, !"sdk".equals(engine) || sdkAggregation);
+        final PersonCodec codec = PersonCodec.of(payloadFormat);
+        if (payloadFormatReport) {
+            CodecReport.log(IntStream.range(0, CODEC_REPORT_RECORDS)
+                    .mapToObj(i -> DataGenerator.getPerson())
+                    .collect(Collectors.toList()));
+        }
+        final CaptureReplay captureReplay = createCaptureReplay();
+        // Replayed records keep their captured data, so they are not numbered
+        final RunSequence runSequence = RunSequence.random();
+        final Supplier<UserRecord> recordSupplier = captureReplay == null
+                ? createRecordSupplier(partitionKeyStrategy, codec, runSequence)
+                : null;
+        if (captureReplay == null) {
+            log.info(String.format("Run id %s, records are numbered from 0 for the consumer to check", runSequence));
+        }
+        final ProducerEngine producer = createProducer();
+        final PutMetrics putMetrics = new PutMetrics();
+        // KPL's own metrics are only available with the KPL engine
+        final KplMetrics kplMetrics = producer instanceof KplProducerEngine
+                ? new KplMetrics(((KplProducerEngine) producer).getKinesisProducer())
+                : null;
+        producerMetrics.bindTo(meterRegistry);
+        putMetrics.bindTo(meterRegistry);
+        hotShards.bindTo(meterRegistry);
+        if (kplMetrics != null) {
+            kplMetrics.bindTo(meterRegistry);
+        }
+        final Executor callbackExecutor = createCallbackExecutor();
+        final Backpressure backpressure = new Backpressure(
+                producer::getOutstandingRecordsCount, producer::getOldestRecordTimeInMillis,
+                maxOutstandingRecords, maxOldestRecordAgeMillis);
+        final JournalReplayer replayer = createJournalReplayer(backpressure);
+        final BiFunction<UserRecord, Integer, ListenableFuture<UserRecordResult>> putRecord = (userRecord, retryCount) -> {
+            // KPL consumes the buffer, keep an independent view for the journal
+            ByteBuffer data = userRecord.getData().duplicate();
+            producerMetrics.onSubmit(data.remaining());
+            long enqueuedNanos = System.nanoTime();
+            ListenableFuture<UserRecordResult> f = producer.addUserRecord(userRecord);
+            Futures.addCallback(f, createFutureCallback(enqueuedNanos, userRecord.getPartitionKey(), data, retryCount,
+                    producerMetrics, putMetrics, shardDistribution, hotShards, replayer), callbackExecutor);
+            return f;
         };
+        // Virtual workers block until their put completes, so producer_threads bounds the records in flight
+        final Runnable putOneRecord = virtualThreads
+                ? () -> awaitPut(putRecord.apply(recordSupplier.get(), 0))
+                : () -> putRecord.apply(recordSupplier.get(), 0);
+        if (replayer != null) {
+            replayer.bindTo(meterRegistry);
+            replayer.start(entry -> putRecord.apply(
+                    new UserRecord(streamName, entry.getPartitionKey(), entry.getData()), entry.getRetryCount() + 1));
+        }
 
         // This gives us progress updates
+        final AtomicLong lastBlockedNanos = new AtomicLong(0);
+        final AtomicLong progressTicks = new AtomicLong(0);
+        final AtomicLong lastPut = new AtomicLong(0);
+        final long total = loadProfile.totalRecords();
+        final RateEngine rateEngine = new RateEngine(loadProfile, producerThreads,
+                createWorkerThreadFactory(xrayRecorder.getTraceEntity()));
         EXECUTOR.scheduleAtFixedRate(() -> {
             long put = sequenceNumber.get();
-            long total = recordsPerSecond * secondsToRun;
             double putPercent = 100.0 * put / total;
-            long done = completed.get();
+            long done = producerMetrics.getCompletedRecords();
             double donePercent = 100.0 * done / total;
+            long blockedNanos = backpressure.blockedNanos(System.nanoTime());
             log.info(String.format(
-                    "Put %d of %d so far (%.2f %%), %d have completed (%.2f %%)",
-                    put, total, putPercent, done, donePercent));
+                    "Put %d of %d so far (%.2f %%), %d have completed (%.2f %%), target %.0f records/sec, "
+                            + "achieved %d records/sec, outstanding %d, oldest %d ms, blocked %d ms (total %.1f sec)",
+                    put, total, putPercent, done, donePercent, rateEngine.getTargetRate(), put - lastPut.getAndSet(put),
+                    backpressure.outstandingRecords(), backpressure.oldestRecordAgeMillis(),
+                    (blockedNanos - lastBlockedNanos.getAndSet(blockedNanos)) / 1000000, blockedNanos / 1e9));
+            log.info(producerMetrics.intervalSummary(1.0));
+            log.info(putMetrics.intervalSummary());
+            if (kplMetrics != null) {
+                kplMetrics.poll(1);
+                log.info(kplMetrics.summary());
+            }
+            if (replayer != null) {
+                log.info(replayer.summary());
+            }
+            hotShards.poll();
+            if (hotShardReportSeconds > 0 && progressTicks.incrementAndGet() % hotShardReportSeconds == 0) {
+                log.info(hotShards.topSummary(hotShardTop));
+            }
         }, 1, 1, TimeUnit.SECONDS);
 
+        // Re-evaluate KPL backlog every millisecond while puts are running
+        if (backpressure.isEnabled()) {
+            BACKPRESSURE_MONITOR.scheduleWithFixedDelay(() -> backpressure.update(System.nanoTime()),
+                    0, 1, TimeUnit.MILLISECONDS);
+        }
+
         // Kick off the puts
         log.info(String.format(
-                "Starting puts... will run for %d seconds at %d records per second",
-                secondsToRun, recordsPerSecond));
-        executeAtTargetRate(EXECUTOR, putOneRecord, sequenceNumber, secondsToRun, recordsPerSecond, xrayRecorder.getTraceEntity());
+                "Starting puts... will run for %d seconds with load profile %s and %d %s workers",
+                durationSeconds, loadProfile, producerThreads, virtualThreads ? "virtual" : "platform"));
 
         // Wait for puts to finish. After this statement returns, we have
         // finished all calls to putRecord, but the records may still be
         // in-flight. We will additionally wait for all records to actually
         // finish later.
-        EXECUTOR.awaitTermination(secondsToRun + 1, TimeUnit.SECONDS);
+        final long runStartNanos = System.nanoTime();
+        if (captureReplay != null) {
+            // One reader keeps the captured order and timing; records_per_second and producer_threads do not apply
+            captureReplay.run(userRecord -> putRecord.apply(userRecord, 0), sequenceNumber, durationSeconds,
+                    backpressure::isPaused);
+        } else {
+            rateEngine.run(putOneRecord, sequenceNumber, durationSeconds, backpressure::isPaused);
+        }
 
         // close xray segment
         xrayRecorder.endSegment();
 
         log.info("Waiting for remaining puts to finish...");
         producer.flushSync();
+        if (replayer != null) {
+            // Replays may fail and be spilled again, so wait until both KPL and the journal are empty
+            boolean drained = replayer.awaitDrained(() -> {
+                producer.flush();
+                return producer.getOutstandingRecordsCount() == 0;
+            }, TimeUnit.SECONDS.toMillis(journalDrainSeconds));
+            // Puts failing in this last flush are still spilled to the open journal, for the next run
+            producer.flushSync();
+            replayer.close();
+            log.info(replayer.summary());
+            if (!drained) {
+                log.warn(String.format("Journal not drained, pending records will be replayed on the next run from %s",
+                        journalFile));
+            }
+        }
+        // The monitor keeps running until here so that replays are not held back by a stale pause
+        BACKPRESSURE_MONITOR.shutdown();
+        EXECUTOR.shutdown();
         log.info("All records complete.");
+        log.info(String.format("Submitted %d records (%d bytes), completed %d, failed %d, retried %d",
+                producerMetrics.getSubmittedRecords(), producerMetrics.getSubmittedBytes(),
+                producerMetrics.getCompletedRecords(), producerMetrics.getFailedRecords(),
+                producerMetrics.getRetriedRecords()));
+        log.info("Put {}", putMetrics.totalSummary());
+        if (captureReplay == null) {
+            log.info(String.format("Run id %s: numbered %d records, 0 to %d", runSequence, runSequence.count(),
+                    runSequence.count() - 1));
+        }
+        // Compare engines with the same settings on the same stream
+        log.info(String.format("Engine %s: %.0f records/sec completed including the final flush",
+                engine, producerMetrics.getCompletedRecords() / ((System.nanoTime() - runStartNanos) / 1e9)));
+        shardDistribution.report(partitionKeyStrategyName);
+        log.info(RuntimeStats.summary());
 
-        // This kills the child process and shuts down the threads managing it.
         producer.destroy();
+        if (callbackExecutor instanceof ExecutorService) {
+            ((ExecutorService) callbackExecutor).shutdown();
+        }
         log.info("Finished.");
 
     }
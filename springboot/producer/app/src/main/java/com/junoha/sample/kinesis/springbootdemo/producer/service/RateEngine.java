@@ -0,0 +1,134 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs a task at a target rate on N worker threads sharing one {@link TokenBucket}.
+ * <p>
+ * Each worker reserves a token, waits until the token's time and runs the task. Waits longer than
+ * SPIN_THRESHOLD_NANOS park the thread, the rest is spun, which gives sub-millisecond pacing.
+ * The target rate follows a {@link LoadProfile}, updated at the start of every second.
+ */
+public class RateEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(RateEngine.class);
+
+    private static final long SPIN_THRESHOLD_NANOS = 50_000L;
+    private static final long PAUSE_NANOS = 1_000_000L;
+
+    private final TokenBucket bucket;
+    private final LoadProfile profile;
+    private final int workerThreads;
+    private final ThreadFactory threadFactory;
+
+    /**
+     * @param profile       How many times to execute task per second, across all workers, for every second
+     * @param workerThreads Number of worker threads
+     * @param threadFactory Creates the worker threads
+     */
+    public RateEngine(LoadProfile profile, int workerThreads, ThreadFactory threadFactory) {
+        if (workerThreads <= 0) {
+            throw new IllegalArgumentException("Worker threads should be a positive integer");
+        }
+        // Allow ~1 ms worth of tokens at once so a worker descheduled for a moment can catch up
+        this.bucket = new TokenBucket(profile.rateAt(0), Math.max(workerThreads, (int) profile.maxRate() / 1000),
+                System.nanoTime());
+        this.profile = profile;
+        this.workerThreads = workerThreads;
+        this.threadFactory = threadFactory;
+    }
+
+    public double getTargetRate() {
+        return bucket.getRate();
+    }
+
+    /**
+     * Executes the task for the given duration and blocks until all workers have finished. The calling thread
+     * moves the target rate along the load profile meanwhile; past the profile's end it keeps the last rate.
+     *
+     * @param task            Task to perform
+     * @param counter         Counter used to track how many times the task has been executed
+     * @param durationSeconds How many seconds to run for
+     * @param paused          While true, workers stop taking tokens. Paused time is not caught up afterwards.
+     */
+    public void run(Runnable task, AtomicLong counter, int durationSeconds, BooleanSupplier paused)
+            throws InterruptedException {
+        final long startNanos = System.nanoTime();
+        final long endNanos = startNanos + durationSeconds * 1_000_000_000L;
+        final long startCount = counter.get();
+
+        List<Thread> workers = new ArrayList<>(workerThreads);
+        for (int i = 0; i < workerThreads; i++) {
+            Thread worker = threadFactory.newThread(() -> work(task, counter, endNanos, paused));
+            workers.add(worker);
+            worker.start();
+        }
+        double targetCount = 0;
+        for (int second = 0; second < durationSeconds; second++) {
+            String segment = profile.segmentStartingAt(second);
+            if (segment != null && second > 0) {
+                log.info(String.format("Load profile: %s from second %d", segment, second));
+            }
+            bucket.setRate(profile.rateAt(second));
+            targetCount += profile.rateAt(second);
+            long nextSecondNanos = startNanos + (second + 1) * 1_000_000_000L;
+            while (System.nanoTime() < nextSecondNanos) {
+                LockSupport.parkNanos(nextSecondNanos - System.nanoTime());
+            }
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long count = counter.get() - startCount;
+        log.info(String.format("Rate engine finished: %d records in %.1f sec with %d workers, "
+                        + "actual %.0f records/sec, target %.0f records/sec",
+                count, seconds, workerThreads, count / seconds, targetCount / durationSeconds));
+    }
+
+    private void work(Runnable task, AtomicLong counter, long endNanos, BooleanSupplier paused) {
+        while (true) {
+            long now = System.nanoTime();
+            if (now >= endNanos) {
+                return;
+            }
+            if (paused.getAsBoolean()) {
+                LockSupport.parkNanos(PAUSE_NANOS);
+                continue;
+            }
+            long at = bucket.reserve(now);
+            if (at >= endNanos) {
+                return;
+            }
+            waitUntil(at);
+
+            counter.getAndIncrement();
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("Error running task", e);
+                System.exit(1);
+            }
+        }
+    }
+
+    static void waitUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            if (remaining > SPIN_THRESHOLD_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
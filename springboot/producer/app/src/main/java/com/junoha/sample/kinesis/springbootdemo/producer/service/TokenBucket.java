@@ -0,0 +1,55 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket shared by the producer workers, implemented as GCRA (generic cell rate algorithm).
+ * <p>
+ * Instead of counting tokens, the bucket keeps the theoretical arrival time of the next token. Reserving a
+ * token moves it forward by one interval, so workers are spread evenly over time rather than released in
+ * bursts every tick. After an idle period up to {@code burst} tokens are available at once.
+ */
+public class TokenBucket {
+
+    private final AtomicLong theoreticalArrivalNanos;
+    private final int burst;
+    private volatile long intervalNanos;
+
+    public TokenBucket(double ratePerSecond, int burst, long nowNanos) {
+        if (burst <= 0) {
+            throw new IllegalArgumentException("Burst should be a positive integer");
+        }
+        this.burst = burst;
+        setRate(ratePerSecond);
+        this.theoreticalArrivalNanos = new AtomicLong(nowNanos);
+    }
+
+    public void setRate(double ratePerSecond) {
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("Rate should be positive");
+        }
+        intervalNanos = Math.max(1, (long) (1e9 / ratePerSecond));
+    }
+
+    public double getRate() {
+        return 1e9 / intervalNanos;
+    }
+
+    /**
+     * Reserves one token.
+     *
+     * @param nowNanos System.nanoTime()
+     * @return System.nanoTime() at which the token may be used; may be in the past
+     */
+    public long reserve(long nowNanos) {
+        long interval = intervalNanos;
+        long earliest = nowNanos - (burst - 1) * interval;
+        while (true) {
+            long arrival = theoreticalArrivalNanos.get();
+            long start = Math.max(arrival, earliest);
+            if (theoreticalArrivalNanos.compareAndSet(arrival, start + interval)) {
+                return start;
+            }
+        }
+    }
+}
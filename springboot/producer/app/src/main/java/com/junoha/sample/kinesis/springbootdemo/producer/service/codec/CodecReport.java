@@ -0,0 +1,53 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.codec;
+
+import com.junoha.sample.kinesis.springbootdemo.producer.model.Person;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Compares the payload formats on the same Person records: bytes per record, encode and decode time per record,
+ * and how many records fit in the 1 MB/sec a shard accepts.
+ */
+public class CodecReport {
+
+    private static final Logger log = LoggerFactory.getLogger(CodecReport.class);
+
+    private static final int SHARD_BYTES_PER_SECOND = 1024 * 1024;
+    private static final int ROUNDS = 10;
+
+    private CodecReport() {
+    }
+
+    public static void log(List<Person> persons) {
+        log.info(String.format("Payload formats over %d records (shard-MB: records per 1 MB of payload)", persons.size()));
+        for (PayloadFormat format : PayloadFormat.values()) {
+            PersonCodec codec = new PersonCodec(format);
+            byte[][] encoded = new byte[persons.size()][];
+            long bytes = 0;
+            long encodeNanos = Long.MAX_VALUE;
+            long decodeNanos = Long.MAX_VALUE;
+            // Best of several rounds, the first ones run before JIT compilation
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < persons.size(); i++) {
+                    encoded[i] = codec.encode(persons.get(i));
+                }
+                encodeNanos = Math.min(encodeNanos, System.nanoTime() - start);
+                start = System.nanoTime();
+                for (byte[] record : encoded) {
+                    codec.decode(record);
+                }
+                decodeNanos = Math.min(decodeNanos, System.nanoTime() - start);
+            }
+            for (byte[] record : encoded) {
+                bytes += record.length;
+            }
+            double bytesPerRecord = (double) bytes / persons.size();
+            log.info(String.format("%-5s %7.1f bytes/record, encode %6.0f ns/record, decode %6.0f ns/record, %6.0f records/shard-MB",
+                    format.formatName(), bytesPerRecord, (double) encodeNanos / persons.size(),
+                    (double) decodeNanos / persons.size(), SHARD_BYTES_PER_SECOND / bytesPerRecord));
+        }
+    }
+}
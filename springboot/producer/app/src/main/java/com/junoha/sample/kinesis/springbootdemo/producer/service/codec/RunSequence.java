@@ -0,0 +1,44 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.codec;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Numbers the records of one producer run 0, 1, 2, ... under a random run id, so that the consumer can find
+ * lost and duplicated records. Thread safe.
+ *
+ * @see PersonCodec#header(PayloadFormat, RunSequence)
+ */
+public class RunSequence {
+
+    private final long runId;
+    private final AtomicLong next = new AtomicLong(0);
+
+    public RunSequence(long runId) {
+        this.runId = runId;
+    }
+
+    public static RunSequence random() {
+        return new RunSequence(new SecureRandom().nextLong());
+    }
+
+    public long runId() {
+        return runId;
+    }
+
+    public long next() {
+        return next.getAndIncrement();
+    }
+
+    /**
+     * How many sequence numbers have been handed out.
+     */
+    public long count() {
+        return next.get();
+    }
+
+    @Override
+    public String toString() {
+        return Long.toHexString(runId);
+    }
+}
@@ -0,0 +1,61 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.engine;
+
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.services.kinesis.producer.KinesisProducer;
+import com.amazonaws.services.kinesis.producer.KinesisProducerConfiguration;
+import com.amazonaws.services.kinesis.producer.UserRecord;
+import com.amazonaws.services.kinesis.producer.UserRecordResult;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * KPL, with its native child process.
+ */
+public class KplProducerEngine implements ProducerEngine {
+
+    private final KinesisProducer producer;
+
+    public KplProducerEngine(String region) {
+        KinesisProducerConfiguration config = new KinesisProducerConfiguration()
+                .setRegion(region)
+                .setCredentialsProvider(new DefaultAWSCredentialsProviderChain());
+        this.producer = new KinesisProducer(config);
+    }
+
+    /**
+     * For KPL's own metrics.
+     */
+    public KinesisProducer getKinesisProducer() {
+        return producer;
+    }
+
+    @Override
+    public ListenableFuture<UserRecordResult> addUserRecord(UserRecord userRecord) {
+        return producer.addUserRecord(userRecord);
+    }
+
+    @Override
+    public long getOutstandingRecordsCount() {
+        return producer.getOutstandingRecordsCount();
+    }
+
+    @Override
+    public long getOldestRecordTimeInMillis() {
+        return producer.getOldestRecordTimeInMillis();
+    }
+
+    @Override
+    public void flush() {
+        producer.flush();
+    }
+
+    @Override
+    public void flushSync() {
+        producer.flushSync();
+    }
+
+    @Override
+    public void destroy() {
+        // This kills the child process and shuts down the threads managing it.
+        producer.destroy();
+    }
+}
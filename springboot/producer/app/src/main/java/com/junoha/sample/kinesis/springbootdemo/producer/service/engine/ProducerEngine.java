@@ -0,0 +1,48 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.engine;
+
+import com.amazonaws.services.kinesis.producer.UserRecord;
+import com.amazonaws.services.kinesis.producer.UserRecordResult;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Puts user records to Kinesis. Implemented by KPL ({@link KplProducerEngine}) and by a pure Java engine on the
+ * AWS SDK async client ({@link SdkProducerEngine}), so the producer code and its callbacks do not depend on which
+ * one is used. Both complete futures with KPL's UserRecordResult, or fail them with UserRecordFailedException.
+ */
+public interface ProducerEngine {
+
+    ListenableFuture<UserRecordResult> addUserRecord(UserRecord userRecord);
+
+    /**
+     * Records added but not completed yet.
+     */
+    long getOutstandingRecordsCount();
+
+    /**
+     * Age of the oldest outstanding record in millis.
+     */
+    long getOldestRecordTimeInMillis();
+
+    /**
+     * Sends buffered records without waiting for them.
+     */
+    void flush();
+
+    /**
+     * Sends buffered records and waits until all records have completed.
+     */
+    void flushSync();
+
+    void destroy();
+
+    /**
+     * "kpl" or "sdk".
+     */
+    static ProducerEngine of(String name, String region, String streamName, SdkProducerEngine.Config sdkConfig) {
+        return switch (name) {
+            case "kpl" -> new KplProducerEngine(region);
+            case "sdk" -> new SdkProducerEngine(region, streamName, sdkConfig);
+            default -> throw new IllegalArgumentException("Invalid producer engine: " + name);
+        };
+    }
+}
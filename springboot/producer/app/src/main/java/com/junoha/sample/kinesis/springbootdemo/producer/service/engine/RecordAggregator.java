@@ -0,0 +1,194 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packs user records into one Kinesis record in the KPL aggregation format, so that KCL deaggregates them.
+ * <p>
+ * Layout: magic bytes, AggregatedRecord protobuf message, MD5 of the message.
+ * https://github.com/awslabs/amazon-kinesis-producer/blob/master/aggregation-format.md
+ * <pre>
+ * message AggregatedRecord {
+ *   repeated string partition_key_table = 1;
+ *   repeated string explicit_hash_key_table = 2;
+ *   repeated Record records = 3;
+ * }
+ * message Record {
+ *   required uint64 partition_key_index = 1;
+ *   optional uint64 explicit_hash_key_index = 2;
+ *   required bytes data = 3;
+ * }
+ * </pre>
+ * The protobuf message is written by hand, so no protobuf runtime is needed. All user records of an aggregate
+ * must map to the same shard, because KCL drops user records whose hash key is outside the shard it reads.
+ * Not thread safe.
+ */
+public class RecordAggregator {
+
+    static final byte[] MAGIC = {(byte) 0xF3, (byte) 0x89, (byte) 0x9A, (byte) 0xC2};
+    private static final int MD5_LENGTH = 16;
+    // Field tags: (field number << 3) | wire type
+    private static final int PARTITION_KEY_TABLE_TAG = (1 << 3) | 2;
+    private static final int RECORDS_TAG = (3 << 3) | 2;
+    private static final int PARTITION_KEY_INDEX_TAG = 1 << 3;
+    private static final int DATA_TAG = (3 << 3) | 2;
+
+    // MessageDigest.getInstance is too slow to call for every record
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final int maxBytes;
+    private final Map<String, Integer> partitionKeyIndex = new HashMap<>();
+    private final List<byte[]> partitionKeys = new ArrayList<>();
+    private final List<Integer> keyIndexes = new ArrayList<>();
+    private final List<ByteBuffer> data = new ArrayList<>();
+    private int messageBytes = 0;
+
+    /**
+     * @param maxBytes Maximum size of the aggregated record, including its partition key
+     */
+    public RecordAggregator(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Adds a user record unless the aggregate would exceed the maximum size. An empty aggregate always accepts
+     * the record.
+     *
+     * @return false if the record does not fit
+     */
+    public boolean add(String partitionKey, ByteBuffer userData) {
+        Integer index = partitionKeyIndex.get(partitionKey);
+        byte[] newKey = null;
+        int bytes = 0;
+        if (index == null) {
+            newKey = partitionKey.getBytes(StandardCharsets.UTF_8);
+            index = partitionKeys.size();
+            bytes += fieldSize(newKey.length);
+        }
+        bytes += fieldSize(recordSize(index, userData.remaining()));
+
+        if (!data.isEmpty() && sizeWith(messageBytes + bytes) > maxBytes) {
+            return false;
+        }
+        if (newKey != null) {
+            partitionKeyIndex.put(partitionKey, index);
+            partitionKeys.add(newKey);
+        }
+        keyIndexes.add(index);
+        data.add(userData.duplicate());
+        messageBytes += bytes;
+        return true;
+    }
+
+    public int count() {
+        return data.size();
+    }
+
+    /**
+     * Size of the Kinesis record built so far, data and partition key, as counted against the PutRecords limits.
+     */
+    public int size() {
+        if (data.size() == 1) {
+            return data.get(0).remaining() + partitionKeys.get(0).length;
+        }
+        return sizeWith(messageBytes);
+    }
+
+    /**
+     * The partition key of the Kinesis record: the first user record's.
+     */
+    public String partitionKey() {
+        return new String(partitionKeys.get(0), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A single user record is sent as is, like KPL does.
+     */
+    public byte[] build() {
+        if (data.size() == 1) {
+            ByteBuffer single = data.get(0).duplicate();
+            byte[] bytes = new byte[single.remaining()];
+            single.get(bytes);
+            return bytes;
+        }
+        byte[] record = new byte[MAGIC.length + messageBytes + MD5_LENGTH];
+        ByteBuffer out = ByteBuffer.wrap(record);
+        out.put(MAGIC);
+        for (byte[] key : partitionKeys) {
+            writeVarint(out, PARTITION_KEY_TABLE_TAG);
+            writeVarint(out, key.length);
+            out.put(key);
+        }
+        for (int i = 0; i < data.size(); i++) {
+            ByteBuffer userData = data.get(i).duplicate();
+            writeVarint(out, RECORDS_TAG);
+            writeVarint(out, recordSize(keyIndexes.get(i), userData.remaining()));
+            writeVarint(out, PARTITION_KEY_INDEX_TAG);
+            writeVarint(out, keyIndexes.get(i));
+            writeVarint(out, DATA_TAG);
+            writeVarint(out, userData.remaining());
+            out.put(userData);
+        }
+        out.put(md5(record, MAGIC.length, messageBytes));
+        return record;
+    }
+
+    public void clear() {
+        partitionKeyIndex.clear();
+        partitionKeys.clear();
+        keyIndexes.clear();
+        data.clear();
+        messageBytes = 0;
+    }
+
+    private int sizeWith(int message) {
+        return MAGIC.length + message + MD5_LENGTH + partitionKeys.get(0).length;
+    }
+
+    private static int recordSize(int keyIndex, int dataLength) {
+        return 1 + varintSize(keyIndex) + fieldSize(dataLength);
+    }
+
+    /**
+     * Tag, length and bytes of a length-delimited field.
+     */
+    private static int fieldSize(int length) {
+        return 1 + varintSize(length) + length;
+    }
+
+    static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static void writeVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static byte[] md5(byte[] bytes, int offset, int length) {
+        MessageDigest md5 = MD5.get();
+        md5.update(bytes, offset, length);
+        return md5.digest();
+    }
+}
@@ -0,0 +1,320 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.engine;
+
+import com.amazonaws.services.kinesis.producer.Attempt;
+import com.amazonaws.services.kinesis.producer.UserRecord;
+import com.amazonaws.services.kinesis.producer.UserRecordFailedException;
+import com.amazonaws.services.kinesis.producer.UserRecordResult;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResultEntry;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pure Java producer on the AWS SDK async client, without the KPL child process.
+ * <p>
+ * A single flusher thread collects the records added during the last maxBufferedTimeMillis, aggregates the
+ * records of each predicted shard with {@link RecordAggregator}, and sends them with PutRecords in requests of
+ * at most 500 records and 5 MB. At most maxConcurrentRequests requests are in flight; beyond that the flusher
+ * waits, so the outstanding record count grows and backpressure kicks in.
+ * <p>
+ * Records that PutRecords rejects (e.g. ProvisionedThroughputExceededException) are retried individually on
+ * the next flush, until they are older than the record TTL, as in KPL. Every attempt is reported in the
+ * UserRecordResult.
+ */
+public class SdkProducerEngine implements ProducerEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(SdkProducerEngine.class);
+
+    // PutRecords limits
+    private static final int MAX_RECORDS_PER_REQUEST = 500;
+    private static final int MAX_BYTES_PER_REQUEST = 5 * 1024 * 1024;
+    // KPL defaults
+    private static final int AGGREGATION_MAX_BYTES = 51200;
+    private static final long RECORD_TTL_MILLIS = 30000;
+
+    public static final class Config {
+        private final long maxBufferedTimeMillis;
+        private final int maxConcurrentRequests;
+        private final boolean aggregation;
+
+        /**
+         * @param maxBufferedTimeMillis Time a record may wait to be sent, like KPL's RecordMaxBufferedTime
+         * @param aggregation           Pack the records of a shard into KPL aggregated records
+         */
+        public Config(long maxBufferedTimeMillis, int maxConcurrentRequests, boolean aggregation) {
+            if (maxBufferedTimeMillis <= 0 || maxConcurrentRequests <= 0) {
+                throw new IllegalArgumentException("Buffered time and concurrent requests should be positive integers");
+            }
+            this.maxBufferedTimeMillis = maxBufferedTimeMillis;
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            this.aggregation = aggregation;
+        }
+    }
+
+    private static final class Pending {
+        private final String partitionKey;
+        private final ByteBuffer data;
+        private final long arrivalMillis;
+        private final SettableFuture<UserRecordResult> future = SettableFuture.create();
+        private final List<Attempt> attempts = new ArrayList<>(1);
+        private long lastAttemptEndMillis;
+
+        private Pending(UserRecord userRecord, long arrivalMillis) {
+            this.partitionKey = userRecord.getPartitionKey();
+            this.data = userRecord.getData().duplicate();
+            this.arrivalMillis = arrivalMillis;
+            this.lastAttemptEndMillis = arrivalMillis;
+        }
+    }
+
+    /**
+     * One PutRecords request; entry i carries the user records in group i.
+     */
+    private static final class Batch {
+        private final List<PutRecordsRequestEntry> entries = new ArrayList<>();
+        private final List<List<Pending>> groups = new ArrayList<>();
+        private final List<String> predictedShardIds = new ArrayList<>();
+        private long bytes = 0;
+        private long oldestArrivalMillis = Long.MAX_VALUE;
+    }
+
+    private final KinesisAsyncClient client;
+    private final String streamName;
+    private final Config config;
+    private final Semaphore inFlightRequests;
+    private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final Set<Batch> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicLong outstanding = new AtomicLong(0);
+    private final Thread flusher;
+
+    private volatile ShardMap shardMap;
+    private volatile boolean refreshShardMap = false;
+    private volatile boolean running = true;
+
+    public SdkProducerEngine(String region, String streamName, Config config) {
+        this(KinesisAsyncClient.builder().region(Region.of(region)).build(), streamName, config);
+    }
+
+    public SdkProducerEngine(KinesisAsyncClient client, String streamName, Config config) {
+        this.client = client;
+        this.streamName = streamName;
+        this.config = config;
+        this.inFlightRequests = new Semaphore(config.maxConcurrentRequests);
+        this.shardMap = ShardMap.load(client, streamName);
+        log.info(String.format("SDK producer engine: %d open shards, buffered time %d ms, %d concurrent requests, aggregation %s",
+                shardMap.size(), config.maxBufferedTimeMillis, config.maxConcurrentRequests, config.aggregation));
+        this.flusher = new Thread(this::flushLoop, "sdk-producer-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    @Override
+    public ListenableFuture<UserRecordResult> addUserRecord(UserRecord userRecord) {
+        Pending pending = new Pending(userRecord, System.currentTimeMillis());
+        outstanding.incrementAndGet();
+        queue.add(pending);
+        return pending.future;
+    }
+
+    @Override
+    public long getOutstandingRecordsCount() {
+        return outstanding.get();
+    }
+
+    @Override
+    public long getOldestRecordTimeInMillis() {
+        long oldest = Long.MAX_VALUE;
+        Pending head = queue.peek();
+        if (head != null) {
+            oldest = head.arrivalMillis;
+        }
+        for (Batch batch : inFlight) {
+            oldest = Math.min(oldest, batch.oldestArrivalMillis);
+        }
+        return oldest == Long.MAX_VALUE ? 0 : System.currentTimeMillis() - oldest;
+    }
+
+    @Override
+    public void flush() {
+        LockSupport.unpark(flusher);
+    }
+
+    @Override
+    public void flushSync() {
+        while (outstanding.get() > 0) {
+            flush();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        client.close();
+    }
+
+    private void flushLoop() {
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(config.maxBufferedTimeMillis));
+            if (refreshShardMap) {
+                refreshShardMap = false;
+                try {
+                    shardMap = ShardMap.load(client, streamName);
+                    log.info(String.format("Reloaded shard map, %d open shards", shardMap.size()));
+                } catch (RuntimeException e) {
+                    log.warn("Could not reload shard map", e);
+                }
+            }
+            try {
+                sendQueued();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Groups the queued records by predicted shard, aggregates them and sends them.
+     */
+    private void sendQueued() throws InterruptedException {
+        Map<String, List<Pending>> byShard = new HashMap<>();
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            byShard.computeIfAbsent(shardMap.shardId(pending.partitionKey), k -> new ArrayList<>()).add(pending);
+        }
+        if (byShard.isEmpty()) {
+            return;
+        }
+        Batch batch = new Batch();
+        RecordAggregator aggregator = new RecordAggregator(config.aggregation ? AGGREGATION_MAX_BYTES : 0);
+        for (Map.Entry<String, List<Pending>> shard : byShard.entrySet()) {
+            List<Pending> group = new ArrayList<>();
+            for (Pending p : shard.getValue()) {
+                if (!aggregator.add(p.partitionKey, p.data)) {
+                    batch = addEntry(batch, shard.getKey(), aggregator, group);
+                    group = new ArrayList<>();
+                    aggregator.add(p.partitionKey, p.data);
+                }
+                group.add(p);
+            }
+            batch = addEntry(batch, shard.getKey(), aggregator, group);
+        }
+        if (!batch.entries.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    /**
+     * Adds the aggregated record to the batch, first sending the batch if it is full.
+     *
+     * @return the batch to continue with
+     */
+    private Batch addEntry(Batch batch, String shardId, RecordAggregator aggregator, List<Pending> group)
+            throws InterruptedException {
+        int size = aggregator.size();
+        if (batch.entries.size() >= MAX_RECORDS_PER_REQUEST || batch.bytes + size > MAX_BYTES_PER_REQUEST) {
+            send(batch);
+            batch = new Batch();
+        }
+        batch.entries.add(PutRecordsRequestEntry.builder()
+                .partitionKey(aggregator.partitionKey())
+                .data(SdkBytes.fromByteArray(aggregator.build()))
+                .build());
+        batch.groups.add(group);
+        batch.predictedShardIds.add(shardId);
+        batch.bytes += size;
+        for (Pending p : group) {
+            batch.oldestArrivalMillis = Math.min(batch.oldestArrivalMillis, p.arrivalMillis);
+        }
+        aggregator.clear();
+        return batch;
+    }
+
+    private void send(Batch batch) throws InterruptedException {
+        inFlightRequests.acquire();
+        inFlight.add(batch);
+        long sentMillis = System.currentTimeMillis();
+        PutRecordsRequest request = PutRecordsRequest.builder()
+                .streamName(streamName)
+                .records(batch.entries)
+                .build();
+        client.putRecords(request).whenComplete((response, error) -> {
+            try {
+                complete(batch, sentMillis, response, error);
+            } finally {
+                inFlight.remove(batch);
+                inFlightRequests.release();
+            }
+        });
+    }
+
+    private void complete(Batch batch, long sentMillis, PutRecordsResponse response, Throwable error) {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < batch.groups.size(); i++) {
+            List<Pending> group = batch.groups.get(i);
+            if (error != null) {
+                String cause = error.getCause() != null ? error.getCause().toString() : error.toString();
+                retry(group, sentMillis, now, "Exception", cause);
+                continue;
+            }
+            PutRecordsResultEntry result = response.records().get(i);
+            if (result.errorCode() != null) {
+                retry(group, sentMillis, now, result.errorCode(), result.errorMessage());
+                continue;
+            }
+            if (!result.shardId().equals(batch.predictedShardIds.get(i))) {
+                // Resharded, records of this aggregate may not all belong to the shard any more
+                refreshShardMap = true;
+            }
+            for (Pending p : group) {
+                p.attempts.add(new Attempt((int) (sentMillis - p.lastAttemptEndMillis), (int) (now - sentMillis),
+                        "", "", true));
+                outstanding.decrementAndGet();
+                p.future.set(new UserRecordResult(p.attempts, result.sequenceNumber(), result.shardId(), true));
+            }
+        }
+    }
+
+    private void retry(List<Pending> group, long sentMillis, long now, String errorCode, String errorMessage) {
+        for (Pending p : group) {
+            p.attempts.add(new Attempt((int) (sentMillis - p.lastAttemptEndMillis), (int) (now - sentMillis),
+                    errorMessage, errorCode, false));
+            p.lastAttemptEndMillis = now;
+            if (now - p.arrivalMillis >= RECORD_TTL_MILLIS || !running) {
+                outstanding.decrementAndGet();
+                p.future.setException(new UserRecordFailedException(
+                        new UserRecordResult(p.attempts, null, null, false)));
+            } else {
+                queue.add(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.engine;
+
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.model.ListShardsRequest;
+import software.amazon.awssdk.services.kinesis.model.ListShardsResponse;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Hash key ranges of the open shards of a stream, to predict which shard a partition key goes to.
+ * As in Kinesis, the hash key is the MD5 of the partition key as an unsigned 128 bit integer.
+ */
+public class ShardMap {
+
+    private final String[] shardIds;
+    private final BigInteger[] startingHashKeys;
+
+    private ShardMap(List<Shard> openShards) {
+        openShards.sort(Comparator.comparing(s -> new BigInteger(s.hashKeyRange().startingHashKey())));
+        this.shardIds = new String[openShards.size()];
+        this.startingHashKeys = new BigInteger[openShards.size()];
+        for (int i = 0; i < openShards.size(); i++) {
+            shardIds[i] = openShards.get(i).shardId();
+            startingHashKeys[i] = new BigInteger(openShards.get(i).hashKeyRange().startingHashKey());
+        }
+    }
+
+    public static ShardMap load(KinesisAsyncClient client, String streamName) {
+        List<Shard> openShards = new ArrayList<>();
+        String nextToken = null;
+        do {
+            // The stream name must not be set together with a next token
+            ListShardsRequest request = nextToken == null
+                    ? ListShardsRequest.builder().streamName(streamName).build()
+                    : ListShardsRequest.builder().nextToken(nextToken).build();
+            ListShardsResponse response = client.listShards(request).join();
+            for (Shard shard : response.shards()) {
+                if (shard.sequenceNumberRange().endingSequenceNumber() == null) {
+                    openShards.add(shard);
+                }
+            }
+            nextToken = response.nextToken();
+        } while (nextToken != null);
+        if (openShards.isEmpty()) {
+            throw new IllegalStateException("No open shards in stream " + streamName);
+        }
+        return new ShardMap(openShards);
+    }
+
+    public int size() {
+        return shardIds.length;
+    }
+
+    public String shardId(String partitionKey) {
+        byte[] key = partitionKey.getBytes(StandardCharsets.UTF_8);
+        BigInteger hashKey = new BigInteger(1, RecordAggregator.md5(key, 0, key.length));
+        int low = 0;
+        int high = startingHashKeys.length - 1;
+        // Last shard whose starting hash key is <= hashKey
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (startingHashKeys[mid].compareTo(hashKey) <= 0) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return shardIds[low];
+    }
+}
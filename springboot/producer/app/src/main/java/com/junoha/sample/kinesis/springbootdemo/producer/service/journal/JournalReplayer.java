@@ -0,0 +1,232 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.journal;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Spills records that failed to put into a {@link SpillJournal} and resubmits them from a background thread.
+ * <p>
+ * A spilled record is replayed after an exponential backoff with jitter, based on how many times it has
+ * already been replayed. Once the retry budget is used up, or when the journal is full, the record is counted
+ * as a permanent failure and dropped.
+ */
+public class JournalReplayer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(JournalReplayer.class);
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long FORCE_INTERVAL_MILLIS = 1000;
+
+    private final SpillJournal journal;
+    private final int retryBudget;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final BooleanSupplier paused;
+    private final Thread thread;
+
+    private final LongAdder spilledRecords = new LongAdder();
+    private final LongAdder replayedRecords = new LongAdder();
+    private final LongAdder permanentFailures = new LongAdder();
+
+    private volatile boolean running = true;
+    private Consumer<SpillJournal.Entry> resubmit;
+
+    /**
+     * @param retryBudget Number of times a record is replayed before it is dropped
+     * @param paused      Replay is held back while this returns true, e.g. while KPL is over its limits
+     */
+    public JournalReplayer(SpillJournal journal, int retryBudget, long baseBackoffMillis, long maxBackoffMillis,
+                           BooleanSupplier paused) {
+        this.journal = journal;
+        this.retryBudget = retryBudget;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.paused = paused;
+        this.thread = new Thread(this::replayLoop, "journal-replayer");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts replaying, including records left in the journal by a previous run.
+     *
+     * @param resubmit Puts the record again; a failure must come back through {@link #spill}
+     *                 with the entry's retry count plus one
+     */
+    public void start(Consumer<SpillJournal.Entry> resubmit) {
+        this.resubmit = resubmit;
+        thread.start();
+    }
+
+    /**
+     * Records a failed put. Safe to call from any thread.
+     *
+     * @param retryCount Number of times the record has already been replayed
+     */
+    public void spill(String partitionKey, ByteBuffer data, int retryCount) {
+        if (retryCount >= retryBudget) {
+            permanentFailures.increment();
+            log.error(String.format("Dropping record with partition key %s after %d replays",
+                    partitionKey, retryCount));
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!journal.append(partitionKey, data, retryCount, now, now + backoffMillis(retryCount))) {
+            permanentFailures.increment();
+            log.error(String.format("Journal is full, dropping record with partition key %s", partitionKey));
+            return;
+        }
+        spilledRecords.increment();
+    }
+
+    /**
+     * Exponential backoff with jitter: a random delay between half and all of base * 2^retryCount,
+     * capped at the maximum.
+     */
+    long backoffMillis(int retryCount) {
+        long backoff = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(retryCount, 20));
+        return ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+    }
+
+    private void replayLoop() {
+        long lastForceMillis = System.currentTimeMillis();
+        while (running) {
+            long now = System.currentTimeMillis();
+            if (now - lastForceMillis >= FORCE_INTERVAL_MILLIS) {
+                journal.force();
+                lastForceMillis = now;
+            }
+            long notBefore = journal.headNotBeforeMillis();
+            if (notBefore < 0 || paused.getAsBoolean()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            if (notBefore > now) {
+                LockSupport.parkNanos(Math.min(IDLE_PARK_NANOS, TimeUnit.MILLISECONDS.toNanos(notBefore - now)));
+                continue;
+            }
+            try {
+                replayHead();
+            } catch (RuntimeException e) {
+                // Keeps the thread alive, or nothing would be replayed until the next run
+                log.error("Exception in the replay loop", e);
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private void replayHead() {
+        SpillJournal.Entry entry = journal.peek();
+        if (entry == null) {
+            return;
+        }
+        try {
+            resubmit.accept(entry);
+        } catch (RuntimeException e) {
+            log.error("Exception during replay", e);
+            spill(entry.getPartitionKey(), entry.getData(), entry.getRetryCount() + 1);
+        }
+        // Removed only after the record has been handed over, so a crash in between replays it again
+        journal.remove(entry);
+        replayedRecords.increment();
+    }
+
+    /**
+     * Waits until the journal is empty and the given condition holds, or the timeout elapses.
+     *
+     * @param idle e.g. KPL has no outstanding records, so no more failures can be spilled
+     * @return true if the journal was drained
+     */
+    public boolean awaitDrained(BooleanSupplier idle, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (journal.pendingRecords() > 0 || !idle.getAsBoolean()) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(100);
+        }
+        return true;
+    }
+
+    public long getSpilledRecords() {
+        return spilledRecords.sum();
+    }
+
+    public long getReplayedRecords() {
+        return replayedRecords.sum();
+    }
+
+    public long getPermanentFailures() {
+        return permanentFailures.sum();
+    }
+
+    public int getPendingRecords() {
+        return journal.pendingRecords();
+    }
+
+    public int getPendingBytes() {
+        return journal.size();
+    }
+
+    public long getReplayLagMillis() {
+        return journal.replayLagMillis(System.currentTimeMillis());
+    }
+
+    public String summary() {
+        return String.format("Journal pending %d records (%d bytes), replay lag %d ms, "
+                        + "spilled %d, replayed %d, permanently failed %d",
+                getPendingRecords(), getPendingBytes(), getReplayLagMillis(),
+                getSpilledRecords(), getReplayedRecords(), getPermanentFailures());
+    }
+
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("kpl.producer.journal.records", this, JournalReplayer::getPendingRecords)
+                .register(registry);
+        Gauge.builder("kpl.producer.journal.bytes", this, JournalReplayer::getPendingBytes)
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("kpl.producer.journal.replay.lag", this, JournalReplayer::getReplayLagMillis)
+                .baseUnit("milliseconds")
+                .register(registry);
+        FunctionCounter.builder("kpl.producer.journal.spilled", this, JournalReplayer::getSpilledRecords)
+                .register(registry);
+        FunctionCounter.builder("kpl.producer.journal.replayed", this, JournalReplayer::getReplayedRecords)
+                .register(registry);
+        FunctionCounter.builder("kpl.producer.journal.permanent.failures", this, JournalReplayer::getPermanentFailures)
+                .register(registry);
+    }
+
+    /**
+     * Stops replaying and closes the journal. Pending records stay in the file for the next run. If interrupted while
+     * waiting for the replay thread, the journal is left open, as the thread may still be using it, and the interrupt
+     * flag is set again.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while stopping the journal replay, leaving the journal open");
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only journal of records that failed to put, backed by a memory-mapped file.
+ * <p>
+ * The file starts with the write and read positions, followed by entries:
+ * length, appended at (epoch millis), not before (epoch millis), retry count, partition key length,
+ * partition key, data. Entries between the read and write positions are pending; since the positions live in
+ * the mapped file, pending entries survive a restart of the producer and are replayed on the next run.
+ * <p>
+ * When the journal runs out of space, the pending entries are moved to the start of the file. If it is still
+ * full the record is rejected. All methods are synchronized.
+ */
+public class SpillJournal implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SpillJournal.class);
+
+    private static final int WRITE_POS_OFFSET = 0;
+    private static final int READ_POS_OFFSET = 4;
+    private static final int COUNT_OFFSET = 8;
+    private static final int HEADER_SIZE = 12;
+    // appendedAt, notBefore, retryCount, partitionKey length
+    private static final int ENTRY_HEADER_SIZE = 8 + 8 + 4 + 4;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    // Entries removed since the journal was opened; identifies the head, which compaction moves
+    private long removedRecords = 0;
+
+    /**
+     * Opens the journal, creating it if it does not exist.
+     *
+     * @param maxBytes Size of the journal file. An existing larger file keeps its size.
+     */
+    public SpillJournal(Path path, int maxBytes) {
+        try {
+            boolean exists = Files.exists(path) && Files.size(path) >= HEADER_SIZE;
+            channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            capacity = (int) Math.max(maxBytes, channel.size());
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            if (!exists) {
+                setPositions(HEADER_SIZE, HEADER_SIZE, 0);
+            } else if (size() > 0) {
+                log.info(String.format("Journal %s has %d pending records (%d bytes) from a previous run",
+                        path, pendingRecords(), size()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static final class Entry {
+        private final long index;
+        private final int length;
+        private final long appendedAtMillis;
+        private final int retryCount;
+        private final String partitionKey;
+        private final ByteBuffer data;
+
+        private Entry(long index, int length, long appendedAtMillis, int retryCount, String partitionKey,
+                      ByteBuffer data) {
+            this.index = index;
+            this.length = length;
+            this.appendedAtMillis = appendedAtMillis;
+            this.retryCount = retryCount;
+            this.partitionKey = partitionKey;
+            this.data = data;
+        }
+
+        public long getAppendedAtMillis() {
+            return appendedAtMillis;
+        }
+
+        public int getRetryCount() {
+            return retryCount;
+        }
+
+        public String getPartitionKey() {
+            return partitionKey;
+        }
+
+        /**
+         * Copy of the record data, independent of the journal file.
+         */
+        public ByteBuffer getData() {
+            return data;
+        }
+    }
+
+    /**
+     * @param notBeforeMillis Epoch millis before which the record must not be replayed
+     * @return false if the journal is full
+     */
+    public synchronized boolean append(String partitionKey, ByteBuffer data, int retryCount,
+                                       long appendedAtMillis, long notBeforeMillis) {
+        byte[] key = partitionKey.getBytes(StandardCharsets.UTF_8);
+        int length = ENTRY_HEADER_SIZE + key.length + data.remaining();
+        if (writePos() + 4 + length > capacity) {
+            compact();
+            if (writePos() + 4 + length > capacity) {
+                return false;
+            }
+        }
+        ByteBuffer entry = buffer.duplicate();
+        entry.position(writePos());
+        entry.putInt(length)
+                .putLong(appendedAtMillis)
+                .putLong(notBeforeMillis)
+                .putInt(retryCount)
+                .putInt(key.length)
+                .put(key)
+                .put(data.duplicate());
+        setPositions(entry.position(), readPos(), pendingRecords() + 1);
+        return true;
+    }
+
+    /**
+     * @return epoch millis at which the oldest pending record may be replayed, or -1 if there is none
+     */
+    public synchronized long headNotBeforeMillis() {
+        if (size() == 0) {
+            return -1;
+        }
+        return buffer.getLong(readPos() + 4 + 8);
+    }
+
+    /**
+     * @return the oldest pending record without removing it, or null if there is none
+     */
+    public synchronized Entry peek() {
+        if (size() == 0) {
+            return null;
+        }
+        ByteBuffer entry = buffer.duplicate();
+        entry.position(readPos());
+        int length = entry.getInt();
+        long appendedAtMillis = entry.getLong();
+        entry.getLong();
+        int retryCount = entry.getInt();
+        byte[] key = new byte[entry.getInt()];
+        entry.get(key);
+        byte[] data = new byte[length - ENTRY_HEADER_SIZE - key.length];
+        entry.get(data);
+        return new Entry(removedRecords, length, appendedAtMillis, retryCount,
+                new String(key, StandardCharsets.UTF_8), ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Removes the entry returned by {@link #peek()}, even if an append compacted the journal in between.
+     */
+    public synchronized void remove(Entry entry) {
+        if (entry.index != removedRecords || size() == 0) {
+            throw new IllegalStateException("Entry is not at the head of the journal");
+        }
+        removedRecords++;
+        int readPos = readPos() + 4 + entry.length;
+        if (readPos == writePos()) {
+            // Empty, start over from the beginning of the file
+            setPositions(HEADER_SIZE, HEADER_SIZE, 0);
+        } else {
+            setPositions(writePos(), readPos, pendingRecords() - 1);
+        }
+    }
+
+    /**
+     * Pending bytes.
+     */
+    public synchronized int size() {
+        return writePos() - readPos();
+    }
+
+    public synchronized int pendingRecords() {
+        return buffer.getInt(COUNT_OFFSET);
+    }
+
+    /**
+     * @return age of the oldest pending record in millis, or 0 if there is none
+     */
+    public synchronized long replayLagMillis(long nowMillis) {
+        if (size() == 0) {
+            return 0;
+        }
+        return nowMillis - buffer.getLong(readPos() + 4);
+    }
+
+    /**
+     * Flushes the mapped file to disk.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private void compact() {
+        int readPos = readPos();
+        if (readPos == HEADER_SIZE) {
+            return;
+        }
+        int size = writePos() - readPos;
+        ByteBuffer pending = buffer.duplicate();
+        pending.position(readPos).limit(readPos + size);
+        ByteBuffer target = buffer.duplicate();
+        target.position(HEADER_SIZE);
+        target.put(pending);
+        setPositions(HEADER_SIZE + size, HEADER_SIZE, pendingRecords());
+    }
+
+    private int writePos() {
+        return buffer.getInt(WRITE_POS_OFFSET);
+    }
+
+    private int readPos() {
+        return buffer.getInt(READ_POS_OFFSET);
+    }
+
+    private void setPositions(int writePos, int readPos, int count) {
+        buffer.putInt(WRITE_POS_OFFSET, writePos);
+        buffer.putInt(READ_POS_OFFSET, readPos);
+        buffer.putInt(COUNT_OFFSET, count);
+    }
+}
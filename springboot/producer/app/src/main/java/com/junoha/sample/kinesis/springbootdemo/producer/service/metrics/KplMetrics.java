@@ -0,0 +1,83 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.metrics;
+
+import com.amazonaws.services.kinesis.producer.KinesisProducer;
+import com.amazonaws.services.kinesis.producer.Metric;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Latest values of KPL's own metrics, fetched with KinesisProducer.getMetrics().
+ * <p>
+ * KPL keeps one metric per dimension combination (stream, shard, error code...). As in the KPL samples,
+ * the entry with a single dimension is the global one.
+ * https://docs.aws.amazon.com/streams/latest/dev/monitoring-with-kpl.html
+ */
+public class KplMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(KplMetrics.class);
+
+    private final KinesisProducer producer;
+
+    private volatile double userRecordsPut;
+    private volatile double bufferingTimeMillis;
+    private volatile double requestTimeMillis;
+
+    public KplMetrics(KinesisProducer producer) {
+        this.producer = producer;
+    }
+
+    /**
+     * Fetches metrics over the last windowSeconds. Blocks on the KPL child process.
+     */
+    public void poll(int windowSeconds) {
+        try {
+            userRecordsPut = global(producer.getMetrics("UserRecordsPut", windowSeconds), Metric::getSum);
+            bufferingTimeMillis = global(producer.getMetrics("BufferingTime", windowSeconds), Metric::getMean);
+            requestTimeMillis = global(producer.getMetrics("RequestTime", windowSeconds), Metric::getMean);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.warn("Could not get KPL metrics", e);
+        }
+    }
+
+    private static double global(List<Metric> metrics, ToDoubleFunction<Metric> value) {
+        for (Metric m : metrics) {
+            if (m.getDimensions().size() == 1 && m.getSampleCount() > 0) {
+                return value.applyAsDouble(m);
+            }
+        }
+        return 0;
+    }
+
+    public double getUserRecordsPut() {
+        return userRecordsPut;
+    }
+
+    public double getBufferingTimeMillis() {
+        return bufferingTimeMillis;
+    }
+
+    public double getRequestTimeMillis() {
+        return requestTimeMillis;
+    }
+
+    public String summary() {
+        return String.format("KPL UserRecordsPut %.0f, BufferingTime %.0f ms, RequestTime %.0f ms",
+                userRecordsPut, bufferingTimeMillis, requestTimeMillis);
+    }
+
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("kpl.user.records.put", this, KplMetrics::getUserRecordsPut).register(registry);
+        Gauge.builder("kpl.buffering.time", this, KplMetrics::getBufferingTimeMillis)
+                .baseUnit("milliseconds").register(registry);
+        Gauge.builder("kpl.request.time", this, KplMetrics::getRequestTimeMillis)
+                .baseUnit("milliseconds").register(registry);
+    }
+}
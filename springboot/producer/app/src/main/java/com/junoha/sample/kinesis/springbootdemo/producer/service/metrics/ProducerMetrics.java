@@ -0,0 +1,98 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Records and bytes submitted to KPL, completed, failed and retried. Updated from the producer workers and
+ * the put callbacks, read by the progress reporter and by Micrometer.
+ */
+public class ProducerMetrics {
+
+    private final LongAdder submittedRecords = new LongAdder();
+    private final LongAdder submittedBytes = new LongAdder();
+    private final LongAdder completedRecords = new LongAdder();
+    private final LongAdder completedBytes = new LongAdder();
+    private final LongAdder failedRecords = new LongAdder();
+    private final LongAdder retriedRecords = new LongAdder();
+
+    private final long[] last = new long[6];
+
+    public void onSubmit(int bytes) {
+        submittedRecords.increment();
+        submittedBytes.add(bytes);
+    }
+
+    /**
+     * A record finished, either successfully put or failed.
+     *
+     * @param attempts UserRecordResult.getAttempts().size(); more than one means KPL retried the record
+     */
+    public void onComplete(int bytes, int attempts, boolean successful) {
+        completedRecords.increment();
+        completedBytes.add(bytes);
+        if (!successful) {
+            failedRecords.increment();
+        }
+        if (attempts > 1) {
+            retriedRecords.increment();
+        }
+    }
+
+    public long getSubmittedRecords() {
+        return submittedRecords.sum();
+    }
+
+    public long getSubmittedBytes() {
+        return submittedBytes.sum();
+    }
+
+    public long getCompletedRecords() {
+        return completedRecords.sum();
+    }
+
+    public long getCompletedBytes() {
+        return completedBytes.sum();
+    }
+
+    public long getFailedRecords() {
+        return failedRecords.sum();
+    }
+
+    public long getRetriedRecords() {
+        return retriedRecords.sum();
+    }
+
+    /**
+     * Rates since the previous call. Called once per second from the progress reporter thread only.
+     */
+    public String intervalSummary(double seconds) {
+        long[] now = {getSubmittedRecords(), getSubmittedBytes(), getCompletedRecords(), getCompletedBytes(),
+                getFailedRecords(), getRetriedRecords()};
+        String summary = String.format(
+                "records/sec submitted %.0f completed %.0f failed %.0f retried %.0f, KB/sec submitted %.1f completed %.1f",
+                (now[0] - last[0]) / seconds, (now[2] - last[2]) / seconds,
+                (now[4] - last[4]) / seconds, (now[5] - last[5]) / seconds,
+                (now[1] - last[1]) / 1024.0 / seconds, (now[3] - last[3]) / 1024.0 / seconds);
+        System.arraycopy(now, 0, last, 0, now.length);
+        return summary;
+    }
+
+    public void bindTo(MeterRegistry registry) {
+        counter(registry, "kpl.producer.records", "submitted", ProducerMetrics::getSubmittedRecords);
+        counter(registry, "kpl.producer.records", "completed", ProducerMetrics::getCompletedRecords);
+        counter(registry, "kpl.producer.records", "failed", ProducerMetrics::getFailedRecords);
+        counter(registry, "kpl.producer.records", "retried", ProducerMetrics::getRetriedRecords);
+        counter(registry, "kpl.producer.bytes", "submitted", ProducerMetrics::getSubmittedBytes);
+        counter(registry, "kpl.producer.bytes", "completed", ProducerMetrics::getCompletedBytes);
+    }
+
+    private void counter(MeterRegistry registry, String name, String state, ToDoubleFunction<ProducerMetrics> f) {
+        FunctionCounter.builder(name, this, f)
+                .tag("state", state)
+                .register(registry);
+    }
+}
@@ -0,0 +1,95 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Put latency (from addUserRecord to completion of its future) and attempts per record, taken from
+ * UserRecordResult. Recording is lock-free and can be done from any callback thread.
+ * <p>
+ * {@link #intervalSummary()} returns the values recorded since its previous call, for the per-second
+ * progress log. {@link #totalSummary()} covers the whole run.
+ */
+public class PutMetrics {
+
+    // Track latencies from 1 us up to 10 minutes with 3 significant digits
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final Recorder latencyRecorder = new Recorder(1, MAX_LATENCY_MICROS, 3);
+    private final Recorder attemptsRecorder = new Recorder(1, 1000, 2);
+    private final Histogram totalLatency = new Histogram(1, MAX_LATENCY_MICROS, 3);
+    private final Histogram totalAttempts = new Histogram(1, 1000, 2);
+
+    private Histogram intervalLatency;
+    private Histogram intervalAttempts;
+
+    private volatile double intervalP50Millis;
+    private volatile double intervalP99Millis;
+    private volatile double intervalP999Millis;
+
+    /**
+     * @param enqueuedNanos System.nanoTime() just before addUserRecord
+     * @param attempts      UserRecordResult.getAttempts().size()
+     */
+    public void record(long enqueuedNanos, int attempts) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - enqueuedNanos);
+        latencyRecorder.recordValue(Math.max(1, Math.min(micros, MAX_LATENCY_MICROS)));
+        attemptsRecorder.recordValue(Math.max(1, Math.min(attempts, 1000)));
+    }
+
+    /**
+     * Percentiles recorded since the previous call. Called from the progress reporter thread only.
+     */
+    public synchronized String intervalSummary() {
+        intervalLatency = latencyRecorder.getIntervalHistogram(intervalLatency);
+        intervalAttempts = attemptsRecorder.getIntervalHistogram(intervalAttempts);
+        totalLatency.add(intervalLatency);
+        totalAttempts.add(intervalAttempts);
+        intervalP50Millis = intervalLatency.getValueAtPercentile(50) / 1000.0;
+        intervalP99Millis = intervalLatency.getValueAtPercentile(99) / 1000.0;
+        intervalP999Millis = intervalLatency.getValueAtPercentile(99.9) / 1000.0;
+        return summary(intervalLatency, intervalAttempts);
+    }
+
+    /**
+     * Percentiles over the whole run, including values not yet picked up by {@link #intervalSummary()}.
+     */
+    public synchronized String totalSummary() {
+        intervalSummary();
+        return summary(totalLatency, totalAttempts);
+    }
+
+    private static String summary(Histogram latency, Histogram attempts) {
+        if (latency.getTotalCount() == 0) {
+            return "latency n/a";
+        }
+        return String.format("latency ms p50 %.1f p99 %.1f p99.9 %.1f max %.1f, attempts mean %.2f max %d",
+                latency.getValueAtPercentile(50) / 1000.0,
+                latency.getValueAtPercentile(99) / 1000.0,
+                latency.getValueAtPercentile(99.9) / 1000.0,
+                latency.getMaxValue() / 1000.0,
+                attempts.getMean(),
+                attempts.getMaxValue());
+    }
+
+    /**
+     * Exposes the percentiles of the latest interval as gauges.
+     */
+    public void bindTo(MeterRegistry registry) {
+        percentile(registry, "0.5", m -> m.intervalP50Millis);
+        percentile(registry, "0.99", m -> m.intervalP99Millis);
+        percentile(registry, "0.999", m -> m.intervalP999Millis);
+    }
+
+    private void percentile(MeterRegistry registry, String percentile, ToDoubleFunction<PutMetrics> f) {
+        Gauge.builder("kpl.producer.put.latency", this, f)
+                .tag("percentile", percentile)
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+}
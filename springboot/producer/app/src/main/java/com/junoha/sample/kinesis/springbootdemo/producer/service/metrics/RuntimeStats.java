@@ -0,0 +1,42 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Platform threads and resident memory of the process, to compare the worker and callback threading modes.
+ * Virtual threads are not counted by ThreadMXBean.
+ */
+public class RuntimeStats {
+
+    private static final Path PROC_STATUS = Path.of("/proc/self/status");
+
+    private RuntimeStats() {
+    }
+
+    public static String summary() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return String.format("Platform threads: live %d, peak %d, started %d; RSS %s, peak RSS %s",
+                threads.getThreadCount(), threads.getPeakThreadCount(), threads.getTotalStartedThreadCount(),
+                procStatus("VmRSS"), procStatus("VmHWM"));
+    }
+
+    /**
+     * A memory field of /proc/self/status, e.g. "123456 kB"; "n/a" where there is no /proc.
+     */
+    private static String procStatus(String field) {
+        try {
+            for (String line : Files.readAllLines(PROC_STATUS)) {
+                if (line.startsWith(field + ":")) {
+                    return line.substring(field.length() + 1).trim();
+                }
+            }
+        } catch (IOException e) {
+            // Not Linux
+        }
+        return "n/a";
+    }
+}
@@ -0,0 +1,16 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.partitionkey;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A new key for every record.
+ */
+public class CounterPartitionKey implements PartitionKeyStrategy {
+
+    private final AtomicLong counter = new AtomicLong(0);
+
+    @Override
+    public String partitionKey(long personId) {
+        return Long.toString(counter.getAndIncrement());
+    }
+}
@@ -0,0 +1,185 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.partitionkey;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rolling per-shard write rates from UserRecordResult.getShardId(), to spot shards nearing the Kinesis write
+ * limits of 1 MB/sec and 1000 records/sec while a load test runs, before throttling shows up.
+ * <p>
+ * Rates are taken over the last WINDOW_SECONDS seconds. Bytes count the data and the partition key, as Kinesis
+ * does. A shard is hot when its utilization, the highest of its rates divided by its limit, reaches the
+ * threshold. With aggregation many user records share one Kinesis record, so only the bytes limit applies.
+ * <p>
+ * {@link #record(String, int, int)} may be called from any callback thread; {@link #poll()} from a single
+ * reporter thread, once per second.
+ */
+public class HotShards {
+
+    private static final Logger log = LoggerFactory.getLogger(HotShards.class);
+
+    public static final long MAX_BYTES_PER_SECOND = 1024 * 1024;
+    public static final long MAX_RECORDS_PER_SECOND = 1000;
+    private static final int WINDOW_SECONDS = 5;
+
+    private static final class ShardLoad {
+        private final String shardId;
+        private final LongAdder records = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder retried = new LongAdder();
+        // Cumulative counts at the last WINDOW_SECONDS + 1 polls
+        private final long[][] history = new long[WINDOW_SECONDS + 1][3];
+        private double recordsPerSecond;
+        private double bytesPerSecond;
+        private double retryRate;
+        private double utilization;
+        private boolean hot;
+        private boolean registered;
+
+        private ShardLoad(String shardId) {
+            this.shardId = shardId;
+        }
+    }
+
+    private final ConcurrentHashMap<String, ShardLoad> shards = new ConcurrentHashMap<>();
+    private final double threshold;
+    private final boolean aggregated;
+    private long polls = 0;
+    private MeterRegistry registry;
+
+    private volatile List<ShardLoad> ranking = List.of();
+
+    /**
+     * @param threshold  Utilization from which a shard is reported as hot, e.g. 0.8
+     * @param aggregated Whether user records are aggregated, so that the records limit does not apply to them
+     */
+    public HotShards(double threshold, boolean aggregated) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("Hot shard threshold should be positive");
+        }
+        this.threshold = threshold;
+        this.aggregated = aggregated;
+    }
+
+    /**
+     * A record was put successfully.
+     *
+     * @param bytes    Data and partition key bytes
+     * @param attempts UserRecordResult.getAttempts().size(); more than one means the record was retried
+     */
+    public void record(String shardId, int bytes, int attempts) {
+        ShardLoad shard = shards.computeIfAbsent(shardId, ShardLoad::new);
+        shard.records.increment();
+        shard.bytes.add(bytes);
+        if (attempts > 1) {
+            shard.retried.increment();
+        }
+    }
+
+    /**
+     * Updates the rolling rates and logs shards that became hot.
+     */
+    public void poll() {
+        int slot = (int) (polls % (WINDOW_SECONDS + 1));
+        int oldest = (int) ((polls + 1) % (WINDOW_SECONDS + 1));
+        int seconds = (int) Math.min(polls, WINDOW_SECONDS);
+        polls++;
+        List<ShardLoad> loads = new ArrayList<>(shards.values());
+        for (ShardLoad shard : loads) {
+            if (registry != null && !shard.registered) {
+                registerShard(shard);
+                shard.registered = true;
+            }
+            long[] now = shard.history[slot];
+            now[0] = shard.records.sum();
+            now[1] = shard.bytes.sum();
+            now[2] = shard.retried.sum();
+            if (seconds == 0) {
+                continue;
+            }
+            // A shard first seen during the window has zeros in its older slots, so its first rates are low
+            long[] then = seconds < WINDOW_SECONDS ? shard.history[0] : shard.history[oldest];
+            long records = now[0] - then[0];
+            shard.recordsPerSecond = (double) records / seconds;
+            shard.bytesPerSecond = (double) (now[1] - then[1]) / seconds;
+            shard.retryRate = records == 0 ? 0 : (double) (now[2] - then[2]) / records;
+            shard.utilization = shard.bytesPerSecond / MAX_BYTES_PER_SECOND;
+            if (!aggregated) {
+                shard.utilization = Math.max(shard.utilization, shard.recordsPerSecond / MAX_RECORDS_PER_SECOND);
+            }
+            boolean wasHot = shard.hot;
+            shard.hot = shard.utilization >= threshold;
+            if (shard.hot && !wasHot) {
+                log.warn(String.format("Hot shard %s: %s", shard.shardId, describe(shard)));
+            }
+        }
+        loads.sort(Comparator.comparingDouble((ShardLoad s) -> s.utilization).reversed());
+        ranking = loads;
+    }
+
+    public int hotShardCount() {
+        int count = 0;
+        for (ShardLoad shard : ranking) {
+            if (shard.hot) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public double maxUtilization() {
+        List<ShardLoad> current = ranking;
+        return current.isEmpty() ? 0 : current.get(0).utilization;
+    }
+
+    /**
+     * The busiest shards as of the last poll.
+     */
+    public String topSummary(int n) {
+        List<ShardLoad> current = ranking;
+        StringBuilder summary = new StringBuilder(String.format(
+                "Hot shards (>= %.0f %% of a shard's write limit): %d of %d, top %d over %d sec:",
+                threshold * 100, hotShardCount(), current.size(), Math.min(n, current.size()), WINDOW_SECONDS));
+        for (int i = 0; i < n && i < current.size(); i++) {
+            ShardLoad shard = current.get(i);
+            summary.append(String.format("%n  %s%s : %s", shard.shardId, shard.hot ? " HOT" : "", describe(shard)));
+        }
+        return summary.toString();
+    }
+
+    private String describe(ShardLoad shard) {
+        return String.format("%.0f records/sec, %.1f KB/sec, retried %.1f %%, utilization %.0f %%",
+                shard.recordsPerSecond, shard.bytesPerSecond / 1024, shard.retryRate * 100, shard.utilization * 100);
+    }
+
+    /**
+     * Also registers per-shard gauges (kpl.producer.shard.*) as shards appear.
+     */
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("kpl.producer.shards.hot", this, HotShards::hotShardCount)
+                .register(registry);
+        Gauge.builder("kpl.producer.shards.max.utilization", this, HotShards::maxUtilization)
+                .register(registry);
+    }
+
+    private void registerShard(ShardLoad shard) {
+        Gauge.builder("kpl.producer.shard.records.per.second", shard, s -> s.recordsPerSecond)
+                .tag("shard", shard.shardId)
+                .register(registry);
+        Gauge.builder("kpl.producer.shard.bytes.per.second", shard, s -> s.bytesPerSecond)
+                .tag("shard", shard.shardId)
+                .register(registry);
+        Gauge.builder("kpl.producer.shard.utilization", shard, s -> s.utilization)
+                .tag("shard", shard.shardId)
+                .register(registry);
+    }
+}
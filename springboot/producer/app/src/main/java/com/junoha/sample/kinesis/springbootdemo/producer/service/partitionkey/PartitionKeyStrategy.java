@@ -0,0 +1,30 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.partitionkey;
+
+/**
+ * Decides the partition key of each record. Kinesis hashes the partition key with MD5 to pick a shard,
+ * so the number of distinct keys and how evenly they are used decide how load spreads over shards.
+ * Implementations must be thread-safe.
+ */
+public interface PartitionKeyStrategy {
+
+    /**
+     * @param personId Person.id of the record payload
+     * @return partition key
+     */
+    String partitionKey(long personId);
+
+    /**
+     * @param name     timestamp, uuid, person_id, round_robin or counter
+     * @param keyCount Number of keys used by round_robin
+     */
+    static PartitionKeyStrategy of(String name, int keyCount) {
+        return switch (name) {
+            case "timestamp" -> personId -> Long.toString(System.currentTimeMillis());
+            case "uuid" -> new UuidPartitionKey();
+            case "person_id" -> personId -> Long.toString(personId);
+            case "round_robin" -> new RoundRobinPartitionKey(keyCount);
+            case "counter" -> new CounterPartitionKey();
+            default -> throw new IllegalArgumentException("Invalid partition key strategy: " + name);
+        };
+    }
+}
@@ -0,0 +1,48 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackpressureTest {
+
+    @Test
+    void disabledWhenNoLimits() {
+        Backpressure backpressure = new Backpressure(() -> Long.MAX_VALUE, () -> Long.MAX_VALUE, 0, 0);
+        backpressure.update(0);
+        assertFalse(backpressure.isPaused());
+        assertEquals(0, backpressure.blockedNanos(1000));
+    }
+
+    @Test
+    void pausesWhileOverOutstandingLimitAndAccumulatesBlockedTime() {
+        AtomicLong outstanding = new AtomicLong(100);
+        Backpressure backpressure = new Backpressure(outstanding::get, () -> 0L, 100, 0);
+
+        backpressure.update(1000);
+        backpressure.update(1500);
+        assertTrue(backpressure.isPaused());
+        assertEquals(1000, backpressure.blockedNanos(2000));
+
+        outstanding.set(99);
+        backpressure.update(3000);
+        assertFalse(backpressure.isPaused());
+        assertEquals(2000, backpressure.blockedNanos(5000));
+    }
+
+    @Test
+    void pausesWhileOldestRecordIsTooOld() {
+        AtomicLong age = new AtomicLong(5000);
+        Backpressure backpressure = new Backpressure(() -> 0L, age::get, 0, 5000);
+
+        backpressure.update(0);
+        assertTrue(backpressure.isPaused());
+        age.set(10);
+        backpressure.update(10);
+        assertFalse(backpressure.isPaused());
+    }
+}
@@ -0,0 +1,60 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service;
+
+import com.amazonaws.services.kinesis.producer.UserRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CaptureReplayTest {
+
+    // "a", "bb" and "ccc" in base64, 200 ms apart
+    private static final String CAPTURE = String.join("\n",
+            "{\"SequenceNumber\":\"1\",\"ApproximateArrivalTimestamp\":1612137600.0,\"Data\":\"YQ==\",\"PartitionKey\":\"k1\"}",
+            "{\"ApproximateArrivalTimestamp\":\"2021-02-01T00:00:00.200000+00:00\",\"Data\":\"YmI=\",\"PartitionKey\":\"k2\"}",
+            "{\"ApproximateArrivalTimestamp\":1612137600.4,\"Data\":\"Y2Nj\",\"PartitionKey\":\"k1\"}") + "\n";
+
+    private static List<UserRecord> replay(Path file, double speed) {
+        List<UserRecord> records = new ArrayList<>();
+        new CaptureReplay(file, speed, "sandbox").run(records::add, new AtomicLong(), 10, () -> false);
+        return records;
+    }
+
+    @Test
+    void replaysGzippedCaptureInOrder(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("capture.ndjson.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(CAPTURE.getBytes(StandardCharsets.UTF_8));
+        }
+        List<UserRecord> records = replay(file, 0);
+
+        assertEquals(3, records.size());
+        assertEquals("k2", records.get(1).getPartitionKey());
+        assertEquals("sandbox", records.get(1).getStreamName());
+        assertEquals("bb", StandardCharsets.UTF_8.decode(records.get(1).getData()).toString());
+    }
+
+    @Test
+    void keepsInterArrivalTimesScaledBySpeed(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("capture.ndjson");
+        Files.writeString(file, CAPTURE);
+        long start = System.nanoTime();
+        List<UserRecord> records = replay(file, 2);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(3, records.size());
+        // 400 ms of capture at twice the speed
+        assertTrue(elapsedMillis >= 200 && elapsedMillis < 2000, "elapsed " + elapsedMillis + " ms");
+    }
+}
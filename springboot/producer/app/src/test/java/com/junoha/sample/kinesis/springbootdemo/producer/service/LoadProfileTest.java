@@ -0,0 +1,55 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LoadProfileTest {
+
+    @Test
+    void followsSegmentsInOrder() {
+        LoadProfile profile = LoadProfile.parse(
+                "ramp(100, 500, 5); step(1000, 3000, 3, 6); burst(10, 50, 4, 1, 8); sine(100, 50, 4, 4)");
+
+        assertEquals(23, profile.durationSeconds());
+        assertEquals(100, profile.rateAt(0));
+        assertEquals(300, profile.rateAt(2));
+        assertEquals(500, profile.rateAt(4));
+        assertEquals(1000, profile.rateAt(5));
+        assertEquals(1000, profile.rateAt(6));
+        assertEquals(2000, profile.rateAt(7));
+        assertEquals(3000, profile.rateAt(10));
+        assertEquals(50, profile.rateAt(11));
+        assertEquals(10, profile.rateAt(12));
+        assertEquals(50, profile.rateAt(15));
+        assertEquals(100, profile.rateAt(19), 1e-9);
+        assertEquals(150, profile.rateAt(20), 1e-9);
+        assertEquals(50, profile.rateAt(22), 1e-9);
+        // Past the end the last rate is kept
+        assertEquals(50, profile.rateAt(100), 1e-9);
+        assertEquals(3000, profile.maxRate());
+
+        assertEquals("step(1000, 3000, 3, 6)", profile.segmentStartingAt(5));
+        assertNull(profile.segmentStartingAt(6));
+    }
+
+    @Test
+    void constantMatchesRecordsPerSecond() {
+        LoadProfile profile = LoadProfile.constant(2000, 30);
+
+        assertEquals(30, profile.durationSeconds());
+        assertEquals(60000, profile.totalRecords());
+    }
+
+    @Test
+    void rejectsInvalidSegments() {
+        assertThrows(IllegalArgumentException.class, () -> LoadProfile.parse(""));
+        assertThrows(IllegalArgumentException.class, () -> LoadProfile.parse("square(1, 2, 3)"));
+        assertThrows(IllegalArgumentException.class, () -> LoadProfile.parse("ramp(1, 2)"));
+        assertThrows(IllegalArgumentException.class, () -> LoadProfile.parse("constant(100, 0)"));
+        assertThrows(IllegalArgumentException.class, () -> LoadProfile.parse("constant(-1, 10)"));
+        assertThrows(IllegalArgumentException.class, () -> LoadProfile.parse("constant(a, 10)"));
+    }
+}
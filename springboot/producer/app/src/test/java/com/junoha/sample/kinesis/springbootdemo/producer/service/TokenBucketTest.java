@@ -0,0 +1,38 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TokenBucketTest {
+
+    @Test
+    void spacesTokensEvenly() {
+        TokenBucket bucket = new TokenBucket(1000, 1, 0);
+
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(1_000_000, bucket.reserve(0));
+        assertEquals(2_000_000, bucket.reserve(0));
+    }
+
+    @Test
+    void allowsBurstAfterIdle() {
+        TokenBucket bucket = new TokenBucket(1000, 3, 0);
+        long now = 10_000_000;
+
+        // Three tokens are available immediately, the fourth one interval after the burst
+        assertEquals(8_000_000, bucket.reserve(now));
+        assertEquals(9_000_000, bucket.reserve(now));
+        assertEquals(10_000_000, bucket.reserve(now));
+        assertEquals(11_000_000, bucket.reserve(now));
+    }
+
+    @Test
+    void rateCanBeChanged() {
+        TokenBucket bucket = new TokenBucket(1000, 1, 0);
+        bucket.setRate(2000);
+
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(500_000, bucket.reserve(0));
+    }
+}
@@ -0,0 +1,66 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class VirtualThreadsTest {
+
+    private static boolean isVirtual(Thread thread) throws ReflectiveOperationException {
+        return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    }
+
+    @Test
+    void factoryCreatesNumberedVirtualThreads() throws Exception {
+        assumeTrue(VirtualThreads.isSupported());
+        ThreadFactory factory = VirtualThreads.factory("worker-");
+        Thread first = factory.newThread(() -> { });
+        Thread second = factory.newThread(() -> { });
+        assertEquals("worker-0", first.getName());
+        assertEquals("worker-1", second.getName());
+        assertTrue(isVirtual(first));
+    }
+
+    @Test
+    void executorRunsEveryTaskOnItsOwnVirtualThread() throws Exception {
+        assumeTrue(VirtualThreads.isSupported());
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("callback-");
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        // Every task blocks until all of them have started, which only a thread per task allows
+        int tasks = 1000;
+        CountDownLatch started = new CountDownLatch(tasks);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < tasks; i++) {
+                futures.add(executor.submit(() -> {
+                    threads.add(Thread.currentThread());
+                    started.countDown();
+                    started.await();
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(tasks, threads.size());
+        for (Thread thread : threads) {
+            assertTrue(isVirtual(thread));
+            assertTrue(thread.getName().startsWith("callback-"), thread.getName());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.codec;
+
+import com.junoha.sample.kinesis.springbootdemo.producer.model.Person;
+import com.junoha.sample.kinesis.springbootdemo.producer.model.Pet;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PersonCodecTest {
+
+    private static Person person() {
+        Pet pet = new Pet();
+        pet.setType("dog");
+        pet.setName("Bowie");
+        Person person = new Person();
+        person.setId(42);
+        person.setDate("2021/02/01 12:00:00");
+        person.setScore(1234567890L);
+        person.setFirstName("Mary");
+        person.setLastName("Smith");
+        person.setAddress("100 Main Street, Springfield, 12345");
+        person.setPets(List.of(pet));
+        return person;
+    }
+
+    @Test
+    void everyFormatRoundTrips() {
+        for (PayloadFormat format : PayloadFormat.values()) {
+            PersonCodec codec = new PersonCodec(format);
+            byte[] record = codec.encode(person());
+            assertEquals(PersonCodec.HEADER_MAGIC, record[0]);
+            assertEquals(format.id(), record[1]);
+
+            Person decoded = codec.decode(record);
+            assertEquals(42, decoded.getId(), format.formatName());
+            assertEquals(1234567890L, decoded.getScore(), format.formatName());
+            assertEquals("100 Main Street, Springfield, 12345", decoded.getAddress(), format.formatName());
+            assertEquals("Bowie", decoded.getPets().get(0).getName(), format.formatName());
+        }
+    }
+
+    @Test
+    void sequencedRecordCarriesRunIdAndSequenceNumber() {
+        RunSequence sequence = new RunSequence(0x0123456789abcdefL);
+        sequence.next();
+        PersonCodec codec = new PersonCodec(PayloadFormat.AVRO);
+        long before = PersonCodec.epochMicros(Instant.now());
+        byte[] record = codec.encode(person(), sequence);
+        long after = PersonCodec.epochMicros(Instant.now());
+
+        ByteBuffer header = ByteBuffer.wrap(record);
+        assertEquals(PersonCodec.HEADER_MAGIC, header.get());
+        assertEquals(PayloadFormat.AVRO.id() | PersonCodec.SEQUENCE_FLAG, header.get());
+        assertEquals(0x0123456789abcdefL, header.getLong());
+        assertEquals(1, header.getLong());
+        long produced = header.getLong();
+        assertTrue(before <= produced && produced <= after);
+        assertEquals(42, codec.decode(record).getId());
+    }
+
+    @Test
+    void decodeRejectsOtherFormats() {
+        byte[] smile = new PersonCodec(PayloadFormat.SMILE).encode(person());
+        assertThrows(IllegalArgumentException.class, () -> new PersonCodec(PayloadFormat.JSON).decode(smile));
+    }
+}
@@ -0,0 +1,112 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.engine;
+
+import com.amazonaws.services.kinesis.clientlibrary.types.UserRecord;
+import com.amazonaws.services.kinesis.model.Record;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecordAggregatorTest {
+
+    private static ByteBuffer bytes(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void singleRecordIsNotAggregated() {
+        RecordAggregator aggregator = new RecordAggregator(51200);
+        aggregator.add("key", bytes("data"));
+        assertArrayEquals("data".getBytes(StandardCharsets.UTF_8), aggregator.build());
+        assertEquals(7, aggregator.size());
+        assertEquals("key", aggregator.partitionKey());
+    }
+
+    @Test
+    void aggregatedRecordHasMagicMessageAndChecksum() {
+        RecordAggregator aggregator = new RecordAggregator(51200);
+        aggregator.add("a", bytes("x"));
+        aggregator.add("b", bytes("yy"));
+        aggregator.add("a", bytes("z"));
+        byte[] record = aggregator.build();
+
+        byte[] expectedMessage = {
+                0x0A, 1, 'a',                          // partition_key_table "a"
+                0x0A, 1, 'b',                          // partition_key_table "b"
+                0x1A, 5, 0x08, 0, 0x1A, 1, 'x',        // record {partition_key_index 0, data "x"}
+                0x1A, 6, 0x08, 1, 0x1A, 2, 'y', 'y',   // record {partition_key_index 1, data "yy"}
+                0x1A, 5, 0x08, 0, 0x1A, 1, 'z'};       // record {partition_key_index 0, data "z"}
+        assertArrayEquals(RecordAggregator.MAGIC, Arrays.copyOfRange(record, 0, 4));
+        assertArrayEquals(expectedMessage, Arrays.copyOfRange(record, 4, record.length - 16));
+        assertArrayEquals(RecordAggregator.md5(expectedMessage, 0, expectedMessage.length),
+                Arrays.copyOfRange(record, record.length - 16, record.length));
+        assertEquals(record.length + 1, aggregator.size());
+        assertEquals(3, aggregator.count());
+    }
+
+    @Test
+    void rejectsRecordsBeyondMaxBytes() {
+        RecordAggregator aggregator = new RecordAggregator(100);
+        assertTrue(aggregator.add("key", ByteBuffer.allocate(60)));
+        assertFalse(aggregator.add("key", ByteBuffer.allocate(60)));
+        assertEquals(1, aggregator.count());
+
+        aggregator.clear();
+        assertTrue(aggregator.add("key", ByteBuffer.allocate(200)));
+        assertEquals(1, aggregator.count());
+    }
+
+    @Test
+    void kclDeaggregatesEveryRecord() {
+        Random random = new Random(7);
+        List<String> keys = new ArrayList<>();
+        List<byte[]> data = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            keys.add("key-" + random.nextInt(50));
+            byte[] payload = new byte[1 + random.nextInt(400)];
+            random.nextBytes(payload);
+            data.add(payload);
+        }
+
+        // Pack the records like the sdk engine does: a new aggregate whenever the current one is full
+        List<Record> kinesisRecords = new ArrayList<>();
+        RecordAggregator aggregator = new RecordAggregator(51200);
+        for (int i = 0; i < keys.size(); i++) {
+            if (!aggregator.add(keys.get(i), ByteBuffer.wrap(data.get(i)))) {
+                kinesisRecords.add(kinesisRecord(aggregator));
+                aggregator.clear();
+                assertTrue(aggregator.add(keys.get(i), ByteBuffer.wrap(data.get(i))));
+            }
+        }
+        kinesisRecords.add(kinesisRecord(aggregator));
+        assertTrue(kinesisRecords.size() > 1);
+
+        List<UserRecord> userRecords = UserRecord.deaggregate(kinesisRecords);
+        // KCL passes a record with a bad checksum through as is, so the count catches that too
+        assertEquals(keys.size(), userRecords.size());
+        for (int i = 0; i < keys.size(); i++) {
+            UserRecord userRecord = userRecords.get(i);
+            assertTrue(userRecord.isAggregated());
+            assertEquals(keys.get(i), userRecord.getPartitionKey());
+            byte[] actual = new byte[userRecord.getData().remaining()];
+            userRecord.getData().get(actual);
+            assertArrayEquals(data.get(i), actual);
+        }
+    }
+
+    private static Record kinesisRecord(RecordAggregator aggregator) {
+        return new Record()
+                .withPartitionKey(aggregator.partitionKey())
+                .withData(ByteBuffer.wrap(aggregator.build()))
+                .withSequenceNumber("1");
+    }
+}
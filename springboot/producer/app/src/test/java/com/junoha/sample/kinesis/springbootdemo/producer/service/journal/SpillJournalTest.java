@@ -0,0 +1,105 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpillJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private static ByteBuffer bytes(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String string(ByteBuffer buffer) {
+        return StandardCharsets.UTF_8.decode(buffer).toString();
+    }
+
+    @Test
+    void entriesAreReadInOrder() throws Exception {
+        try (SpillJournal journal = new SpillJournal(dir.resolve("journal"), 4096)) {
+            assertTrue(journal.append("a", bytes("first"), 0, 100, 200));
+            assertTrue(journal.append("b", bytes("second"), 2, 150, 300));
+            assertEquals(2, journal.pendingRecords());
+            assertEquals(200, journal.headNotBeforeMillis());
+            assertEquals(900, journal.replayLagMillis(1000));
+
+            SpillJournal.Entry entry = journal.peek();
+            assertEquals("a", entry.getPartitionKey());
+            assertEquals("first", string(entry.getData()));
+            journal.remove(entry);
+
+            entry = journal.peek();
+            assertEquals("b", entry.getPartitionKey());
+            assertEquals(2, entry.getRetryCount());
+            assertEquals("second", string(entry.getData()));
+            journal.remove(entry);
+
+            assertNull(journal.peek());
+            assertEquals(0, journal.size());
+            assertEquals(-1, journal.headNotBeforeMillis());
+        }
+    }
+
+    @Test
+    void pendingEntriesSurviveReopen() throws Exception {
+        Path path = dir.resolve("journal");
+        try (SpillJournal journal = new SpillJournal(path, 4096)) {
+            journal.append("a", bytes("first"), 0, 0, 0);
+            journal.append("b", bytes("second"), 0, 0, 0);
+            journal.remove(journal.peek());
+        }
+        try (SpillJournal journal = new SpillJournal(path, 4096)) {
+            assertEquals(1, journal.pendingRecords());
+            assertEquals("second", string(journal.peek().getData()));
+        }
+    }
+
+    @Test
+    void compactsWhenFullAndRejectsWhenStillFull() throws Exception {
+        // Header (12) + 3 entries of 4 + 24 + 1 + 10 bytes
+        try (SpillJournal journal = new SpillJournal(dir.resolve("journal"), 12 + 3 * 39)) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(journal.append("k", bytes("0123456789"), i, 0, 0));
+            }
+            assertFalse(journal.append("k", bytes("0123456789"), 3, 0, 0));
+
+            journal.remove(journal.peek());
+            assertTrue(journal.append("k", bytes("0123456789"), 3, 0, 0));
+            assertEquals(3, journal.pendingRecords());
+            for (int i = 1; i <= 3; i++) {
+                SpillJournal.Entry entry = journal.peek();
+                assertEquals(i, entry.getRetryCount());
+                journal.remove(entry);
+            }
+        }
+    }
+
+    @Test
+    void removesTheHeadCompactedAfterPeek() throws Exception {
+        try (SpillJournal journal = new SpillJournal(dir.resolve("journal"), 12 + 3 * 39)) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(journal.append("k", bytes("0123456789"), i, 0, 0));
+            }
+            journal.remove(journal.peek());
+            SpillJournal.Entry entry = journal.peek();
+            assertEquals(1, entry.getRetryCount());
+
+            // Full at the tail: the pending entries move to the start of the file
+            assertTrue(journal.append("k", bytes("0123456789"), 3, 0, 0));
+            journal.remove(entry);
+            assertEquals(2, journal.pendingRecords());
+            assertEquals(2, journal.peek().getRetryCount());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.junoha.sample.kinesis.springbootdemo.producer.service.partitionkey;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HotShardsTest {
+
+    private static void put(HotShards hotShards, String shardId, int records, int bytes, int attempts) {
+        for (int i = 0; i < records; i++) {
+            hotShards.record(shardId, bytes, attempts);
+        }
+    }
+
+    @Test
+    void shardNearRecordsLimitIsHot() {
+        HotShards hotShards = new HotShards(0.8, false);
+        hotShards.poll();
+        put(hotShards, "shardId-000000000000", 900, 100, 1);
+        put(hotShards, "shardId-000000000001", 100, 100, 2);
+        hotShards.poll();
+
+        assertEquals(1, hotShards.hotShardCount());
+        assertEquals(0.9, hotShards.maxUtilization(), 1e-9);
+        String summary = hotShards.topSummary(1);
+        assertTrue(summary.contains("shardId-000000000000 HOT : 900 records/sec"), summary);
+        assertFalse(summary.contains("shardId-000000000001"), summary);
+    }
+
+    @Test
+    void aggregatedShardsOnlyCountBytes() {
+        HotShards hotShards = new HotShards(0.8, true);
+        hotShards.poll();
+        put(hotShards, "shardId-000000000000", 2000, 100, 1);
+        put(hotShards, "shardId-000000000001", 1000, 1000, 1);
+        hotShards.poll();
+
+        assertEquals(1, hotShards.hotShardCount());
+        assertTrue(hotShards.topSummary(1).contains("shardId-000000000001 HOT"));
+    }
+
+    @Test
+    void ratesAreAveragedOverTheWindow() {
+        HotShards hotShards = new HotShards(0.8, false);
+        hotShards.poll();
+        put(hotShards, "shardId-000000000000", 1000, 100, 1);
+        hotShards.poll();
+        for (int i = 0; i < 4; i++) {
+            hotShards.poll();
+        }
+        // 1000 records over 5 seconds
+        assertEquals(0.2, hotShards.maxUtilization(), 1e-9);
+        assertEquals(0, hotShards.hotShardCount());
+    }
+}